@@ -0,0 +1,76 @@
+package Benchmarks;
+
+import Utils.DataSet;
+import Utils.Matrix;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CSV loading and normalization of a generated file
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class LoaderBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    @Param({"10", "100"})
+    public int features;
+
+    private Path csvFile;
+    private DataSet normalizeInput;
+
+    @Setup(Level.Trial)
+    public void writeFile() throws IOException {
+        csvFile = Files.createTempFile("lr-bench", ".csv");
+        Random random = new Random(42);
+        try (BufferedWriter out = Files.newBufferedWriter(csvFile)) {
+            out.write("Obs No.,Target");
+            for (int j = 1; j < features; j++)
+                out.write(",x" + j);
+            out.newLine();
+            for (int i = 0; i < rows; i++) {
+                out.write((i + 1) + "," + random.nextInt(2));
+                for (int j = 1; j < features; j++)
+                    out.write("," + random.nextInt(100_000) / 100.0);
+                out.newLine();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(csvFile);
+    }
+
+    /* normalize works in place: give every invocation fresh data */
+    @Setup(Level.Invocation)
+    public void generate() {
+        normalizeInput = new DataSet();
+        normalizeInput.generateDataset(rows, features);
+    }
+
+    @Benchmark
+    public Matrix readDataSet() {
+        DataSet ds = new DataSet();
+        ds.readDataSet(csvFile.toString());
+        return ds.getX();
+    }
+
+    @Benchmark
+    public Matrix normalize() {
+        normalizeInput.normalize();
+        return normalizeInput.getX();
+    }
+}
@@ -0,0 +1,78 @@
+package Benchmarks;
+
+import LogisticRegression.ParallelLogisticRegression;
+import LogisticRegression.SequentialLogisticRegression;
+import Utils.DataSet;
+import Utils.Matrix;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BGD training and scoring over a generated dataset
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class TrainingBenchmark {
+
+    static final double LEARNING_RATE = 0.005;
+    static final int NUM_ITERATIONS = 20;
+    static final double THRESHOLD = 0.5;
+
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    @Param({"10", "100"})
+    public int features;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private Matrix X;
+    private int[] Y;
+    private SequentialLogisticRegression seqLogistic;
+    private ParallelLogisticRegression parLogistic;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        DataSet ds = new DataSet();
+        ds.generateDataset(rows, features);
+        X = ds.getX();
+        Y = ds.getY();
+        seqLogistic = new SequentialLogisticRegression(features, LEARNING_RATE, NUM_ITERATIONS, THRESHOLD);
+        parLogistic = new ParallelLogisticRegression(features, LEARNING_RATE, NUM_ITERATIONS, THRESHOLD, threads);
+        seqLogistic.trainModelWithBGD(X, Y); // weights for the scoring benchmarks
+        parLogistic.trainModelWithBGD(X, Y);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        parLogistic.close();
+    }
+
+    @Benchmark
+    public double[] sequentialBGD() {
+        seqLogistic.trainModelWithBGD(X, Y);
+        return seqLogistic.getWeights();
+    }
+
+    @Benchmark
+    public double[] parallelBGD() {
+        parLogistic.trainModelWithBGD(X, Y);
+        return parLogistic.getWeights();
+    }
+
+    @Benchmark
+    public double[] sequentialScoreData() {
+        return seqLogistic.scoreData(X);
+    }
+
+    @Benchmark
+    public double[] parallelScoreData() {
+        return parLogistic.scoreData(X);
+    }
+}
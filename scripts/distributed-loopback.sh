@@ -0,0 +1,38 @@
+#!/bin/bash
+# Distributed fit with several worker processes on this machine, over loopback.
+# Usage: scripts/distributed-loopback.sh <csv file> [workers] [iterations] [learning rate]
+# Environment: PORT (default 9400), THREADS per worker (default: cores / workers),
+# KILL_AFTER=<seconds> kills the last worker after that delay, to exercise the failure handling
+# (use it with e.g. JAVA_OPTS="-Dlr.timeout=5000 -Dlr.shards=8").
+set -e
+
+FILE=${1:?usage: $0 <csv file> [workers] [iterations] [learning rate]}
+WORKERS=${2:-4}
+ITERATIONS=${3:-500}
+LEARNING_RATE=${4:-0.5}
+PORT=${PORT:-9400}
+THREADS=${THREADS:-$(( $(nproc) / WORKERS > 0 ? $(nproc) / WORKERS : 1 ))}
+
+DIR=$(cd "$(dirname "$0")/.." && pwd)
+JAR="$DIR/target/ParallelLogisticRegression-1.0-SNAPSHOT.jar"
+[ -f "$JAR" ] || (cd "$DIR" && mvn -B -q package -DskipTests)
+JAVA="java --add-modules jdk.incubator.vector $JAVA_OPTS -cp $JAR"
+
+$JAVA Distributed.Launcher coordinator "$FILE" "$PORT" "$WORKERS" "$ITERATIONS" "$LEARNING_RATE" &
+COORDINATOR=$!
+trap 'kill $COORDINATOR ${PIDS[*]} 2>/dev/null' INT TERM
+
+PIDS=()
+for ((w = 0; w < WORKERS; w++)); do
+    $JAVA Distributed.Launcher worker 127.0.0.1 "$PORT" "$THREADS" > "/tmp/lr-worker-$w.log" 2>&1 &
+    PIDS+=($!)
+done
+echo "Started $WORKERS workers (logs in /tmp/lr-worker-*.log)"
+
+if [ -n "$KILL_AFTER" ]; then
+    sleep "$KILL_AFTER"
+    echo "Killing worker $((WORKERS - 1))"
+    kill -9 "${PIDS[$((WORKERS - 1))]}"
+fi
+
+wait $COORDINATOR
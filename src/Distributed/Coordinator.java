@@ -0,0 +1,440 @@
+package Distributed;
+
+import LogisticRegression.LogisticModel;
+import Utils.ColumnStatistics;
+import Utils.Scaler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordinator of a data-parallel fit over several processes (see Worker), e.g. several JVMs on one
+ * machine, each one adding its own memory bandwidth, or several machines sharing the input file.
+ * The input CSV is split into byte ranges (shards) that the workers load themselves; the statistics
+ * of their rows are merged here into a single scaler. The workers then run Batch Gradient Descent
+ * and sum their gradients with a tree allreduce, without going through the coordinator.
+ * A worker that dies or stops answering is detected by the timeouts of its neighbours: the
+ * coordinator drops it, hands its shards to the remaining workers and restarts the fit from the
+ * last iteration they all completed. A failure while the shards are first loaded aborts the fit, and
+ * so do too many restarts in a row that complete no new iteration (see setMaxStalledRestarts).
+ */
+public class Coordinator implements AutoCloseable {
+
+    /* connection to one worker */
+    private static final class Member {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+        final String host;
+        final int dataPort; // where the worker accepts its children in the tree
+        final List<long[]> shards = new ArrayList<>(); // byte ranges loaded by the worker
+        volatile boolean alive = true;
+
+        Member(Socket socket, DataInputStream in, int dataPort) throws IOException {
+            this.socket = socket;
+            this.in = in;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            this.host = socket.getInetAddress().getHostAddress();
+            this.dataPort = dataPort;
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + dataPort;
+        }
+    }
+
+    /* message read from a worker, or the loss of its connection (DEAD) */
+    private static final class Event {
+        final Member member;
+        final int type;
+        String[] varNames;
+        ColumnStatistics stats;
+        int status;
+        int completed;
+        double loss;
+        double[] weights;
+
+        Event(Member member, int type) {
+            this.member = member;
+            this.type = type;
+        }
+    }
+
+    private interface Message {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private final ServerSocket server;
+    private final int numWorkers;
+    private final double learningRate;
+    private final int numIterations;
+    private double l2;
+    private int numShards; // 0 for one per worker
+    private int timeoutMillis = 30_000;
+    private long loadTimeoutMillis = 600_000;
+    private int maxStalledRestarts = 3; // consecutive restarts without a new completed iteration
+    private Scaler.Type scalerType = Scaler.Type.MIN_MAX;
+    private boolean verbose = true; // print the membership changes
+
+    private final List<Member> members = new ArrayList<>();
+    private final BlockingQueue<Event> events = new LinkedBlockingQueue<>();
+
+    public Coordinator(int port, int numWorkers, double learningRate, int numIterations) throws IOException {
+        if (numWorkers < 1)
+            throw new IllegalArgumentException("numWorkers must be positive: " + numWorkers);
+        this.server = new ServerSocket(port);
+        this.numWorkers = numWorkers;
+        this.learningRate = learningRate;
+        this.numIterations = numIterations;
+    }
+
+    /**
+     * Port the workers connect to (useful when the coordinator was created on port 0)
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * L2 regularization, see ParallelLogisticRegression.setRegularization
+     */
+    public void setRegularization(double l2) {
+        if (l2 < 0)
+            throw new IllegalArgumentException("l2 must not be negative: " + l2);
+        this.l2 = l2;
+    }
+
+    /**
+     * Number of byte ranges the input is split into (one per worker by default).
+     * More shards than workers spread the rows of a failed worker over several others
+     */
+    public void setNumShards(int numShards) {
+        if (numShards < 0)
+            throw new IllegalArgumentException("numShards must not be negative: " + numShards);
+        this.numShards = numShards;
+    }
+
+    /**
+     * How long a worker waits for a neighbour before reporting a failure (30 s by default).
+     * It must be well above the time of one iteration
+     */
+    public void setTimeout(int timeoutMillis) {
+        if (timeoutMillis < 1)
+            throw new IllegalArgumentException("timeout must be positive: " + timeoutMillis);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Time the workers get to connect and to load their shards (10 minutes by default)
+     */
+    public void setLoadTimeout(long loadTimeoutMillis) {
+        if (loadTimeoutMillis < 1)
+            throw new IllegalArgumentException("load timeout must be positive: " + loadTimeoutMillis);
+        this.loadTimeoutMillis = loadTimeoutMillis;
+    }
+
+    /**
+     * How many restarts in a row may end without completing a new iteration before the fit fails
+     * (3 by default), e.g. when a worker keeps timing out although it is alive
+     */
+    public void setMaxStalledRestarts(int maxStalledRestarts) {
+        if (maxStalledRestarts < 0)
+            throw new IllegalArgumentException("maxStalledRestarts must not be negative: " + maxStalledRestarts);
+        this.maxStalledRestarts = maxStalledRestarts;
+    }
+
+    public void setScaler(Scaler.Type scalerType) {
+        this.scalerType = scalerType;
+    }
+
+    /**
+     * Print the membership changes (on by default)
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Wait for the workers, train on the file and return the model (with the scaler of the whole file)
+     */
+    public LogisticModel train(String fileName) throws IOException {
+        String path = Path.of(fileName).toAbsolutePath().toString();
+        long size = Files.size(Path.of(path));
+        acceptWorkers();
+
+        // shards, assigned round robin
+        int count = (numShards > 0) ? numShards : numWorkers;
+        for (int k = 0; k < count; k++)
+            members.get(k % numWorkers).shards.add(new long[]{size * k / count, size * (k + 1) / count});
+        for (Member member : members)
+            sendShards(member, path, member.shards);
+        Map<Member, Event> loaded = collect(members, Messages.STATS, loadTimeoutMillis, false);
+        if (loaded.size() < numWorkers)
+            throw new IOException("A worker failed while loading its shards");
+
+        // one scaler for the rows of all the workers
+        ColumnStatistics stats = null;
+        String[] varNames = null;
+        for (Member member : members) {
+            Event event = loaded.get(member);
+            varNames = event.varNames;
+            if (stats == null)
+                stats = event.stats;
+            else
+                stats.merge(event.stats);
+        }
+        Scaler scaler = Scaler.fit(stats, scalerType);
+
+        int first = 0;
+        int stalled = 0; // restarts in a row that did not advance first
+        for (int generation = 0; ; generation++) {
+            List<Member> alive = alive();
+            if (alive.isEmpty())
+                throw new IOException("All workers failed");
+            start(alive, generation, scaler, first);
+            int started = first;
+            Map<Member, Event> reports = collect(alive, Messages.REPORT, timeoutMillis * 3L, true);
+
+            boolean done = reports.size() == alive.size();
+            first = reports.isEmpty() ? started : numIterations; // no report: nothing was completed
+            double[] weights = null;
+            for (Event report : reports.values()) {
+                done &= report.status == Messages.DONE;
+                first = Math.min(first, report.completed);
+                if (report.weights != null)
+                    weights = report.weights;
+            }
+            if (done && weights != null) {
+                for (Member member : alive())
+                    send(member, out -> out.writeInt(Messages.SHUTDOWN));
+                return LogisticModel.of(weights, varNames, scaler, 0.5, learningRate, numIterations);
+            }
+            stalled = (first > started) ? 0 : stalled + 1;
+            if (stalled > maxStalledRestarts)
+                throw new IOException("The fit made no progress in " + stalled + " attempts in a row, stuck at iteration "
+                        + first + " with " + alive().size() + " workers");
+            reassignShards(path);
+            if (verbose)
+                System.out.println("Restarting from iteration " + first + " with " + alive().size() + " workers");
+        }
+    }
+
+    private void acceptWorkers() throws IOException {
+        server.setSoTimeout((int) Math.min(Integer.MAX_VALUE, loadTimeoutMillis));
+        while (members.size() < numWorkers) {
+            Socket socket = server.accept();
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            if (in.readInt() != Messages.REGISTER) {
+                socket.close();
+                continue;
+            }
+            Member member = new Member(socket, in, in.readInt());
+            members.add(member);
+            Thread reader = new Thread(() -> readEvents(member), "lr-coordinator-" + members.size());
+            reader.setDaemon(true);
+            reader.start();
+            if (verbose)
+                System.out.println("Worker " + member + " registered (" + members.size() + "/" + numWorkers + ")");
+        }
+    }
+
+    /* turn the messages of a worker into events, until its connection is lost */
+    private void readEvents(Member member) {
+        try {
+            while (true) {
+                Event event = new Event(member, member.in.readInt());
+                if (event.type == Messages.STATS) {
+                    event.varNames = Messages.readStrings(member.in);
+                    event.stats = Messages.readStatistics(member.in);
+                } else if (event.type == Messages.REPORT) {
+                    event.status = member.in.readInt();
+                    event.completed = member.in.readInt();
+                    event.loss = member.in.readDouble();
+                    if (member.in.readBoolean())
+                        event.weights = Messages.readDoubles(member.in);
+                } else {
+                    throw new IOException("Unexpected message " + event.type);
+                }
+                events.add(event);
+            }
+        } catch (IOException e) {
+            events.add(new Event(member, Messages.DEAD));
+        }
+    }
+
+    /* give the shards of the dropped workers to the least loaded live ones, until they are all loaded */
+    private void reassignShards(String path) throws IOException {
+        while (true) {
+            List<long[]> orphans = new ArrayList<>();
+            for (Member member : members) {
+                if (!member.alive) {
+                    orphans.addAll(member.shards);
+                    member.shards.clear();
+                }
+            }
+            List<Member> alive = alive();
+            if (orphans.isEmpty() || alive.isEmpty())
+                return;
+
+            Map<Member, List<long[]>> assigned = new HashMap<>();
+            for (long[] shard : orphans) {
+                Member target = alive.get(0);
+                for (Member member : alive)
+                    if (member.shards.size() < target.shards.size())
+                        target = member;
+                target.shards.add(shard);
+                assigned.computeIfAbsent(target, m -> new ArrayList<>()).add(shard);
+            }
+            List<Member> receivers = new ArrayList<>(assigned.keySet());
+            for (Member member : receivers)
+                sendShards(member, path, assigned.get(member));
+            collect(receivers, Messages.STATS, loadTimeoutMillis, false);
+        }
+    }
+
+    private void sendShards(Member member, String path, List<long[]> shards) {
+        send(member, out -> {
+            out.writeInt(Messages.SHARDS);
+            out.writeUTF(path);
+            out.writeDouble(learningRate);
+            out.writeInt(numIterations);
+            out.writeDouble(l2);
+            out.writeInt(timeoutMillis);
+            out.writeInt(shards.size());
+            for (long[] shard : shards) {
+                out.writeLong(shard[0]);
+                out.writeLong(shard[1]);
+            }
+        });
+    }
+
+    /* ranks follow the order of registration, the tree is rebuilt for every generation */
+    private void start(List<Member> alive, int generation, Scaler scaler, int first) {
+        String[] hosts = new String[alive.size()];
+        int[] ports = new int[alive.size()];
+        for (int r = 0; r < alive.size(); r++) {
+            hosts[r] = alive.get(r).host;
+            ports[r] = alive.get(r).dataPort;
+        }
+        for (int r = 0; r < alive.size(); r++) {
+            final int rank = r;
+            send(alive.get(r), out -> {
+                out.writeInt(Messages.START);
+                out.writeInt(generation);
+                out.writeInt(rank);
+                Messages.writeStrings(out, hosts);
+                for (int port : ports)
+                    out.writeInt(port);
+                Messages.writeScaler(out, scaler);
+                out.writeInt(first);
+            });
+        }
+    }
+
+    /*
+     * wait for a message of the given type from every live member of the group. Members whose
+     * connection is lost, or that have not answered timeoutMillis after the deadline started, are
+     * dropped. With untilFailure the deadline only starts with the first failure, since a fit
+     * takes as long as it takes
+     */
+    private Map<Member, Event> collect(List<Member> group, int type, long timeoutMillis, boolean untilFailure)
+            throws IOException {
+        Map<Member, Event> replies = new HashMap<>();
+        long deadline = untilFailure ? Long.MAX_VALUE : System.nanoTime() + timeoutMillis * 1_000_000L;
+        try {
+            while (!answered(group, replies)) {
+                Event event = (deadline == Long.MAX_VALUE) ? events.take()
+                        : events.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (event == null) {
+                    for (Member member : group)
+                        if (member.alive && !replies.containsKey(member))
+                            drop(member, "no answer within " + timeoutMillis + " ms");
+                    break;
+                }
+                Member member = event.member;
+                if (!member.alive || !group.contains(member))
+                    continue;
+                boolean failure = false;
+                if (event.type == Messages.DEAD) {
+                    drop(member, "connection lost");
+                    failure = true;
+                } else if (event.type == type) {
+                    replies.put(member, event);
+                    failure = event.status == Messages.FAILED;
+                }
+                if (failure && deadline == Long.MAX_VALUE)
+                    deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the workers", e);
+        }
+        replies.keySet().removeIf(member -> !member.alive);
+        return replies;
+    }
+
+    private static boolean answered(List<Member> group, Map<Member, Event> replies) {
+        for (Member member : group)
+            if (member.alive && !replies.containsKey(member))
+                return false;
+        return true;
+    }
+
+    private void send(Member member, Message message) {
+        try {
+            message.write(member.out);
+            member.out.flush();
+        } catch (IOException e) {
+            drop(member, e.getMessage());
+        }
+    }
+
+    private void drop(Member member, String reason) {
+        if (!member.alive)
+            return;
+        member.alive = false;
+        if (verbose)
+            System.out.println("Worker " + member + " dropped: " + reason);
+        try {
+            member.socket.close();
+        } catch (IOException e) {
+            // already closed
+        }
+    }
+
+    private List<Member> alive() {
+        List<Member> alive = new ArrayList<>();
+        for (Member member : members)
+            if (member.alive)
+                alive.add(member);
+        return alive;
+    }
+
+    /**
+     * Close the connections (the workers exit when they see them closed)
+     */
+    @Override
+    public void close() throws IOException {
+        for (Member member : members) {
+            member.alive = false;
+            member.socket.close();
+        }
+        server.close();
+    }
+}
@@ -0,0 +1,67 @@
+package Distributed;
+
+import LogisticRegression.LogisticModel;
+
+import java.io.IOException;
+
+/**
+ * Command line entry point of a distributed fit:
+ * coordinator (file) (port) (workers) [iterations] [learning rate] [model file]
+ * worker (coordinator host) (port) [threads]
+ * See scripts/distributed-loopback.sh for several processes on one machine.
+ */
+public class Launcher {
+
+    static final int DEFAULT_ITERATIONS = 500;
+    static final double DEFAULT_LEARNING_RATE = 0.5;
+    static final String MODEL_EXTENSION = ".model";
+
+    public static void main(String[] args) {
+        try {
+            if (args.length >= 4 && args[0].equals("coordinator"))
+                runCoordinator(args);
+            else if (args.length >= 3 && args[0].equals("worker"))
+                runWorker(args);
+            else
+                usage();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static void runCoordinator(String[] args) throws IOException {
+        String fileName = args[1];
+        int port = Integer.parseInt(args[2]);
+        int numWorkers = Integer.parseInt(args[3]);
+        int numIterations = (args.length > 4) ? Integer.parseInt(args[4]) : DEFAULT_ITERATIONS;
+        double learningRate = (args.length > 5) ? Double.parseDouble(args[5]) : DEFAULT_LEARNING_RATE;
+        String modelFile = (args.length > 6) ? args[6] : fileName + MODEL_EXTENSION;
+
+        try (Coordinator coordinator = new Coordinator(port, numWorkers, learningRate, numIterations)) {
+            coordinator.setTimeout(Integer.parseInt(System.getProperty("lr.timeout", "30000")));
+            coordinator.setNumShards(Integer.parseInt(System.getProperty("lr.shards", "0")));
+            coordinator.setMaxStalledRestarts(Integer.parseInt(System.getProperty("lr.restarts", "3")));
+            System.out.println("Waiting for " + numWorkers + " workers on port " + coordinator.getPort());
+            long start = System.currentTimeMillis();
+            LogisticModel model = coordinator.train(fileName);
+            System.out.println("Training DONE in " + (System.currentTimeMillis() - start) + " ms");
+            model.save(modelFile);
+            System.out.println("Model saved to " + modelFile);
+        }
+    }
+
+    private static void runWorker(String[] args) throws IOException {
+        int threads = (args.length > 3) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        try (Worker worker = new Worker(args[1], Integer.parseInt(args[2]), threads)) {
+            worker.run();
+        }
+    }
+
+    private static void usage() {
+        System.out.println("Usage:");
+        System.out.println("  coordinator <file> <port> <workers> [iterations] [learning rate] [model file]");
+        System.out.println("  worker <coordinator host> <port> [threads]");
+        System.out.println("Properties: -Dlr.timeout=<ms> (default 30000), -Dlr.shards=<count> (default: one per worker)");
+    }
+}
@@ -0,0 +1,101 @@
+package Distributed;
+
+import Utils.ColumnStatistics;
+import Utils.Scaler;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/*
+ * Messages between the coordinator and the workers, over DataInput/DataOutput streams.
+ * Every message starts with its type.
+ * worker -> coordinator: REGISTER(data port), STATS(variable names, statistics of the loaded rows),
+ *                        REPORT(status, completed iterations, average loss, weights of rank 0)
+ * coordinator -> worker: SHARDS(file, hyper-parameters, byte ranges to load),
+ *                        START(generation, rank, tree addresses, scaler, first iteration), SHUTDOWN
+ */
+final class Messages {
+
+    static final int REGISTER = 1;
+    static final int SHARDS = 2;
+    static final int STATS = 3;
+    static final int START = 4;
+    static final int REPORT = 5;
+    static final int SHUTDOWN = 6;
+    static final int DEAD = -1; // not sent: the connection of a worker was lost
+
+    // status of a REPORT
+    static final int DONE = 0;
+    static final int FAILED = 1;
+
+    private Messages() {
+    }
+
+    static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+        out.writeInt(values.length);
+        for (double value : values)
+            out.writeDouble(value);
+    }
+
+    static double[] readDoubles(DataInputStream in) throws IOException {
+        double[] values = new double[in.readInt()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = in.readDouble();
+        return values;
+    }
+
+    static void writeStrings(DataOutputStream out, String[] values) throws IOException {
+        out.writeInt(values.length);
+        for (String value : values)
+            out.writeUTF(value);
+    }
+
+    static String[] readStrings(DataInputStream in) throws IOException {
+        String[] values = new String[in.readInt()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = in.readUTF();
+        return values;
+    }
+
+    static void writeStatistics(DataOutputStream out, ColumnStatistics stats) throws IOException {
+        int d = stats.numCols();
+        out.writeLong(stats.getCount());
+        out.writeInt(d);
+        for (int j = 0; j < d; j++) {
+            out.writeDouble(stats.getMin(j));
+            out.writeDouble(stats.getMax(j));
+            out.writeDouble(stats.getCount() == 0 ? 0.0 : stats.getMean(j));
+            out.writeDouble(stats.getCount() == 0 ? 0.0 : stats.getVariance(j));
+        }
+    }
+
+    static ColumnStatistics readStatistics(DataInputStream in) throws IOException {
+        long count = in.readLong();
+        int d = in.readInt();
+        double[] minValues = new double[d];
+        double[] maxValues = new double[d];
+        double[] means = new double[d];
+        double[] variances = new double[d];
+        for (int j = 0; j < d; j++) {
+            minValues[j] = in.readDouble();
+            maxValues[j] = in.readDouble();
+            means[j] = in.readDouble();
+            variances[j] = in.readDouble();
+        }
+        return (count == 0) ? new ColumnStatistics(d) : ColumnStatistics.of(count, minValues, maxValues, means, variances);
+    }
+
+    static void writeScaler(DataOutputStream out, Scaler scaler) throws IOException {
+        out.writeInt(scaler.getType().ordinal());
+        writeDoubles(out, scaler.getOffsets());
+        writeDoubles(out, scaler.getScales());
+    }
+
+    static Scaler readScaler(DataInputStream in) throws IOException {
+        Scaler.Type type = Scaler.Type.values()[in.readInt()];
+        double[] offsets = readDoubles(in);
+        double[] scales = readDoubles(in);
+        return new Scaler(type, offsets, scales);
+    }
+}
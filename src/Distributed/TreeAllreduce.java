@@ -0,0 +1,154 @@
+package Distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/*
+ * Allreduce (sum) over a binary tree of TCP connections: worker r is the parent of workers
+ * 2r + 1 and 2r + 2. Partial sums flow up to rank 0, which sends the total back down, so every
+ * worker ends with the same bits. A worker adds its children in rank order, so the result only
+ * depends on the number of workers.
+ * Every read and connect is bounded by the timeout: a dead or stuck peer makes allreduce throw
+ * instead of blocking the worker.
+ */
+final class TreeAllreduce implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /* connection to a neighbour in the tree */
+    private static final class Link {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+
+        Link(Socket socket, int timeoutMillis) throws IOException {
+            this.socket = socket;
+            socket.setSoTimeout(timeoutMillis);
+            socket.setTcpNoDelay(true);
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+        }
+    }
+
+    private final Link parent; // null for rank 0
+    private final Link[] children;
+    private double[] received = new double[0];
+
+    private TreeAllreduce(Link parent, Link[] children) {
+        this.parent = parent;
+        this.children = children;
+    }
+
+    /*
+     * Connect worker rank of a tree whose workers listen on hosts[k]:ports[k]: first to the parent,
+     * then accept the children on server. Connections of other generations (left over by a
+     * previous tree) are dropped.
+     */
+    static TreeAllreduce connect(ServerSocket server, int rank, String[] hosts, int[] ports, int generation,
+                                 int timeoutMillis) throws IOException {
+        Link parent = null;
+        Link[] children = new Link[Math.max(0, Math.min(2, hosts.length - 2 * rank - 1))];
+        try {
+            if (rank > 0) {
+                int p = (rank - 1) / 2;
+                Socket socket = new Socket();
+                socket.connect(new InetSocketAddress(hosts[p], ports[p]), timeoutMillis);
+                parent = new Link(socket, timeoutMillis);
+                parent.out.writeInt(generation);
+                parent.out.writeInt(rank);
+                parent.out.flush();
+            }
+
+            server.setSoTimeout(timeoutMillis);
+            int connected = 0;
+            while (connected < children.length) {
+                Socket socket = server.accept();
+                Link link;
+                int childGeneration, childRank;
+                try {
+                    link = new Link(socket, timeoutMillis);
+                    childGeneration = link.in.readInt();
+                    childRank = link.in.readInt();
+                } catch (IOException e) {
+                    closeQuietly(socket); // e.g. a stale connection whose worker is gone
+                    continue;
+                }
+                int index = childRank - (2 * rank + 1);
+                if (childGeneration != generation || index < 0 || index >= children.length
+                        || children[index] != null) {
+                    link.socket.close();
+                    continue;
+                }
+                children[index] = link;
+                connected++;
+            }
+        } catch (SocketTimeoutException e) {
+            close(parent, children);
+            throw new IOException("Timed out connecting worker " + rank + " to its neighbours", e);
+        } catch (IOException e) {
+            close(parent, children);
+            throw e;
+        }
+        return new TreeAllreduce(parent, children);
+    }
+
+    /* values = sum of the values of all workers */
+    void allreduce(double[] values) throws IOException {
+        if (received.length != values.length)
+            received = new double[values.length];
+        for (Link child : children) {
+            read(child, received);
+            for (int i = 0; i < values.length; i++)
+                values[i] += received[i];
+        }
+        if (parent != null) {
+            write(parent, values);
+            read(parent, values);
+        }
+        for (Link child : children)
+            write(child, values);
+    }
+
+    private static void read(Link link, double[] values) throws IOException {
+        int length = link.in.readInt();
+        if (length != values.length)
+            throw new IOException("Expected " + values.length + " values from a neighbour, got " + length);
+        for (int i = 0; i < length; i++)
+            values[i] = link.in.readDouble();
+    }
+
+    private static void write(Link link, double[] values) throws IOException {
+        link.out.writeInt(values.length);
+        for (double value : values)
+            link.out.writeDouble(value);
+        link.out.flush();
+    }
+
+    @Override
+    public void close() {
+        close(parent, children);
+    }
+
+    private static void close(Link parent, Link[] children) {
+        if (parent != null)
+            closeQuietly(parent.socket);
+        for (Link child : children)
+            if (child != null)
+                closeQuietly(child.socket);
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // already broken
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package Distributed;
+
+import LogisticRegression.ParallelLogisticRegression;
+import Utils.ColumnStatistics;
+import Utils.DataSet;
+import Utils.Matrix;
+import Utils.Scaler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One process of a distributed fit (see Coordinator).
+ * It loads the shards of the input file given by the coordinator, computes the gradient of
+ * its rows with a ParallelLogisticRegression (all the cores of the process), and sums it with
+ * the other workers through a tree allreduce, so every worker applies the same update.
+ * When a neighbour fails or times out the worker reports the iterations it completed and waits
+ * for the coordinator to restart the fit, possibly with more shards, from the last iteration
+ * completed by all. It keeps the weights before the last update for that.
+ */
+public class Worker implements AutoCloseable {
+
+    /* rows of one byte range of the input file */
+    private static final class Shard {
+        final DataSet data;
+        boolean scaled; // false until the scaler of the fit is known
+
+        Shard(DataSet data) {
+            this.data = data;
+        }
+    }
+
+    private static final int CONNECT_ATTEMPTS = 60;
+    private static final long CONNECT_RETRY_MILLIS = 500;
+
+    private final Socket control;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final ServerSocket server; // accepts the connections of the children in the tree
+    private final int numThreads;
+    private ParallelLogisticRegression trainer; // gradients of the local rows, created with the first START
+
+    private final List<Shard> shards = new ArrayList<>();
+    private String fileName;
+    private double learningRate;
+    private int numIterations;
+    private double l2;
+    private int timeoutMillis;
+    private Scaler scaler; // received with the first START
+
+    private double[] weights;
+    private double[] previousWeights; // before the last update, to step back after a failed iteration
+    private int completed; // iterations applied to weights
+    private double loss; // average loss of the last completed iteration
+
+    public Worker(String coordinatorHost, int coordinatorPort, int numThreads) throws IOException {
+        this.server = new ServerSocket(0);
+        this.control = connect(coordinatorHost, coordinatorPort);
+        this.in = new DataInputStream(new BufferedInputStream(control.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(control.getOutputStream()));
+        this.numThreads = numThreads;
+    }
+
+    /* the coordinator may still be starting: retry for a while */
+    private static Socket connect(String host, int port) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return new Socket(host, port);
+            } catch (ConnectException e) {
+                if (attempt == CONNECT_ATTEMPTS)
+                    throw e;
+                try {
+                    Thread.sleep(CONNECT_RETRY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Register with the coordinator and follow its instructions until the fit is over
+     */
+    public void run() throws IOException {
+        out.writeInt(Messages.REGISTER);
+        out.writeInt(server.getLocalPort());
+        out.flush();
+        while (true) {
+            int type = in.readInt();
+            switch (type) {
+                case Messages.SHARDS:
+                    loadShards();
+                    break;
+                case Messages.START:
+                    train();
+                    break;
+                case Messages.SHUTDOWN:
+                    return;
+                default:
+                    throw new IOException("Unexpected message " + type + " from the coordinator");
+            }
+        }
+    }
+
+    /* load the new byte ranges and send the statistics of their raw rows */
+    private void loadShards() throws IOException {
+        fileName = in.readUTF();
+        learningRate = in.readDouble();
+        numIterations = in.readInt();
+        l2 = in.readDouble();
+        timeoutMillis = in.readInt();
+        int count = in.readInt();
+        String[] varNames = null;
+        ColumnStatistics stats = null;
+        for (int k = 0; k < count; k++) {
+            long start = in.readLong();
+            long end = in.readLong();
+            DataSet data = new DataSet();
+            data.readDataSet(fileName, start, end);
+            if (data.getX() == null)
+                throw new IOException("Could not read bytes [" + start + ", " + end + ") of " + fileName);
+            varNames = data.getVarNames();
+            ColumnStatistics shardStats = ColumnStatistics.compute(data.getX());
+            if (stats == null)
+                stats = shardStats;
+            else
+                stats.merge(shardStats);
+            Shard shard = new Shard(data);
+            if (scaler != null) {
+                scaler.transform(data.getX());
+                shard.scaled = true;
+            }
+            shards.add(shard);
+            System.out.println("Loaded " + data.getX().numRows() + " rows from bytes [" + start + ", " + end + ")");
+        }
+
+        out.writeInt(Messages.STATS);
+        Messages.writeStrings(out, varNames);
+        Messages.writeStatistics(out, stats);
+        out.flush();
+    }
+
+    /* one generation of the tree: iterate from the given iteration until done or a failure */
+    private void train() throws IOException {
+        int generation = in.readInt();
+        int rank = in.readInt();
+        String[] hosts = Messages.readStrings(in);
+        int[] ports = new int[hosts.length];
+        for (int k = 0; k < ports.length; k++)
+            ports[k] = in.readInt();
+        Scaler received = Messages.readScaler(in);
+        int first = in.readInt();
+
+        if (scaler == null)
+            scaler = received;
+        for (Shard shard : shards) {
+            if (!shard.scaled) {
+                scaler.transform(shard.data.getX());
+                shard.scaled = true;
+            }
+        }
+        int d = scaler.numCols();
+        if (weights == null) {
+            weights = new double[d];
+            previousWeights = new double[d];
+            trainer = new ParallelLogisticRegression(d, learningRate, numIterations, 0.5, numThreads);
+        }
+        if (completed == first + 1) {
+            // the last update was not applied everywhere: undo it
+            System.arraycopy(previousWeights, 0, weights, 0, d);
+            completed = first;
+        } else if (completed != first) {
+            throw new IOException("Cannot restart at iteration " + first + " after " + completed + " iterations");
+        }
+
+        int status = Messages.DONE;
+        try (TreeAllreduce tree = TreeAllreduce.connect(server, rank, hosts, ports, generation, timeoutMillis)) {
+            iterate(tree, rank, d);
+        } catch (IOException e) {
+            System.out.println("Iteration " + (completed + 1) + " failed: " + e);
+            status = Messages.FAILED;
+        }
+
+        out.writeInt(Messages.REPORT);
+        out.writeInt(status);
+        out.writeInt(completed);
+        out.writeDouble(loss);
+        out.writeBoolean(rank == 0 && status == Messages.DONE);
+        if (rank == 0 && status == Messages.DONE)
+            Messages.writeDoubles(out, weights);
+        out.flush();
+    }
+
+    /* Batch Gradient Descent on the rows of all workers: vector = gradient, loss, rows */
+    private void iterate(TreeAllreduce tree, int rank, int d) throws IOException {
+        double[] vector = new double[d + 2];
+        double[] gradient = new double[d];
+        while (completed < numIterations) {
+            Arrays.fill(vector, 0.0);
+            for (Shard shard : shards) {
+                Matrix X = shard.data.getX();
+                vector[d] += trainer.computeLossAndGradient(X, shard.data.getY(), weights, gradient);
+                vector[d + 1] += X.numRows();
+                for (int j = 0; j < d; j++)
+                    vector[j] += gradient[j];
+            }
+
+            tree.allreduce(vector);
+
+            // same update as ParallelLogisticRegression.trainModelWithBGD, identical on every worker
+            double n = vector[d + 1];
+            double squaredNorm = 0.0;
+            for (int j = 1; j < d && l2 != 0.0; j++) {
+                vector[j] += n * l2 * weights[j];
+                squaredNorm += weights[j] * weights[j];
+            }
+            System.arraycopy(weights, 0, previousWeights, 0, d);
+            for (int j = 0; j < d; j++)
+                weights[j] -= learningRate * vector[j] / n;
+            loss = (vector[d] + 0.5 * n * l2 * squaredNorm) / n;
+            completed++;
+
+            if (rank == 0 && completed % 100 == 0)
+                System.out.println("Iteration " + completed + ": loss = " + loss);
+        }
+    }
+
+    /**
+     * Stop the training threads and close the connections
+     */
+    @Override
+    public void close() throws IOException {
+        if (trainer != null)
+            trainer.close();
+        server.close();
+        control.close();
+    }
+}
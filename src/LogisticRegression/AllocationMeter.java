@@ -0,0 +1,38 @@
+package LogisticRegression;
+
+import java.lang.management.ManagementFactory;
+
+/*
+ * Bytes allocated by a set of threads, through the HotSpot extension of ThreadMXBean.
+ * Returns -1 on JVMs without it.
+ */
+class AllocationMeter {
+
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    private AllocationMeter() {
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+                return threads;
+            }
+        }
+        return null;
+    }
+
+    /* total for the calling thread and the given ones */
+    static long allocatedBytes(long[] threadIds) {
+        if (THREADS == null)
+            return -1;
+        long total = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+        if (threadIds.length > 0)
+            for (long bytes : THREADS.getThreadAllocatedBytes(threadIds))
+                total += Math.max(0, bytes);
+        return total;
+    }
+}
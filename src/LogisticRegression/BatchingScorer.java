@@ -0,0 +1,137 @@
+package LogisticRegression;
+
+import Utils.Matrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups single-row requests from concurrent callers into micro-batches.
+ * A dispatcher thread waits for the first request, collects more for at most maxDelay
+ * (or until maxBatchSize rows are pending), then scores the whole batch at once
+ * and completes the callers' futures.
+ */
+public class BatchingScorer implements AutoCloseable {
+
+    private final LogisticScorer scorer;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread dispatcher;
+    private volatile boolean closed;
+
+    private static class Request {
+        final double[] x;
+        final CompletableFuture<Double> result = new CompletableFuture<>();
+
+        Request(double[] x) {
+            this.x = x;
+        }
+    }
+
+    public BatchingScorer(LogisticScorer scorer, int maxBatchSize, long maxDelay, TimeUnit unit) {
+        if (maxBatchSize < 1)
+            throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+        this.scorer = scorer;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        dispatcher = new Thread(this::dispatchLoop, "lr-batching-scorer");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Queue one row; the future completes with its probability of class 1
+     */
+    public CompletableFuture<Double> submit(double[] x) {
+        if (x.length != scorer.numFeatures())
+            throw new IllegalArgumentException("Expected " + scorer.numFeatures() + " features, got " + x.length);
+        Request request = new Request(x);
+        if (!closed) {
+            queue.add(request);
+            // close may have come in between: the dispatcher takes the request (and serves or fails it),
+            // unless its final drain is already over and the request is still queued
+            if (!closed || !queue.remove(request))
+                return request.result;
+        }
+        request.result.completeExceptionally(new IllegalStateException("Scorer is closed"));
+        return request.result;
+    }
+
+    /**
+     * Blocking variant of submit
+     */
+    public double predict(double[] x) {
+        return submit(x).join();
+    }
+
+    private void dispatchLoop() {
+        List<Request> batch = new ArrayList<>(maxBatchSize);
+        Matrix rows = Matrix.allocate(maxBatchSize, scorer.numFeatures());
+        double[] weights = scorer.getWeights();
+        double[] scores = new double[maxBatchSize];
+
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Request first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null)
+                    continue;
+                batch.add(first);
+
+                // wait a little for other callers to fill the batch
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0)
+                        break;
+                    Request next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null)
+                        break;
+                    batch.add(next);
+                }
+
+                int size = batch.size();
+                for (int i = 0; i < size; i++) {
+                    double[] x = batch.get(i).x;
+                    for (int j = 0; j < x.length; j++)
+                        rows.set(i, j, x[j]);
+                }
+                LogisticKernels.score(rows, weights, 0, size, scores);
+                for (int i = 0; i < size; i++)
+                    batch.get(i).result.complete(scores[i]);
+            } catch (InterruptedException e) {
+                break;
+            } catch (RuntimeException e) {
+                for (Request request : batch)
+                    request.result.completeExceptionally(e);
+            }
+            batch.clear();
+        }
+
+        // fail whatever could not be served
+        for (Request request : batch)
+            request.result.completeExceptionally(new IllegalStateException("Scorer is closed"));
+        Request request;
+        while ((request = queue.poll()) != null)
+            request.result.completeExceptionally(new IllegalStateException("Scorer is closed"));
+    }
+
+    /**
+     * Serve the pending requests, then stop the dispatcher
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            dispatcher.interrupt();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package LogisticRegression;
+
+import java.util.Arrays;
+
+/*
+ * Reproducible sums of per-row results (Reduction.TREE and COMPENSATED_TREE).
+ * The rows are cut into blocks whose size only depends on the number of rows and the number
+ * of summed values, every block is summed into its own buffer in row order, then the blocks
+ * are added pairwise along a fixed binary tree. The result is the same whatever thread ran
+ * each block, so sequential and parallel fits agree bit for bit (the rows of a block are read
+ * through Matrix.reproducible, so the block sums do not depend on the CPU either).
+ * With compensation every addition of the tree is an exact two-sum and its rounding error
+ * is accumulated next to the sum and added back at the end.
+ */
+final class BlockReducer {
+
+    private static final int MIN_BLOCK_ROWS = 4096; // keeps the tree small compared with the row work
+    private static final long MAX_BUFFERED = 1 << 23; // values kept for all blocks (64 MB)
+
+    private final boolean compensated;
+    private int blockRows;
+    private int numBlocks;
+    private int width;
+    private double[][] sums; // per block, the first width values are used
+    private double[][] errors; // rounding errors of the tree additions, compensated only
+
+    BlockReducer(boolean compensated) {
+        this.compensated = compensated;
+    }
+
+    static BlockReducer of(Reduction reduction) {
+        return (reduction == Reduction.PLAIN) ? null : new BlockReducer(reduction == Reduction.COMPENSATED_TREE);
+    }
+
+    /* fix the blocks for n rows producing width values each */
+    void prepare(int n, int width) {
+        long maxBlocks = Math.max(1, MAX_BUFFERED / Math.max(width, 1));
+        long rows = Math.max(MIN_BLOCK_ROWS, (n + maxBlocks - 1) / maxBlocks);
+        int unit = LogisticKernels.BLOCK_SIZE;
+        this.blockRows = (int) Math.min((rows + unit - 1) / unit * unit, Math.max(n, 1));
+        this.numBlocks = (n + blockRows - 1) / blockRows;
+        this.width = width;
+        if (sums == null || sums.length < numBlocks) {
+            sums = (sums == null) ? new double[numBlocks][] : Arrays.copyOf(sums, numBlocks);
+            errors = compensated ? ((errors == null) ? new double[numBlocks][] : Arrays.copyOf(errors, numBlocks)) : null;
+        }
+        for (int b = 0; b < numBlocks; b++) {
+            if (sums[b] == null || sums[b].length < width) {
+                sums[b] = new double[width];
+                if (compensated)
+                    errors[b] = new double[width];
+            }
+        }
+    }
+
+    int getBlockRows() {
+        return blockRows;
+    }
+
+    int getNumBlocks() {
+        return numBlocks;
+    }
+
+    /* zero-filled buffer of block b, to accumulate the rows of the block into */
+    double[] clearedBlock(int b) {
+        Arrays.fill(sums[b], 0, width, 0.0);
+        if (compensated)
+            Arrays.fill(errors[b], 0, width, 0.0);
+        return sums[b];
+    }
+
+    /* add up the blocks for values [from, to); ranges of values can be reduced concurrently */
+    void reduce(int from, int to) {
+        for (int stride = 1; stride < numBlocks; stride *= 2) {
+            for (int b = 0; b + stride < numBlocks; b += 2 * stride) {
+                double[] left = sums[b];
+                double[] right = sums[b + stride];
+                if (!compensated) {
+                    for (int j = from; j < to; j++)
+                        left[j] += right[j];
+                    continue;
+                }
+                double[] leftErrors = errors[b];
+                double[] rightErrors = errors[b + stride];
+                for (int j = from; j < to; j++) {
+                    double a = left[j];
+                    double c = right[j];
+                    double s = a + c;
+                    double v = s - a;
+                    leftErrors[j] += rightErrors[j] + ((a - (s - v)) + (c - v));
+                    left[j] = s;
+                }
+            }
+        }
+    }
+
+    /* value j summed over all rows, after reduce */
+    double total(int j) {
+        if (numBlocks == 0)
+            return 0.0;
+        return compensated ? sums[0][j] + errors[0][j] : sums[0][j];
+    }
+}
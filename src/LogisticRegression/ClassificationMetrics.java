@@ -0,0 +1,213 @@
+package LogisticRegression;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * Quality of binary predictions, computed by a ModelEvaluator in one pass over the scores.
+ * Scores are grouped in numBins equal-width probability bins, so the confusion matrix is available
+ * for every threshold k / numBins; any other threshold is rounded up to the next one.
+ * Immutable.
+ */
+public final class ClassificationMetrics {
+
+    /**
+     * Counts of the predictions at one threshold (class 1 when the score is >= threshold)
+     */
+    public static final class ConfusionMatrix {
+        private final double threshold;
+        private final long truePositives;
+        private final long falsePositives;
+        private final long trueNegatives;
+        private final long falseNegatives;
+
+        ConfusionMatrix(double threshold, long truePositives, long falsePositives, long trueNegatives,
+                        long falseNegatives) {
+            this.threshold = threshold;
+            this.truePositives = truePositives;
+            this.falsePositives = falsePositives;
+            this.trueNegatives = trueNegatives;
+            this.falseNegatives = falseNegatives;
+        }
+
+        public double getThreshold() {
+            return threshold;
+        }
+
+        public long getTruePositives() {
+            return truePositives;
+        }
+
+        public long getFalsePositives() {
+            return falsePositives;
+        }
+
+        public long getTrueNegatives() {
+            return trueNegatives;
+        }
+
+        public long getFalseNegatives() {
+            return falseNegatives;
+        }
+
+        public double getPrecision() {
+            return 1.0 * truePositives / (truePositives + falsePositives);
+        }
+
+        public double getRecall() {
+            return 1.0 * truePositives / (truePositives + falseNegatives);
+        }
+
+        public double getAccuracy() {
+            return 1.0 * (truePositives + trueNegatives)
+                    / (truePositives + trueNegatives + falsePositives + falseNegatives);
+        }
+
+        public double getF1() {
+            return 2.0 * truePositives / (2.0 * truePositives + falsePositives + falseNegatives);
+        }
+
+        @Override
+        public String toString() {
+            return "TP= " + truePositives + " FP= " + falsePositives + " TN= " + trueNegatives
+                    + " FN= " + falseNegatives;
+        }
+    }
+
+    private final int numBins;
+    private final long[] positivesAbove; // positivesAbove[k]: rows of class 1 with score >= k / numBins
+    private final long[] negativesAbove; // same for class 0
+    private final double logLoss;
+    private final double rocAuc;
+    private final double prAuc;
+
+    /* positives[b], negatives[b]: rows of each class whose score falls in bin b */
+    ClassificationMetrics(long[] positives, long[] negatives, double logLossSum) {
+        this.numBins = positives.length;
+        this.positivesAbove = new long[numBins + 1];
+        this.negativesAbove = new long[numBins + 1];
+        for (int b = numBins - 1; b >= 0; b--) {
+            positivesAbove[b] = positivesAbove[b + 1] + positives[b];
+            negativesAbove[b] = negativesAbove[b + 1] + negatives[b];
+        }
+        long numPositives = positivesAbove[0];
+        long numNegatives = negativesAbove[0];
+        this.logLoss = logLossSum / (numPositives + numNegatives);
+
+        // ROC-AUC: probability that a positive scores above a negative, ties (same bin) count one half.
+        // PR-AUC: average precision, the precision at each bin weighted by the recall it adds.
+        double pairs = 0.0;
+        double precisionSum = 0.0;
+        for (int b = 0; b < numBins; b++) {
+            pairs += negatives[b] * (positivesAbove[b + 1] + 0.5 * positives[b]);
+            if (positives[b] > 0)
+                precisionSum += positives[b] * (1.0 * positivesAbove[b] / (positivesAbove[b] + negativesAbove[b]));
+        }
+        this.rocAuc = pairs / ((double) numPositives * numNegatives);
+        this.prAuc = precisionSum / numPositives;
+    }
+
+    public long getNumRows() {
+        return positivesAbove[0] + negativesAbove[0];
+    }
+
+    public long getNumPositives() {
+        return positivesAbove[0];
+    }
+
+    public long getNumNegatives() {
+        return negativesAbove[0];
+    }
+
+    /**
+     * Average negative log-likelihood of the labels
+     */
+    public double getLogLoss() {
+        return logLoss;
+    }
+
+    /**
+     * Area under the ROC curve (NaN when the labels have a single class)
+     */
+    public double getRocAuc() {
+        return rocAuc;
+    }
+
+    /**
+     * Area under the precision-recall curve, as average precision (NaN without positives)
+     */
+    public double getPrAuc() {
+        return prAuc;
+    }
+
+    /**
+     * Thresholds with an exact confusion matrix are k / getNumBins() for k = 0..getNumBins()
+     */
+    public int getNumBins() {
+        return numBins;
+    }
+
+    /**
+     * Confusion matrix when class 1 is predicted for scores >= threshold
+     */
+    public ConfusionMatrix getConfusionMatrix(double threshold) {
+        return confusionMatrix(binOf(threshold));
+    }
+
+    /**
+     * Threshold k / getNumBins() with the highest accuracy (the lowest one on ties)
+     */
+    public double getBestThreshold() {
+        int best = 0;
+        long bestCorrect = -1;
+        for (int k = 0; k <= numBins; k++) {
+            long correct = positivesAbove[k] + (negativesAbove[0] - negativesAbove[k]);
+            if (correct > bestCorrect) {
+                bestCorrect = correct;
+                best = k;
+            }
+        }
+        return (double) best / numBins;
+    }
+
+    /**
+     * Threshold k / getNumBins() with the highest F1 score (the lowest one on ties)
+     */
+    public double getBestF1Threshold() {
+        int best = 0;
+        double bestF1 = -1.0;
+        for (int k = 0; k <= numBins; k++) {
+            double f1 = confusionMatrix(k).getF1();
+            if (f1 > bestF1) {
+                bestF1 = f1;
+                best = k;
+            }
+        }
+        return (double) best / numBins;
+    }
+
+    /* smallest k with k / numBins >= threshold */
+    private int binOf(double threshold) {
+        if (Double.isNaN(threshold))
+            throw new IllegalArgumentException("Threshold must be a number");
+        if (threshold <= 0.0)
+            return 0;
+        if (threshold >= 1.0)
+            return numBins;
+        return (int) Math.ceil(threshold * numBins);
+    }
+
+    private ConfusionMatrix confusionMatrix(int k) {
+        long tp = positivesAbove[k];
+        long fp = negativesAbove[k];
+        return new ConfusionMatrix((double) k / numBins, tp, fp, negativesAbove[0] - fp, positivesAbove[0] - tp);
+    }
+
+    @Override
+    public String toString() {
+        DecimalFormat df = new DecimalFormat("##.###");
+        df.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.US));
+        return "Log-loss= " + df.format(logLoss) + " ROC-AUC= " + df.format(rocAuc) + " PR-AUC= " + df.format(prAuc);
+    }
+}
@@ -0,0 +1,223 @@
+package LogisticRegression;
+
+import Utils.Matrix;
+import Utils.SparseMatrix;
+
+/*
+ * Column-major copy of a feature matrix for CoordinateDescent, which reads one column at a time.
+ * Dense matrices keep their precision (double, float or quantized codes); sparse ones are stored in
+ * compressed sparse column (CSC) format, so a column pass costs one operation per non-zero.
+ * Every operation covers the rows [from, to) of column j.
+ */
+abstract class Columns {
+
+    static Columns of(Matrix X) {
+        if (X instanceof SparseMatrix)
+            return new Sparse((SparseMatrix) X);
+        if (X.isSparse())
+            throw new IllegalArgumentException("Unsupported sparse matrix: " + X.getClass().getSimpleName());
+        switch (X.getPrecision()) {
+            case DOUBLE:
+                return new Doubles(X);
+            case FLOAT:
+                return new Floats(X);
+            default:
+                return new Quantized(X.convert(Matrix.Layout.COLUMN_MAJOR, X.getPrecision()));
+        }
+    }
+
+    /* acc[i] += alpha * x_ij */
+    abstract void addScaled(int j, int from, int to, double alpha, double[] acc);
+
+    /* sum of v_i x_ij r_i, and sum of v_i x_ij^2 into squares[slot] unless squares is null */
+    abstract double weightedDot(int j, int from, int to, double[] v, double[] r, double[] squares, int slot);
+
+    private static final class Doubles extends Columns {
+        private final double[][] columns; // columns[j][i] = x_ij
+
+        Doubles(Matrix X) {
+            columns = new double[X.numCols()][X.numRows()];
+            double[] row = new double[X.numCols()];
+            for (int i = 0; i < X.numRows(); i++) {
+                X.copyRow(i, row);
+                for (int j = 0; j < row.length; j++)
+                    columns[j][i] = row[j];
+            }
+        }
+
+        @Override
+        void addScaled(int j, int from, int to, double alpha, double[] acc) {
+            double[] x = columns[j];
+            for (int i = from; i < to; i++)
+                acc[i] += alpha * x[i];
+        }
+
+        @Override
+        double weightedDot(int j, int from, int to, double[] v, double[] r, double[] squares, int slot) {
+            double[] x = columns[j];
+            double sum = 0.0;
+            if (squares == null) {
+                for (int i = from; i < to; i++)
+                    sum += v[i] * x[i] * r[i];
+                return sum;
+            }
+            double sumSquares = 0.0;
+            for (int i = from; i < to; i++) {
+                double vx = v[i] * x[i];
+                sum += vx * r[i];
+                sumSquares += vx * x[i];
+            }
+            squares[slot] = sumSquares;
+            return sum;
+        }
+    }
+
+    private static final class Floats extends Columns {
+        private final float[][] columns; // columns[j][i] = x_ij
+
+        Floats(Matrix X) {
+            columns = new float[X.numCols()][X.numRows()];
+            double[] row = new double[X.numCols()];
+            for (int i = 0; i < X.numRows(); i++) {
+                X.copyRow(i, row);
+                for (int j = 0; j < row.length; j++)
+                    columns[j][i] = (float) row[j]; // exact, the values were floats
+            }
+        }
+
+        @Override
+        void addScaled(int j, int from, int to, double alpha, double[] acc) {
+            float[] x = columns[j];
+            for (int i = from; i < to; i++)
+                acc[i] += alpha * x[i];
+        }
+
+        @Override
+        double weightedDot(int j, int from, int to, double[] v, double[] r, double[] squares, int slot) {
+            float[] x = columns[j];
+            double sum = 0.0;
+            if (squares == null) {
+                for (int i = from; i < to; i++)
+                    sum += v[i] * x[i] * r[i];
+                return sum;
+            }
+            double sumSquares = 0.0;
+            for (int i = from; i < to; i++) {
+                double xi = x[i];
+                double vx = v[i] * xi;
+                sum += vx * r[i];
+                sumSquares += vx * xi;
+            }
+            squares[slot] = sumSquares;
+            return sum;
+        }
+    }
+
+    /* quantized codes, dequantized one block of a column at a time into a per-thread buffer */
+    private static final class Quantized extends Columns {
+        private static final ThreadLocal<double[]> SCRATCH = ThreadLocal.withInitial(() -> new double[0]);
+
+        private final Matrix X;
+
+        Quantized(Matrix X) {
+            this.X = X;
+        }
+
+        private double[] column(int j, int from, int to) {
+            double[] x = SCRATCH.get();
+            if (x.length < to - from) {
+                x = new double[to - from];
+                SCRATCH.set(x);
+            }
+            X.copyColumn(j, from, to, x, 0);
+            return x;
+        }
+
+        @Override
+        void addScaled(int j, int from, int to, double alpha, double[] acc) {
+            double[] x = column(j, from, to);
+            for (int i = from; i < to; i++)
+                acc[i] += alpha * x[i - from];
+        }
+
+        @Override
+        double weightedDot(int j, int from, int to, double[] v, double[] r, double[] squares, int slot) {
+            double[] x = column(j, from, to);
+            double sum = 0.0;
+            double sumSquares = 0.0;
+            for (int i = from; i < to; i++) {
+                double vx = v[i] * x[i - from];
+                sum += vx * r[i];
+                sumSquares += vx * x[i - from];
+            }
+            if (squares != null)
+                squares[slot] = sumSquares;
+            return sum;
+        }
+    }
+
+    /* CSC: the non-zeros of column j are values[k], in row rowIndices[k], for k in [pointers[j], pointers[j + 1]) */
+    private static final class Sparse extends Columns {
+        private final int[] pointers;
+        private final int[] rowIndices;
+        private final double[] values;
+
+        Sparse(SparseMatrix X) {
+            int n = X.numRows();
+            int d = X.numCols();
+            int[] colIndices = X.getColumnIndices();
+            double[] source = X.getValues();
+            pointers = new int[d + 1];
+            for (int i = 0; i < n; i++)
+                for (int k = X.rowStart(i); k < X.rowEnd(i); k++)
+                    pointers[colIndices[k] + 1]++;
+            for (int j = 0; j < d; j++)
+                pointers[j + 1] += pointers[j];
+            rowIndices = new int[pointers[d]];
+            values = new double[pointers[d]];
+            int[] next = pointers.clone();
+            for (int i = 0; i < n; i++) { // rows in increasing order within every column
+                for (int k = X.rowStart(i); k < X.rowEnd(i); k++) {
+                    int p = next[colIndices[k]]++;
+                    rowIndices[p] = i;
+                    values[p] = source[k];
+                }
+            }
+        }
+
+        /* first non-zero of column j in a row >= from */
+        private int start(int j, int from) {
+            int low = pointers[j];
+            int high = pointers[j + 1];
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (rowIndices[mid] < from)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            return low;
+        }
+
+        @Override
+        void addScaled(int j, int from, int to, double alpha, double[] acc) {
+            for (int k = start(j, from), end = pointers[j + 1]; k < end && rowIndices[k] < to; k++)
+                acc[rowIndices[k]] += alpha * values[k];
+        }
+
+        @Override
+        double weightedDot(int j, int from, int to, double[] v, double[] r, double[] squares, int slot) {
+            double sum = 0.0;
+            double sumSquares = 0.0;
+            for (int k = start(j, from), end = pointers[j + 1]; k < end && rowIndices[k] < to; k++) {
+                int i = rowIndices[k];
+                double vx = v[i] * values[k];
+                sum += vx * r[i];
+                sumSquares += vx * values[k];
+            }
+            if (squares != null)
+                squares[slot] = sumSquares;
+            return sum;
+        }
+    }
+}
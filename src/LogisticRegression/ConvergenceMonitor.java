@@ -0,0 +1,91 @@
+package LogisticRegression;
+
+import java.util.Arrays;
+
+/*
+ * Records the loss of every iteration and applies the StoppingCriteria.
+ * With validation data it also remembers the weights with the lowest validation loss.
+ */
+class ConvergenceMonitor {
+    private final StoppingCriteria criteria;
+    private double[] lossHistory = new double[16];
+    private double[] validationLossHistory = new double[16];
+    private int size;
+    private double[] bestWeights;
+    private double bestValidationLoss = Double.POSITIVE_INFINITY;
+    private int sinceBest;
+    private String reason;
+
+    ConvergenceMonitor(StoppingCriteria criteria) {
+        this.criteria = criteria;
+    }
+
+    /**
+     * Check the average gradient at the current weights, before the update
+     */
+    boolean gradientConverged(double[] gradient, int n) {
+        double tolerance = criteria.getGradientTolerance();
+        if (tolerance > 0 && Objective.normInf(gradient) / n < tolerance) {
+            reason = "gradient norm below " + tolerance;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Record an iteration: training loss before the update, validation loss after it
+     * (NaN without validation data). Returns true when training should stop.
+     */
+    boolean record(double loss, double validationLoss, double[] weights) {
+        if (size == lossHistory.length) {
+            lossHistory = Arrays.copyOf(lossHistory, 2 * size);
+            validationLossHistory = Arrays.copyOf(validationLossHistory, 2 * size);
+        }
+        lossHistory[size] = loss;
+        validationLossHistory[size] = validationLoss;
+        size++;
+
+        if (!Double.isNaN(validationLoss)) {
+            if (validationLoss < bestValidationLoss) {
+                bestValidationLoss = validationLoss;
+                bestWeights = weights.clone();
+                sinceBest = 0;
+            } else if (criteria.getPatience() > 0 && ++sinceBest >= criteria.getPatience()) {
+                reason = "no validation improvement in " + criteria.getPatience() + " iterations";
+                return true;
+            }
+        }
+
+        double tolerance = criteria.getLossTolerance();
+        if (tolerance > 0 && size > 1) {
+            double previous = lossHistory[size - 2];
+            if (Math.abs(previous - loss) / Math.max(1.0, Math.abs(previous)) < tolerance) {
+                reason = "relative loss change below " + tolerance;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Weights with the lowest validation loss, null without validation data
+     */
+    double[] getBestWeights() {
+        return bestWeights;
+    }
+
+    /**
+     * Why training stopped early, null if it ran all iterations
+     */
+    String getStopReason() {
+        return reason;
+    }
+
+    double[] getLossHistory() {
+        return Arrays.copyOf(lossHistory, size);
+    }
+
+    double[] getValidationLossHistory() {
+        return Arrays.copyOf(validationLossHistory, size);
+    }
+}
@@ -0,0 +1,258 @@
+package LogisticRegression;
+
+import Utils.Matrix;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Coordinate descent on the average log-loss plus an elastic-net penalty (the glmnet scheme).
+ * Every outer iteration replaces the log-loss by its quadratic approximation at the current
+ * weights (row weights v = p (1 - p), residuals r = (y - p) / v) and minimizes it one weight at a
+ * time in closed form, with soft-thresholding for the L1 part. The residuals are updated after
+ * every change, so a coordinate costs one pass over its column. Full sweeps alternate with sweeps
+ * over the non-zero weights only (the active set), until a full sweep changes nothing.
+ * The columns are copied once into a column-major layout that keeps the precision of X, or into a
+ * compressed sparse column layout for a SparseMatrix (see Columns). Each column pass is split in fixed
+ * blocks of rows among the workers and the block sums are added in order, so the weights do not
+ * depend on the number of workers.
+ */
+final class CoordinateDescent {
+
+    private static final int BLOCK_ROWS = 8192; // rows of a block, the unit of work of a worker
+    private static final double MIN_VARIANCE = 1e-5; // lower bound of p (1 - p), keeps the residuals finite
+    private static final int MAX_SWEEPS = 1000; // sweeps over the coordinates per quadratic approximation
+    private static final int MAX_HALVINGS = 30; // steps back towards the previous weights when the loss grows
+    private static final double SLACK = 1e-12; // relative loss increase taken as rounding noise
+    private static final double INNER_PRECISION = 1e-2; // sweeps stop below this fraction of the last scaled change
+    private static final double INITIAL_CHANGE = 1e-2; // scaled change assumed before the first approximation
+
+    private final Columns columns;
+    private final int[] Y;
+    private final int n;
+    private final int d;
+    private final TrainingEngine engine;
+    private final int workers;
+    private final long seed;
+
+    private final double[] eta; // X w
+    private final double[] v; // row weights of the quadratic approximation
+    private final double[] r; // residuals of the quadratic approximation at the current weights
+    private final double[] curvature; // sum of v x_j^2 per column, NaN until computed for the approximation
+    private final double[] blockSums;
+    private final double[] blockCurvatures;
+    private final int[] order; // coordinates in the order of the sweeps
+    private final TrainingEngine.PartitionTask columnPass = this::columnBlock;
+
+    // pass in progress, read by the workers
+    private int column;
+    private boolean computeCurvature;
+    private int pendingColumn = -1; // column of the last change not applied to r yet, -1 if none
+    private double pendingDelta;
+    private int[] nonZeros; // columns of the non-zero weights, for the predictor
+    private int numNonZeros;
+    private double[] predictorWeights;
+
+    private double loss; // average log-loss at the last weights
+
+    CoordinateDescent(Matrix X, int[] Y, TrainingEngine engine, int workers, long seed) {
+        this.n = X.numRows();
+        this.d = X.numCols();
+        this.Y = Y;
+        this.engine = engine;
+        this.workers = workers;
+        this.seed = seed;
+
+        columns = Columns.of(X);
+        eta = new double[n];
+        v = new double[n];
+        r = new double[n];
+        curvature = new double[d];
+        int numBlocks = (n + BLOCK_ROWS - 1) / BLOCK_ROWS;
+        blockSums = new double[numBlocks];
+        blockCurvatures = new double[numBlocks];
+        order = new int[d];
+        nonZeros = new int[d];
+    }
+
+    /**
+     * Minimize from w, which is updated in place, with at most maxIterations quadratic
+     * approximations. Stops when an approximation moves no weight by more than tolerance
+     * (scaled by the curvature of its column). Returns the number of approximations.
+     */
+    int minimize(double[] w, double l1, double l2, boolean shuffle, int maxIterations, double tolerance) {
+        engine.partitionBlocks(n, BLOCK_ROWS, workers);
+        SplittableRandom random = shuffle ? new SplittableRandom(seed) : null;
+        for (int j = 0; j < d; j++)
+            order[j] = j;
+        double[] previous = new double[d];
+        double objective = computePredictor(w) + Penalty.value(w, l1, l2);
+
+        int iter = 0;
+        double change = INITIAL_CHANGE;
+        while (iter < maxIterations) {
+            approximate();
+            System.arraycopy(w, 0, previous, 0, d);
+            // far from the optimum the approximation is rough: solve it only as precisely as the last step was large
+            solveQuadratic(w, l1, l2, random, Math.max(tolerance, INNER_PRECISION * change));
+            iter++;
+
+            // the quadratic model may overshoot far from the optimum: step back until the loss decreases
+            double newObjective = computePredictor(w) + Penalty.value(w, l1, l2);
+            for (int h = 0; h < MAX_HALVINGS && newObjective > objective + SLACK * Math.abs(objective); h++) {
+                for (int j = 0; j < d; j++)
+                    w[j] = 0.5 * (w[j] + previous[j]);
+                newObjective = computePredictor(w) + Penalty.value(w, l1, l2);
+            }
+            if (newObjective > objective + SLACK * Math.abs(objective)) {
+                System.arraycopy(previous, 0, w, 0, d);
+                computePredictor(w);
+                break;
+            }
+            objective = newObjective;
+
+            change = 0.0;
+            for (int j = 0; j < d; j++)
+                if (curvature[j] > 0.0)
+                    change = Math.max(change, curvature[j] * (w[j] - previous[j]) * (w[j] - previous[j]) / n);
+            if (change < tolerance)
+                break;
+        }
+        return iter;
+    }
+
+    /**
+     * Average log-loss (without the penalty) at the weights of the last minimize
+     */
+    double getLoss() {
+        return loss;
+    }
+
+    /**
+     * Largest |gradient| of the average log-loss at w over the penalized weights (all but the bias)
+     */
+    double maxPenalizedGradient(double[] w) {
+        engine.partitionBlocks(n, BLOCK_ROWS, workers);
+        computePredictor(w);
+        approximate();
+        double max = 0.0;
+        for (int j = 1; j < d; j++)
+            max = Math.max(max, Math.abs(columnPass(j, false))); // sum of v x r = sum of x (y - p)
+        return max / n;
+    }
+
+    /* full sweeps alternating with sweeps of the active set, until a full sweep changes nothing */
+    private void solveQuadratic(double[] w, double l1, double l2, SplittableRandom random, double tolerance) {
+        int sweeps = 0;
+        while (sweeps < MAX_SWEEPS) {
+            sweeps++;
+            if (sweep(w, l1, l2, random, false) < tolerance)
+                return;
+            do {
+                sweeps++;
+            } while (sweeps < MAX_SWEEPS && sweep(w, l1, l2, random, true) >= tolerance);
+        }
+    }
+
+    /* update every coordinate (or only the non-zero ones), return the largest scaled change */
+    private double sweep(double[] w, double l1, double l2, SplittableRandom random, boolean activeOnly) {
+        if (random != null)
+            shuffle(random);
+        double maxChange = 0.0;
+        for (int j : order) {
+            if (activeOnly && j != 0 && w[j] == 0.0)
+                continue;
+            double g = columnPass(j, Double.isNaN(curvature[j]));
+            double h = curvature[j];
+            if (h <= 0.0)
+                continue; // column of zeros
+            double u = g + h * w[j];
+            double updated = (j == 0) ? u / h : Penalty.softThreshold(u, n * l1) / (h + n * l2);
+            double delta = updated - w[j];
+            if (delta != 0.0) {
+                w[j] = updated;
+                pendingColumn = j; // applied to r by the next pass
+                pendingDelta = delta;
+                maxChange = Math.max(maxChange, h * delta * delta / n);
+            }
+        }
+        return maxChange;
+    }
+
+    private void shuffle(SplittableRandom random) {
+        for (int k = d - 1; k > 0; k--) {
+            int other = random.nextInt(k + 1);
+            int tmp = order[k];
+            order[k] = order[other];
+            order[other] = tmp;
+        }
+    }
+
+    /*
+     * one pass over column j, which also applies the pending change to the residuals:
+     * returns sum of v x_j r, and stores sum of v x_j^2 in curvature[j] when asked
+     */
+    private double columnPass(int j, boolean withCurvature) {
+        column = j;
+        computeCurvature = withCurvature;
+        engine.run(columnPass);
+        pendingColumn = -1;
+        double g = 0.0;
+        double h = 0.0;
+        for (int b = 0; b < blockSums.length; b++) {
+            g += blockSums[b];
+            h += blockCurvatures[b];
+        }
+        if (withCurvature)
+            curvature[j] = h;
+        return g;
+    }
+
+    private void columnBlock(int worker, int start, int end) {
+        if (pendingColumn >= 0)
+            columns.addScaled(pendingColumn, start, end, -pendingDelta, r);
+        int block = start / BLOCK_ROWS;
+        blockSums[block] = columns.weightedDot(column, start, end, v, r, computeCurvature ? blockCurvatures : null, block);
+    }
+
+    /* quadratic approximation of the log-loss at eta */
+    private void approximate() {
+        engine.run((worker, start, end) -> {
+            for (int i = start; i < end; i++) {
+                double p = 1.0 / (1.0 + Math.exp(-eta[i]));
+                double variance = Math.max(p * (1.0 - p), MIN_VARIANCE);
+                v[i] = variance;
+                r[i] = (Y[i] - p) / variance;
+            }
+        });
+        Arrays.fill(curvature, Double.NaN);
+        pendingColumn = -1;
+    }
+
+    /* eta = X w from the columns of the non-zero weights, return the average log-loss */
+    private double computePredictor(double[] w) {
+        numNonZeros = 0;
+        for (int j = 0; j < d; j++)
+            if (w[j] != 0.0)
+                nonZeros[numNonZeros++] = j;
+        predictorWeights = w;
+        engine.run(this::predictorBlock);
+        double sum = 0.0;
+        for (double blockSum : blockSums)
+            sum += blockSum;
+        loss = sum / n;
+        return loss;
+    }
+
+    private void predictorBlock(int worker, int start, int end) {
+        Arrays.fill(eta, start, end, 0.0);
+        for (int k = 0; k < numNonZeros; k++) {
+            int j = nonZeros[k];
+            columns.addScaled(j, start, end, predictorWeights[j], eta);
+        }
+        double sum = 0.0;
+        for (int i = start; i < end; i++)
+            sum += LogisticKernels.logLoss(eta[i], Y[i]);
+        blockSums[start / BLOCK_ROWS] = sum;
+    }
+}
@@ -0,0 +1,207 @@
+package LogisticRegression;
+
+import Utils.Kernels;
+import Utils.Matrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * K-fold cross-validated grid search over learning rate, number of iterations,
+ * threshold and L2 regularization, for Batch Gradient Descent.
+ * Folds are contiguous row ranges: the training rows of a fold are a view of X without
+ * the test range (Matrix.withoutRows) and the test rows are evaluated in place, so the
+ * feature matrix is shared read-only by every model and never copied. Such views only
+ * exist for dense matrices, so sparse features are not supported.
+ * Work is scheduled in two levels: (learning rate, regularization, fold) models run
+ * concurrently, and the cores left over give every model its own training workers.
+ * Iteration counts and thresholds do not need models of their own: BGD keeps no state
+ * besides the weights, so a fit for more iterations continues the previous one, and
+ * every threshold is evaluated on the same predictions.
+ */
+public class GridSearch {
+
+    /* mean and standard deviation over the folds of one configuration */
+    public static class Result {
+        public final double learningRate;
+        public final int numIterations;
+        public final double threshold;
+        public final double l2;
+        public final double accuracy;
+        public final double accuracyStd;
+        public final double logLoss;
+
+        Result(double learningRate, int numIterations, double threshold, double l2,
+               double accuracy, double accuracyStd, double logLoss) {
+            this.learningRate = learningRate;
+            this.numIterations = numIterations;
+            this.threshold = threshold;
+            this.l2 = l2;
+            this.accuracy = accuracy;
+            this.accuracyStd = accuracyStd;
+            this.logLoss = logLoss;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("learningRate=%g numIterations=%d threshold=%g l2=%g: accuracy=%.4f (+/- %.4f) "
+                    + "logLoss=%.4f", learningRate, numIterations, threshold, l2, accuracy, accuracyStd, logLoss);
+        }
+    }
+
+    private final double[] learningRates;
+    private final int[] iterations;
+    private final double[] thresholds;
+    private final double[] regularizations;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    public GridSearch(double[] learningRates, int[] iterations, double[] thresholds, double[] regularizations) {
+        this.learningRates = learningRates.clone();
+        this.iterations = iterations.clone();
+        Arrays.sort(this.iterations);
+        if (this.iterations.length == 0 || this.iterations[0] < 0)
+            throw new IllegalArgumentException("Expected non-negative iteration counts");
+        this.thresholds = thresholds.clone();
+        this.regularizations = regularizations.clone();
+    }
+
+    /**
+     * Total number of threads used by a search (all cores by default)
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Cross-validate every configuration, best first (highest accuracy, then lowest log-loss)
+     */
+    public List<Result> search(Matrix X, int[] Y, int numFolds) {
+        if (X.isSparse())
+            throw new IllegalArgumentException("Grid search needs dense features, the fold views cannot keep "
+                    + X.getClass().getSimpleName() + " rows sparse");
+        int n = X.numRows();
+        if (numFolds < 2 || numFolds > n)
+            throw new IllegalArgumentException("numFolds must be in [2, " + n + "]: " + numFolds);
+        int[] bounds = new int[numFolds + 1];
+        for (int k = 0; k <= numFolds; k++)
+            bounds[k] = (int) ((long) n * k / numFolds);
+
+        // labels of the training rows of every fold (the features are views)
+        int[][] trainLabels = new int[numFolds][];
+        for (int k = 0; k < numFolds; k++) {
+            int from = bounds[k], to = bounds[k + 1];
+            trainLabels[k] = new int[n - (to - from)];
+            System.arraycopy(Y, 0, trainLabels[k], 0, from);
+            System.arraycopy(Y, to, trainLabels[k], from, n - to);
+        }
+
+        // outer tasks first, the remaining cores become workers inside each model
+        int numTasks = learningRates.length * regularizations.length * numFolds;
+        int outer = Math.max(1, Math.min(numTasks, parallelism));
+        int inner = Math.max(1, parallelism / outer);
+
+        // scores[a][r][t][k][f]: correct predictions of fold f (log-loss sum when k == thresholds.length)
+        double[][][][][] scores = new double[learningRates.length][regularizations.length][iterations.length]
+                [thresholds.length + 1][numFolds];
+        ExecutorService executor = Executors.newFixedThreadPool(outer, r -> {
+            Thread thread = new Thread(r, "lr-grid-search");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int a = 0; a < learningRates.length; a++) {
+                for (int r = 0; r < regularizations.length; r++) {
+                    for (int f = 0; f < numFolds; f++) {
+                        final int ia = a, ir = r, fold = f;
+                        futures.add(executor.submit(() -> fitFold(X, Y, trainLabels[fold], bounds[fold],
+                                bounds[fold + 1], learningRates[ia], regularizations[ir], inner, scores[ia][ir], fold)));
+                    }
+                }
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Grid search interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Grid search fit failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<Result> results = new ArrayList<>();
+        for (int a = 0; a < learningRates.length; a++) {
+            for (int r = 0; r < regularizations.length; r++) {
+                for (int t = 0; t < iterations.length; t++) {
+                    double[][] s = scores[a][r][t];
+                    double logLoss = 0.0;
+                    for (int f = 0; f < numFolds; f++)
+                        logLoss += s[thresholds.length][f] / (bounds[f + 1] - bounds[f]);
+                    logLoss /= numFolds;
+                    for (int k = 0; k < thresholds.length; k++) {
+                        double mean = 0.0, squares = 0.0;
+                        for (int f = 0; f < numFolds; f++) {
+                            double accuracy = s[k][f] / (bounds[f + 1] - bounds[f]);
+                            mean += accuracy;
+                            squares += accuracy * accuracy;
+                        }
+                        mean /= numFolds;
+                        double std = Math.sqrt(Math.max(0.0, squares / numFolds - mean * mean));
+                        results.add(new Result(learningRates[a], iterations[t], thresholds[k], regularizations[r],
+                                mean, std, logLoss));
+                    }
+                }
+            }
+        }
+        results.sort(Comparator.comparingDouble((Result result) -> -result.accuracy)
+                .thenComparingDouble(result -> result.logLoss));
+        return results;
+    }
+
+    /* train on all rows but [from, to) for every iteration count, evaluating each one on [from, to) */
+    private void fitFold(Matrix X, int[] Y, int[] trainY, int from, int to, double learningRate, double l2,
+                         int numWorkers, double[][][] scores, int fold) {
+        Matrix trainX = X.withoutRows(from, to);
+        try (ParallelLogisticRegression model = new ParallelLogisticRegression(X.numCols(), learningRate,
+                0, 0.5, numWorkers)) {
+            model.setRegularization(l2);
+            model.setVerbose(false);
+            int done = 0;
+            for (int t = 0; t < iterations.length; t++) {
+                model.numIterations = iterations[t] - done; // continue the previous fit
+                if (done > 0)
+                    model.setInitialWeights(model.getWeights());
+                model.trainModelWithBGD(trainX, trainY);
+                done = iterations[t];
+                evaluate(X, Y, from, to, model.getWeights(), scores[t], fold);
+            }
+        }
+    }
+
+    /* correct predictions per threshold and summed log-loss of rows [from, to) */
+    private void evaluate(Matrix X, int[] Y, int from, int to, double[] w, double[][] scores, int fold) {
+        double[] z = new double[LogisticKernels.BLOCK_SIZE];
+        double[] p = new double[LogisticKernels.BLOCK_SIZE];
+        for (int start = from; start < to; start += LogisticKernels.BLOCK_SIZE) {
+            int end = Math.min(start + LogisticKernels.BLOCK_SIZE, to);
+            X.dotRows(start, end, w, z, 0);
+            System.arraycopy(z, 0, p, 0, end - start);
+            Kernels.sigmoid(p, 0, end - start);
+            for (int i = start; i < end; i++) {
+                scores[thresholds.length][fold] += LogisticKernels.logLoss(z[i - start], Y[i]);
+                for (int k = 0; k < thresholds.length; k++)
+                    if (((p[i - start] >= thresholds[k]) ? 1 : 0) == Y[i])
+                        scores[k][fold]++;
+            }
+        }
+    }
+}
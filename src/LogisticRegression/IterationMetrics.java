@@ -0,0 +1,99 @@
+package LogisticRegression;
+
+/**
+ * Measurements of one training iteration, passed to a TrainingListener.
+ * Times are in nanoseconds; per-worker arrays have one entry per training worker
+ * (a single entry for the sequential trainer).
+ */
+public final class IterationMetrics {
+
+    private final int iteration;
+    private final long wallNanos;
+    private final double loss;
+    private final double gradientNorm;
+    private final long[] computeNanos;
+    private final long[] waitNanos;
+    private final long reductionNanos;
+    private final long allocatedBytes;
+
+    IterationMetrics(int iteration, long wallNanos, double loss, double gradientNorm, long[] computeNanos,
+                     long[] waitNanos, long reductionNanos, long allocatedBytes) {
+        this.iteration = iteration;
+        this.wallNanos = wallNanos;
+        this.loss = loss;
+        this.gradientNorm = gradientNorm;
+        this.computeNanos = computeNanos;
+        this.waitNanos = waitNanos;
+        this.reductionNanos = reductionNanos;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * Iteration number, starting at 1
+     */
+    public int getIteration() {
+        return iteration;
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    /**
+     * Average training loss before the update
+     */
+    public double getLoss() {
+        return loss;
+    }
+
+    /**
+     * Euclidean norm of the average gradient before the update
+     */
+    public double getGradientNorm() {
+        return gradientNorm;
+    }
+
+    public int numWorkers() {
+        return computeNanos.length;
+    }
+
+    /**
+     * Time every worker spent computing its partition
+     */
+    public long[] getComputeNanos() {
+        return computeNanos.clone();
+    }
+
+    /**
+     * Time every worker spent at the barrier waiting for the others
+     */
+    public long[] getWaitNanos() {
+        return waitNanos.clone();
+    }
+
+    /**
+     * Time spent summing the partial results of the workers
+     */
+    public long getReductionNanos() {
+        return reductionNanos;
+    }
+
+    /**
+     * Bytes allocated by the training threads during the iteration (-1 if the JVM cannot tell)
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Slowest worker compute time over the average one (1 means perfectly balanced partitions)
+     */
+    public double getImbalance() {
+        long max = 0, total = 0;
+        for (long nanos : computeNanos) {
+            max = Math.max(max, nanos);
+            total += nanos;
+        }
+        return (total == 0) ? 1.0 : (double) max * computeNanos.length / total;
+    }
+}
@@ -0,0 +1,94 @@
+package LogisticRegression;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Listener that emits the metrics as Java Flight Recorder events, to be analysed with
+ * the rest of a recording (e.g. java -XX:StartFlightRecording=filename=train.jfr ...).
+ * Events are cheap when no recording is running.
+ */
+public class JfrTrainingListener implements TrainingListener {
+
+    @Name("LogisticRegression.Iteration")
+    @Label("Training Iteration")
+    @Category({"Logistic Regression", "Training"})
+    static class IterationEvent extends Event {
+        @Label("Iteration")
+        int iteration;
+
+        @Label("Wall Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long wallTime;
+
+        @Label("Loss")
+        double loss;
+
+        @Label("Gradient Norm")
+        double gradientNorm;
+
+        @Label("Reduction Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long reductionTime;
+
+        @Label("Allocated")
+        @DataAmount
+        long allocated;
+
+        @Label("Imbalance")
+        @Description("Slowest worker compute time over the average one")
+        double imbalance;
+    }
+
+    @Name("LogisticRegression.Worker")
+    @Label("Training Worker")
+    @Category({"Logistic Regression", "Training"})
+    static class WorkerEvent extends Event {
+        @Label("Iteration")
+        int iteration;
+
+        @Label("Worker")
+        int worker;
+
+        @Label("Compute Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long computeTime;
+
+        @Label("Barrier Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        long waitTime;
+    }
+
+    @Override
+    public void iterationCompleted(IterationMetrics metrics) {
+        IterationEvent event = new IterationEvent();
+        if (event.isEnabled()) {
+            event.iteration = metrics.getIteration();
+            event.wallTime = metrics.getWallNanos();
+            event.loss = metrics.getLoss();
+            event.gradientNorm = metrics.getGradientNorm();
+            event.reductionTime = metrics.getReductionNanos();
+            event.allocated = metrics.getAllocatedBytes();
+            event.imbalance = metrics.getImbalance();
+            event.commit();
+        }
+
+        long[] compute = metrics.getComputeNanos();
+        long[] wait = metrics.getWaitNanos();
+        for (int k = 0; k < compute.length; k++) {
+            WorkerEvent workerEvent = new WorkerEvent();
+            if (!workerEvent.isEnabled())
+                break;
+            workerEvent.iteration = metrics.getIteration();
+            workerEvent.worker = k;
+            workerEvent.computeTime = compute[k];
+            workerEvent.waitTime = wait[k];
+            workerEvent.commit();
+        }
+    }
+}
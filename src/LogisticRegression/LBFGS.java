@@ -0,0 +1,113 @@
+package LogisticRegression;
+
+import Utils.Kernels;
+
+/**
+ * Limited-memory BFGS with a backtracking (Armijo) line search.
+ * Stops when the largest gradient component is below the tolerance, when the relative
+ * change of the objective is below the tolerance, or after maxIterations.
+ */
+class LBFGS {
+
+    private static final double ARMIJO = 1e-4; // sufficient decrease constant
+    private static final int MAX_LINE_SEARCH = 40;
+
+    private LBFGS() {
+    }
+
+    /**
+     * Minimize f starting from w, which is updated in place. Returns the number of iterations.
+     */
+    static int minimize(Objective f, double[] w, int maxIterations, int memory, double tolerance) {
+        int d = w.length;
+        double[][] s = new double[memory][d]; // last weight changes
+        double[][] y = new double[memory][d]; // last gradient changes
+        double[] rho = new double[memory];
+        double[] alpha = new double[memory];
+        double[] g = new double[d];
+        double[] gNew = new double[d];
+        double[] dir = new double[d];
+        double[] wNew = new double[d];
+        double[] sNew = new double[d]; // candidate pair, moved into the history only once accepted
+        double[] yNew = new double[d];
+        int newest = -1;
+        int stored = 0;
+
+        double loss = f.evaluate(w, g);
+        int iter = 0;
+        while (iter < maxIterations && Objective.normInf(g) >= tolerance) {
+            // two-loop recursion: dir = -H g with H the inverse Hessian approximation
+            System.arraycopy(g, 0, dir, 0, d);
+            for (int k = 0; k < stored; k++) {
+                int m = (newest - k + memory) % memory;
+                alpha[m] = rho[m] * Kernels.reproducibleDot(s[m], 0, dir, d);
+                Kernels.reproducibleAxpy(-alpha[m], y[m], 0, dir, d);
+            }
+            double gamma = (stored > 0)
+                    ? Kernels.reproducibleDot(s[newest], 0, y[newest], d) / Kernels.reproducibleDot(y[newest], 0, y[newest], d)
+                    : 1.0 / Math.sqrt(Kernels.reproducibleDot(g, 0, g, d)); // first step has unit length
+            for (int j = 0; j < d; j++)
+                dir[j] *= gamma;
+            for (int k = stored - 1; k >= 0; k--) {
+                int m = (newest - k + memory) % memory;
+                double beta = rho[m] * Kernels.reproducibleDot(y[m], 0, dir, d);
+                Kernels.reproducibleAxpy(alpha[m] - beta, s[m], 0, dir, d);
+            }
+            for (int j = 0; j < d; j++)
+                dir[j] = -dir[j];
+
+            double slope = Kernels.reproducibleDot(g, 0, dir, d);
+            if (slope >= 0) {
+                // not a descent direction: restart from steepest descent
+                stored = 0;
+                for (int j = 0; j < d; j++)
+                    dir[j] = -g[j] * gamma;
+                slope = Kernels.reproducibleDot(g, 0, dir, d);
+            }
+
+            // backtracking line search
+            double step = 1.0;
+            double newLoss;
+            int trials = 0;
+            while (true) {
+                for (int j = 0; j < d; j++)
+                    wNew[j] = w[j] + step * dir[j];
+                newLoss = f.evaluate(wNew, gNew);
+                if (newLoss <= loss + ARMIJO * step * slope)
+                    break;
+                if (++trials >= MAX_LINE_SEARCH)
+                    return iter; // no further decrease along this direction
+                step *= 0.5;
+            }
+
+            // keep the new curvature pair if it is usable; a rejected one must not overwrite the oldest pair
+            for (int j = 0; j < d; j++) {
+                sNew[j] = wNew[j] - w[j];
+                yNew[j] = gNew[j] - g[j];
+            }
+            double sy = Kernels.reproducibleDot(sNew, 0, yNew, d);
+            if (sy > 1e-12) {
+                int next = (newest + 1) % memory;
+                double[] swap = s[next];
+                s[next] = sNew;
+                sNew = swap;
+                swap = y[next];
+                y[next] = yNew;
+                yNew = swap;
+                rho[next] = 1.0 / sy;
+                newest = next;
+                stored = Math.min(stored + 1, memory);
+            }
+
+            System.arraycopy(wNew, 0, w, 0, d);
+            System.arraycopy(gNew, 0, g, 0, d);
+            iter++;
+
+            boolean converged = Math.abs(loss - newLoss) <= tolerance * Math.max(1.0, Math.abs(loss));
+            loss = newLoss;
+            if (converged)
+                break;
+        }
+        return iter;
+    }
+}
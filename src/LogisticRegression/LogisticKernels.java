@@ -0,0 +1,243 @@
+package LogisticRegression;
+
+import Utils.Kernels;
+import Utils.Matrix;
+
+import java.util.SplittableRandom;
+
+/**
+ * Gradient and scoring loops shared by the trainers.
+ * Rows are processed in blocks: the dot products of a block are computed first,
+ * then the sigmoid is applied to the whole block at once, then the rows are
+ * accumulated into the gradient.
+ */
+public final class LogisticKernels {
+
+    public static final int BLOCK_SIZE = 256; // rows per block, size of the scratch buffers
+
+    private LogisticKernels() {
+    }
+
+    /**
+     * gradient += sum over rows [start, end) of (sigmoid(x_i . w) - y_i) * x_i
+     * z is a scratch buffer of at least BLOCK_SIZE elements
+     */
+    public static void accumulateGradient(Matrix X, int[] Y, double[] w, int start, int end,
+                                          double[] gradient, double[] z) {
+        for (int from = start; from < end; from += BLOCK_SIZE) {
+            int to = Math.min(from + BLOCK_SIZE, end);
+            X.dotRows(from, to, w, z, 0);
+            sigmoid(X, z, 0, to - from);
+            for (int i = from; i < to; i++)
+                z[i - from] -= Y[i]; // error of the row
+            X.addScaledRows(from, to, z, 0, gradient);
+        }
+    }
+
+    /**
+     * Same as accumulateGradient, also returns the log-loss summed over the rows
+     */
+    public static double accumulateLossAndGradient(Matrix X, int[] Y, double[] w, int start, int end,
+                                                   double[] gradient, double[] z) {
+        double loss = 0.0;
+        for (int from = start; from < end; from += BLOCK_SIZE) {
+            int to = Math.min(from + BLOCK_SIZE, end);
+            X.dotRows(from, to, w, z, 0);
+            for (int i = from; i < to; i++)
+                loss += logLoss(X, z[i - from], Y[i]);
+            sigmoid(X, z, 0, to - from);
+            for (int i = from; i < to; i++)
+                z[i - from] -= Y[i]; // error of the row
+            X.addScaledRows(from, to, z, 0, gradient);
+        }
+        return loss;
+    }
+
+    /**
+     * Log-loss summed over rows [start, end)
+     */
+    public static double loss(Matrix X, int[] Y, double[] w, int start, int end, double[] z) {
+        double loss = 0.0;
+        for (int from = start; from < end; from += BLOCK_SIZE) {
+            int to = Math.min(from + BLOCK_SIZE, end);
+            X.dotRows(from, to, w, z, 0);
+            for (int i = from; i < to; i++)
+                loss += logLoss(X, z[i - from], Y[i]);
+        }
+        return loss;
+    }
+
+    /**
+     * Upper triangle of hessian (numCols x numCols, row-major) += sum over rows [start, end)
+     * of p_i * (1 - p_i) * x_i x_i^T, with p_i = sigmoid(x_i . w)
+     * row is a scratch buffer of numCols elements
+     */
+    public static void accumulateHessian(Matrix X, double[] w, int start, int end,
+                                         double[] hessian, double[] z, double[] row) {
+        int d = X.numCols();
+        for (int from = start; from < end; from += BLOCK_SIZE) {
+            int to = Math.min(from + BLOCK_SIZE, end);
+            X.dotRows(from, to, w, z, 0);
+            sigmoid(X, z, 0, to - from);
+            for (int i = from; i < to; i++) {
+                double p = z[i - from];
+                double s = p * (1.0 - p);
+                X.copyRow(i, row);
+                for (int a = 0; a < d; a++) {
+                    double sa = s * row[a];
+                    if (sa == 0.0)
+                        continue;
+                    int base = a * d;
+                    for (int b = a; b < d; b++)
+                        hessian[base + b] += sa * row[b];
+                }
+            }
+        }
+    }
+
+    /**
+     * -y log(sigmoid(z)) - (1 - y) log(1 - sigmoid(z)), computed without overflow
+     */
+    public static double logLoss(double z, int y) {
+        double softplus = (z > 0) ? z + Math.log1p(Math.exp(-z)) : Math.log1p(Math.exp(z));
+        return softplus - y * z;
+    }
+
+    /* sigmoid of z[from..to), reproducible when the rows come from a reproducible matrix */
+    private static void sigmoid(Matrix X, double[] z, int from, int to) {
+        if (X.isReproducible())
+            Kernels.reproducibleSigmoid(z, from, to);
+        else
+            Kernels.sigmoid(z, from, to);
+    }
+
+    /* logLoss with StrictMath for the rows of a reproducible matrix */
+    private static double logLoss(Matrix X, double z, int y) {
+        if (!X.isReproducible())
+            return logLoss(z, y);
+        double softplus = (z > 0) ? z + StrictMath.log1p(StrictMath.exp(-z)) : StrictMath.log1p(StrictMath.exp(z));
+        return softplus - y * z;
+    }
+
+    /**
+     * Same as accumulateGradient for the rows rows[from..to) (e.g. a shuffled mini-batch)
+     */
+    public static void accumulateGradient(Matrix X, int[] Y, double[] w, int[] rows, int from, int to,
+                                          double[] gradient, double[] z) {
+        for (int blockStart = from; blockStart < to; blockStart += BLOCK_SIZE) {
+            int blockEnd = Math.min(blockStart + BLOCK_SIZE, to);
+            for (int k = blockStart; k < blockEnd; k++)
+                z[k - blockStart] = X.dotRow(rows[k], w);
+            sigmoid(X, z, 0, blockEnd - blockStart);
+            for (int k = blockStart; k < blockEnd; k++) {
+                int i = rows[k];
+                X.addScaledRow(i, z[k - blockStart] - Y[i], gradient);
+            }
+        }
+    }
+
+    /**
+     * One gradient descent step on the rows rows[from..to): w -= step * sum of (sigmoid(x_i . w) - y_i) * x_i.
+     * All predictions use the weights before the step, as with accumulateGradient, but the rows are
+     * added straight into w, so with sparse rows the cost depends only on their non-zeros.
+     * z is a scratch buffer of at least to - from elements
+     */
+    public static void gradientStep(Matrix X, int[] Y, double[] w, int[] rows, int from, int to,
+                                    double step, double[] z) {
+        for (int k = from; k < to; k++)
+            z[k - from] = X.dotRow(rows[k], w);
+        sigmoid(X, z, 0, to - from);
+        for (int k = from; k < to; k++) {
+            int i = rows[k];
+            X.addScaledRow(i, -step * (z[k - from] - Y[i]), w);
+        }
+    }
+
+    /**
+     * Same as gradientStep for the consecutive rows [from, to)
+     */
+    public static void gradientStep(Matrix X, int[] Y, double[] w, int from, int to, double step, double[] z) {
+        for (int i = from; i < to; i++)
+            z[i - from] = X.dotRow(i, w);
+        sigmoid(X, z, 0, to - from);
+        for (int i = from; i < to; i++)
+            X.addScaledRow(i, -step * (z[i - from] - Y[i]), w);
+    }
+
+    /**
+     * Multinomial version of accumulateLossAndGradient, with one weight vector W[k] per class:
+     * gradient[k] += sum over rows [start, end) of (softmax(W x_i)_k - [y_i == k]) * x_i,
+     * returns the cross-entropy summed over the rows.
+     * The logits of all the classes are computed for a block of rows, so every row is read
+     * from memory once for all of them.
+     * z is a scratch buffer of at least W.length * BLOCK_SIZE elements
+     */
+    public static double accumulateSoftmaxLossAndGradient(Matrix X, int[] Y, double[][] W, int start, int end,
+                                                          double[][] gradient, double[] z) {
+        int numClasses = W.length;
+        double loss = 0.0;
+        for (int from = start; from < end; from += BLOCK_SIZE) {
+            int to = Math.min(from + BLOCK_SIZE, end);
+            for (int k = 0; k < numClasses; k++)
+                X.dotRows(from, to, W[k], z, k * BLOCK_SIZE);
+            for (int i = from; i < to; i++) {
+                int r = i - from;
+                double max = Double.NEGATIVE_INFINITY;
+                for (int k = 0; k < numClasses; k++)
+                    max = Math.max(max, z[k * BLOCK_SIZE + r]);
+                double sum = 0.0;
+                double target = z[Y[i] * BLOCK_SIZE + r];
+                for (int k = 0; k < numClasses; k++) {
+                    double e = Math.exp(z[k * BLOCK_SIZE + r] - max);
+                    z[k * BLOCK_SIZE + r] = e;
+                    sum += e;
+                }
+                loss += max + Math.log(sum) - target;
+                for (int k = 0; k < numClasses; k++) {
+                    double p = z[k * BLOCK_SIZE + r] / sum;
+                    X.addScaledRow(i, (k == Y[i]) ? p - 1.0 : p, gradient[k]);
+                }
+            }
+        }
+        return loss;
+    }
+
+    /**
+     * out[i] = class with the largest logit W[k] . x_i, for rows [start, end)
+     * z is a scratch buffer of at least W.length * BLOCK_SIZE elements
+     */
+    public static void classify(Matrix X, double[][] W, int start, int end, int[] out, double[] z) {
+        for (int from = start; from < end; from += BLOCK_SIZE) {
+            int to = Math.min(from + BLOCK_SIZE, end);
+            for (int k = 0; k < W.length; k++)
+                X.dotRows(from, to, W[k], z, k * BLOCK_SIZE);
+            for (int i = from; i < to; i++) {
+                int best = 0;
+                for (int k = 1; k < W.length; k++)
+                    if (z[k * BLOCK_SIZE + i - from] > z[best * BLOCK_SIZE + i - from])
+                        best = k;
+                out[i] = best;
+            }
+        }
+    }
+
+    /**
+     * Fisher-Yates shuffle of rows[from..to)
+     */
+    public static void shuffle(int[] rows, int from, int to, SplittableRandom random) {
+        for (int k = to - 1; k > from; k--) {
+            int r = from + random.nextInt(k - from + 1);
+            int tmp = rows[k];
+            rows[k] = rows[r];
+            rows[r] = tmp;
+        }
+    }
+
+    /**
+     * out[i] = sigmoid(x_i . w) for rows [start, end)
+     */
+    public static void score(Matrix X, double[] w, int start, int end, double[] out) {
+        X.dotRows(start, end, w, out, start);
+        sigmoid(X, out, start, end);
+    }
+}
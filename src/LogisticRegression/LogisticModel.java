@@ -0,0 +1,202 @@
+package LogisticRegression;
+
+import Utils.Scaler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Trained model as stored on disk: weights, variable names, the scaler fitted on
+ * the training data, threshold and the hyperparameters of the fit.
+ * Layout (little-endian):
+ * magic, version, features, flags, threshold, learning rate, iterations,
+ * variable names (count, then length + UTF-8 bytes each), weights, then the scaler
+ * type, offsets and scales when the training data was normalized.
+ * Loading maps the file and copies every array with a single bulk read.
+ */
+public final class LogisticModel {
+
+    static final int MAGIC = 0x444d524c; // "LRMD"
+    static final int VERSION = 2;
+    static final int FLAG_NORMALIZED = 1;
+
+    private final double[] weights;
+    private final String[] varNames; // header of the training file (may be empty)
+    private final Scaler scaler; // null when the training data was not normalized
+    private final double threshold;
+    private final double learningRate;
+    private final int numIterations;
+
+    /* takes ownership of the arrays, so load needs no second copy */
+    private LogisticModel(double[] weights, String[] varNames, Scaler scaler,
+                          double threshold, double learningRate, int numIterations) {
+        if (scaler != null && scaler.numCols() != weights.length)
+            throw new IllegalArgumentException("Expected a scaler of " + weights.length + " features");
+        this.weights = weights;
+        this.varNames = varNames;
+        this.scaler = scaler;
+        this.threshold = threshold;
+        this.learningRate = learningRate;
+        this.numIterations = numIterations;
+    }
+
+    /**
+     * Model holding copies of weights and varNames (null for no variable names)
+     */
+    public static LogisticModel of(double[] weights, String[] varNames, Scaler scaler,
+                                   double threshold, double learningRate, int numIterations) {
+        return new LogisticModel(weights.clone(), (varNames == null) ? new String[0] : varNames.clone(), scaler,
+                threshold, learningRate, numIterations);
+    }
+
+    public void save(String fileName) throws IOException {
+        byte[][] names = new byte[varNames.length][];
+        long size = 4 * 4 + 8 + 8 + 4 + 4;
+        for (int k = 0; k < varNames.length; k++) {
+            names[k] = varNames[k].getBytes(StandardCharsets.UTF_8);
+            size += 4 + names[k].length;
+        }
+        size += 8L * weights.length * (scaler == null ? 1 : 3) + (scaler == null ? 0 : 4);
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("Model too large: " + size + " bytes");
+
+        ByteBuffer buf = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC).putInt(VERSION).putInt(weights.length).putInt(scaler == null ? 0 : FLAG_NORMALIZED);
+        buf.putDouble(threshold).putDouble(learningRate).putInt(numIterations);
+        buf.putInt(names.length);
+        for (byte[] name : names)
+            buf.putInt(name.length).put(name);
+        buf.asDoubleBuffer().put(weights);
+        buf.position(buf.position() + 8 * weights.length);
+        if (scaler != null) {
+            buf.putInt(scaler.getType().ordinal());
+            buf.asDoubleBuffer().put(scaler.getOffsets()).put(scaler.getScales());
+            buf.position(buf.position() + 16 * weights.length);
+        }
+        buf.flip();
+
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buf.hasRemaining())
+                channel.write(buf);
+        }
+    }
+
+    public static LogisticModel load(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("Not a model file: " + fileName);
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            ByteBuffer buf = map.order(ByteOrder.LITTLE_ENDIAN);
+            try {
+                if (buf.getInt() != MAGIC)
+                    throw new IOException("Not a model file: " + fileName);
+                int version = buf.getInt();
+                if (version != VERSION)
+                    throw new IOException("Unsupported model version " + version + " in " + fileName);
+                int d = buf.getInt();
+                boolean normalized = (buf.getInt() & FLAG_NORMALIZED) != 0;
+                double threshold = buf.getDouble();
+                double learningRate = buf.getDouble();
+                int numIterations = buf.getInt();
+
+                String[] varNames = new String[buf.getInt()];
+                for (int k = 0; k < varNames.length; k++) {
+                    int length = buf.getInt();
+                    varNames[k] = new String(readBytes(buf, length), StandardCharsets.UTF_8);
+                }
+                double[] weights = readDoubles(buf, d);
+                Scaler scaler = null;
+                if (normalized) {
+                    Scaler.Type type = Scaler.Type.values()[buf.getInt()];
+                    scaler = new Scaler(type, readDoubles(buf, d), readDoubles(buf, d));
+                }
+                return new LogisticModel(weights, varNames, scaler, threshold, learningRate, numIterations);
+            } catch (RuntimeException e) {
+                throw new IOException("Truncated or corrupt model file: " + fileName, e);
+            }
+        }
+    }
+
+    private static byte[] readBytes(ByteBuffer buf, int length) {
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return bytes;
+    }
+
+    private static double[] readDoubles(ByteBuffer buf, int length) {
+        double[] values = new double[length];
+        buf.asDoubleBuffer().get(values);
+        buf.position(buf.position() + 8 * length);
+        return values;
+    }
+
+    /**
+     * Scorer with the weights and threshold of this model
+     */
+    public LogisticScorer getScorer() {
+        return new LogisticScorer(weights, threshold);
+    }
+
+    /**
+     * Scorer for raw (unscaled) rows: the scaler is folded into the weights,
+     * w . ((x - offset) / scale) = sum(w_j / scale_j * x_j) - sum(w_j * offset_j / scale_j),
+     * the constant part going to the bias (column 0, which the scaler leaves unchanged)
+     */
+    public LogisticScorer getRawScorer() {
+        if (scaler == null)
+            return getScorer();
+        double[] offsets = scaler.getOffsets();
+        double[] scales = scaler.getScales();
+        if (offsets[0] != 0.0 || scales[0] != 1.0)
+            throw new IllegalStateException("Column 0 is not a constant bias column");
+        double[] folded = new double[weights.length];
+        for (int j = 0; j < weights.length; j++) {
+            folded[j] = weights[j] / scales[j];
+            folded[0] -= weights[j] * offsets[j] / scales[j];
+        }
+        return new LogisticScorer(folded, threshold);
+    }
+
+    public int numFeatures() {
+        return weights.length;
+    }
+
+    public double[] getWeights() {
+        return weights.clone();
+    }
+
+    public String[] getVarNames() {
+        return varNames.clone();
+    }
+
+    public boolean isNormalized() {
+        return scaler != null;
+    }
+
+    /**
+     * Scaler to apply to new rows before getScorer (null if the training data was not normalized)
+     */
+    public Scaler getScaler() {
+        return scaler;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    public double getLearningRate() {
+        return learningRate;
+    }
+
+    public int getNumIterations() {
+        return numIterations;
+    }
+}
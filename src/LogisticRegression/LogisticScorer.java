@@ -0,0 +1,103 @@
+package LogisticRegression;
+
+import Utils.Kernels;
+import Utils.Matrix;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Immutable scorer built from trained weights, independent of the trainer.
+ * predict scores a single row without allocating; scoreAll splits large matrices
+ * into row ranges scored in parallel on the common fork-join pool.
+ * Safe to share between threads.
+ */
+public final class LogisticScorer {
+
+    private static final int GRAIN = 4096; // rows scored by a single task
+
+    private final double[] weights;
+    private final double threshold;
+
+    public LogisticScorer(double[] weights, double threshold) {
+        this.weights = weights.clone();
+        this.threshold = threshold;
+    }
+
+    public int numFeatures() {
+        return weights.length;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    public double[] getWeights() {
+        return weights.clone();
+    }
+
+    /**
+     * Probability of class 1 for one row (x[0] is the bias term)
+     */
+    public double predict(double[] x) {
+        if (x.length != weights.length)
+            throw new IllegalArgumentException("Expected " + weights.length + " features, got " + x.length);
+        double z = Kernels.dot(x, 0, weights, weights.length);
+        return 1.0 / (1.0 + Math.exp(-z));
+    }
+
+    /**
+     * Predicted class (0 or 1) for one row
+     */
+    public int classify(double[] x) {
+        return (predict(x) >= threshold) ? 1 : 0;
+    }
+
+    /**
+     * Probability of class 1 for every row of X
+     */
+    public double[] scoreAll(Matrix X) {
+        double[] out = new double[X.numRows()];
+        scoreAll(X, out);
+        return out;
+    }
+
+    /**
+     * Same as above, writing into out (at least X.numRows() elements)
+     */
+    public void scoreAll(Matrix X, double[] out) {
+        if (X.numCols() != weights.length)
+            throw new IllegalArgumentException("Expected " + weights.length + " features, got " + X.numCols());
+        int n = X.numRows();
+        if (n <= GRAIN)
+            LogisticKernels.score(X, weights, 0, n, out);
+        else
+            ForkJoinPool.commonPool().invoke(new ScoreTask(X, out, 0, n));
+    }
+
+    /* scores a row range, splitting it in halves until it is small enough */
+    private class ScoreTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Matrix X;
+        private final double[] out;
+        private final int start, end;
+
+        ScoreTask(Matrix X, double[] out, int start, int end) {
+            this.X = X;
+            this.out = out;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= GRAIN) {
+                LogisticKernels.score(X, weights, start, end, out);
+                return;
+            }
+            int mid = (start + end) >>> 1;
+            invokeAll(new ScoreTask(X, out, start, mid), new ScoreTask(X, out, mid, end));
+        }
+    }
+}
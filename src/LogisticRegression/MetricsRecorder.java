@@ -0,0 +1,59 @@
+package LogisticRegression;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Listener that keeps the metrics of the last fit in memory and summarizes them
+ */
+public class MetricsRecorder implements TrainingListener {
+
+    private final List<IterationMetrics> iterations = new ArrayList<>();
+    private String method = "";
+
+    @Override
+    public void fitStarted(String method, int numRows, int numWorkers) {
+        this.method = method;
+        iterations.clear();
+    }
+
+    @Override
+    public void iterationCompleted(IterationMetrics metrics) {
+        iterations.add(metrics);
+    }
+
+    public List<IterationMetrics> getIterations() {
+        return iterations;
+    }
+
+    public void printSummary() {
+        if (iterations.isEmpty()) {
+            System.out.println("No iterations recorded");
+            return;
+        }
+        int numWorkers = iterations.get(0).numWorkers();
+        long wall = 0, reduction = 0, allocated = 0;
+        long[] compute = new long[numWorkers];
+        long[] wait = new long[numWorkers];
+        for (IterationMetrics m : iterations) {
+            wall += m.getWallNanos();
+            reduction += m.getReductionNanos();
+            allocated += Math.max(0, m.getAllocatedBytes());
+            long[] c = m.getComputeNanos();
+            long[] w = m.getWaitNanos();
+            for (int k = 0; k < numWorkers; k++) {
+                compute[k] += c[k];
+                wait[k] += w[k];
+            }
+        }
+        IterationMetrics last = iterations.get(iterations.size() - 1);
+
+        System.out.println("\nTraining metrics (" + method + ", " + iterations.size() + " iterations):");
+        System.out.printf("wall time: %.1f ms total, %.3f ms per iteration%n", wall / 1e6,
+                wall / 1e6 / iterations.size());
+        System.out.printf("reduction: %.1f ms, allocated: %.1f KB%n", reduction / 1e6, allocated / 1024.0);
+        for (int k = 0; k < numWorkers; k++)
+            System.out.printf("worker %d: compute %.1f ms, barrier wait %.1f ms%n", k, compute[k] / 1e6, wait[k] / 1e6);
+        System.out.printf("final loss: %.6f, gradient norm: %.3e%n", last.getLoss(), last.getGradientNorm());
+    }
+}
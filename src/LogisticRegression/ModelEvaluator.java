@@ -0,0 +1,108 @@
+package LogisticRegression;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Evaluates binary predictions (the probabilities of scoreData) against the labels in one pass.
+ * The rows are split in chunks scored in parallel on the common fork-join pool; each chunk fills
+ * its own histogram of scores per class and log-loss sum, then the histograms are added.
+ * Every threshold of the resulting ClassificationMetrics comes from the merged histogram,
+ * so sweeping thresholds costs no further pass over the data.
+ */
+public final class ModelEvaluator {
+
+    public static final int DEFAULT_BINS = 1 << 16;
+
+    private static final int MIN_CHUNK_ROWS = 1 << 14;
+    private static final double EPSILON = 1e-15; // keeps the log-loss finite for scores of exactly 0 or 1
+
+    private final int numBins;
+
+    public ModelEvaluator() {
+        this(DEFAULT_BINS);
+    }
+
+    /**
+     * numBins: resolution of the thresholds, 1 / numBins
+     */
+    public ModelEvaluator(int numBins) {
+        if (numBins < 1)
+            throw new IllegalArgumentException("Number of bins must be positive: " + numBins);
+        this.numBins = numBins;
+    }
+
+    /* histogram of one chunk of rows */
+    private static final class Partial {
+        final long[] positives;
+        final long[] negatives;
+        double logLossSum;
+
+        Partial(int numBins) {
+            positives = new long[numBins];
+            negatives = new long[numBins];
+        }
+
+        Partial merge(Partial other) {
+            for (int b = 0; b < positives.length; b++) {
+                positives[b] += other.positives[b];
+                negatives[b] += other.negatives[b];
+            }
+            logLossSum += other.logLossSum;
+            return this;
+        }
+    }
+
+    /**
+     * Metrics of the probabilities of class 1 given the labels (0 or 1)
+     */
+    public ClassificationMetrics evaluate(int[] Y, double[] probabilities) {
+        int n = probabilities.length;
+        if (Y.length != n)
+            throw new IllegalArgumentException("Expected " + n + " labels, got " + Y.length);
+        if (n == 0)
+            throw new IllegalArgumentException("Nothing to evaluate");
+
+        int chunks = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), n / MIN_CHUNK_ROWS));
+        Partial total;
+        if (chunks == 1) {
+            total = new Partial(numBins);
+            accumulate(Y, probabilities, 0, n, total);
+        } else {
+            // chunks are merged in order, so the log-loss only depends on the number of chunks
+            total = IntStream.range(0, chunks).parallel()
+                    .mapToObj(c -> {
+                        Partial partial = new Partial(numBins);
+                        int start = (int) ((long) n * c / chunks);
+                        int end = (int) ((long) n * (c + 1) / chunks);
+                        accumulate(Y, probabilities, start, end, partial);
+                        return partial;
+                    })
+                    .reduce(Partial::merge)
+                    .get();
+        }
+        return new ClassificationMetrics(total.positives, total.negatives, total.logLossSum);
+    }
+
+    /* histogram and log-loss of rows [start, end) */
+    private void accumulate(int[] Y, double[] probabilities, int start, int end, Partial partial) {
+        double sum = 0.0;
+        for (int i = start; i < end; i++) {
+            double p = probabilities[i];
+            if (!(p >= 0.0 && p <= 1.0))
+                throw new IllegalArgumentException("Score of row " + i + " is not a probability: " + p);
+            int bin = Math.min(numBins - 1, (int) (p * numBins));
+            double clipped = Math.min(Math.max(p, EPSILON), 1.0 - EPSILON);
+            if (Y[i] == 1) {
+                partial.positives[bin]++;
+                sum -= Math.log(clipped);
+            } else if (Y[i] == 0) {
+                partial.negatives[bin]++;
+                sum -= Math.log(1.0 - clipped);
+            } else {
+                throw new IllegalArgumentException("Label of row " + i + " must be 0 or 1: " + Y[i]);
+            }
+        }
+        partial.logLossSum = sum;
+    }
+}
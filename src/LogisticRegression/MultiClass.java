@@ -0,0 +1,73 @@
+package LogisticRegression;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * Label checks and the classification report shared by the multi-class trainers.
+ * Classes are the labels 0..K-1.
+ */
+public final class MultiClass {
+
+    private MultiClass() {
+    }
+
+    /**
+     * Number of classes of the labels (largest label + 1)
+     */
+    public static int numClasses(int[] Y) {
+        int max = -1;
+        for (int y : Y) {
+            if (y < 0)
+                throw new IllegalArgumentException("Class labels must not be negative: " + y);
+            max = Math.max(max, y);
+        }
+        return max + 1;
+    }
+
+    /* every label must be one of the numClasses classes */
+    static void checkLabels(int[] Y, int n, int numClasses) {
+        if (Y.length < n)
+            throw new IllegalArgumentException("Expected " + n + " labels, got " + Y.length);
+        for (int i = 0; i < n; i++)
+            if (Y[i] < 0 || Y[i] >= numClasses)
+                throw new IllegalArgumentException("Label " + Y[i] + " of row " + i + " is not in [0, "
+                        + numClasses + ")");
+    }
+
+    /**
+     * Print the confusion matrix (rows are the true classes), per-class precision and recall, and the accuracy
+     */
+    public static void evaluateModel(int[] Y, int[] predictedY, int numClasses) {
+        long[][] confusion = new long[numClasses][numClasses];
+        for (int i = 0; i < predictedY.length; i++)
+            confusion[Y[i]][predictedY[i]]++;
+
+        DecimalFormat df = new DecimalFormat("##.###");
+        df.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.US));
+
+        System.out.println();
+        System.out.println("Classification report:");
+        System.out.println("Confusion matrix (rows: true class, columns: predicted class)");
+        long correct = 0;
+        for (int k = 0; k < numClasses; k++) {
+            StringBuilder row = new StringBuilder();
+            for (int c = 0; c < numClasses; c++)
+                row.append(String.format("%8d", confusion[k][c]));
+            System.out.println(row);
+            correct += confusion[k][k];
+        }
+        for (int k = 0; k < numClasses; k++) {
+            long predicted = 0, actual = 0;
+            for (int c = 0; c < numClasses; c++) {
+                predicted += confusion[c][k];
+                actual += confusion[k][c];
+            }
+            System.out.println("Class " + k + ": Precision= " + df.format(1.0 * confusion[k][k] / predicted)
+                    + " Recall= " + df.format(1.0 * confusion[k][k] / actual));
+        }
+        System.out.println("Accuracy= " + df.format(1.0 * correct / predictedY.length));
+        System.out.println();
+    }
+}
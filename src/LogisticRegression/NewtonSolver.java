@@ -0,0 +1,116 @@
+package LogisticRegression;
+
+import Utils.Kernels;
+
+/**
+ * Newton's method with a backtracking line search. For the logistic loss this is
+ * Iteratively Reweighted Least Squares: the Hessian is X^T W X with W = diag(p (1 - p)).
+ * Stops when the largest gradient component or half the Newton decrement is below
+ * the tolerance, or after maxIterations.
+ */
+class NewtonSolver {
+
+    private static final double ARMIJO = 1e-4; // sufficient decrease constant
+    private static final int MAX_LINE_SEARCH = 40;
+    private static final double RIDGE = 1e-10; // relative diagonal shift when the Hessian is singular
+    private static final int MAX_SHIFTS = 30; // tenfold increases of the shift before giving up
+
+    private NewtonSolver() {
+    }
+
+    /**
+     * Minimize f starting from w, which is updated in place. Returns the number of iterations.
+     * Throws IllegalStateException when the Hessian cannot be made positive definite (e.g. NaN or
+     * infinite entries).
+     */
+    static int minimize(TwiceDifferentiable f, double[] w, int maxIterations, double tolerance) {
+        int d = w.length;
+        double[] g = new double[d];
+        double[] gNew = new double[d];
+        double[] hessian = new double[d * d];
+        double[] factor = new double[d * d];
+        double[] dir = new double[d];
+        double[] wNew = new double[d];
+
+        double loss = f.evaluate(w, g);
+        int iter = 0;
+        while (iter < maxIterations && Objective.normInf(g) >= tolerance) {
+            f.hessian(w, hessian);
+
+            // solve H dir = -g, shifting the diagonal until H is positive definite
+            double maxDiagonal = 0.0;
+            for (int j = 0; j < d; j++)
+                maxDiagonal = Math.max(maxDiagonal, hessian[j * d + j]);
+            double shift = 0.0;
+            for (int attempt = 0; !cholesky(hessian, factor, d, shift); attempt++) {
+                if (attempt == MAX_SHIFTS || !Double.isFinite(shift))
+                    throw new IllegalStateException("Hessian is not positive definite after a diagonal shift of "
+                            + shift + " at iteration " + iter);
+                shift = (shift == 0.0) ? RIDGE * Math.max(maxDiagonal, 1.0) : shift * 10;
+            }
+            for (int j = 0; j < d; j++)
+                dir[j] = -g[j];
+            solve(factor, d, dir);
+
+            double slope = Kernels.reproducibleDot(g, 0, dir, d);
+            if (-slope / 2 < tolerance)
+                break; // Newton decrement: the quadratic model predicts no real progress
+
+            // backtracking line search
+            double step = 1.0;
+            double newLoss;
+            int trials = 0;
+            while (true) {
+                for (int j = 0; j < d; j++)
+                    wNew[j] = w[j] + step * dir[j];
+                newLoss = f.evaluate(wNew, gNew);
+                if (newLoss <= loss + ARMIJO * step * slope)
+                    break;
+                if (++trials >= MAX_LINE_SEARCH)
+                    return iter;
+                step *= 0.5;
+            }
+
+            System.arraycopy(wNew, 0, w, 0, d);
+            System.arraycopy(gNew, 0, g, 0, d);
+            loss = newLoss;
+            iter++;
+        }
+        return iter;
+    }
+
+    /* lower-triangular L with L L^T = a + shift * I, false if not positive definite */
+    private static boolean cholesky(double[] a, double[] l, int d, double shift) {
+        for (int i = 0; i < d; i++) {
+            for (int j = 0; j <= i; j++) {
+                double sum = a[i * d + j] + ((i == j) ? shift : 0.0);
+                for (int k = 0; k < j; k++)
+                    sum -= l[i * d + k] * l[j * d + k];
+                if (i == j) {
+                    if (sum <= 0.0 || Double.isNaN(sum))
+                        return false;
+                    l[i * d + i] = Math.sqrt(sum);
+                } else {
+                    l[i * d + j] = sum / l[j * d + j];
+                }
+            }
+        }
+        return true;
+    }
+
+    /* solve L L^T x = b in place */
+    private static void solve(double[] l, int d, double[] b) {
+        for (int i = 0; i < d; i++) {
+            double sum = b[i];
+            for (int k = 0; k < i; k++)
+                sum -= l[i * d + k] * b[k];
+            b[i] = sum / l[i * d + i];
+        }
+        for (int i = d - 1; i >= 0; i--) {
+            double sum = b[i];
+            for (int k = i + 1; k < d; k++)
+                sum -= l[k * d + i] * b[k];
+            b[i] = sum / l[i * d + i];
+        }
+    }
+}
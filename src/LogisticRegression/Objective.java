@@ -0,0 +1,19 @@
+package LogisticRegression;
+
+/**
+ * Differentiable function minimized by the solvers
+ */
+interface Objective {
+
+    /**
+     * Return the value at w and write the gradient at w into gradient
+     */
+    double evaluate(double[] w, double[] gradient);
+
+    static double normInf(double[] v) {
+        double max = 0.0;
+        for (double x : v)
+            max = Math.max(max, Math.abs(x));
+        return max;
+    }
+}
@@ -0,0 +1,163 @@
+package LogisticRegression;
+
+import Utils.Matrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Multi-class logistic regression with one binary model per class (class k against all the others),
+ * trained with Batch Gradient Descent.
+ * The K models are trained concurrently on the same feature matrix, shared read-only: only the
+ * 0/1 labels are built for every class. As in GridSearch, the cores left over when there are
+ * fewer classes than cores become training workers inside each model.
+ * A row is assigned to the class whose model gives the highest probability.
+ */
+public class OneVsRestLogisticRegression {
+
+    private final int numFeatures;
+    private final int numClasses;
+    private final double learningRate;
+    private final int numIterations;
+    private double l2; // L2 penalty of every binary model (the bias is not penalized)
+    private Reduction reduction = Reduction.PLAIN;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private boolean verbose = true; // print the progress of the fits
+    private double[][] weights; // weights[k] of the model of class k
+
+    public OneVsRestLogisticRegression(int numFeatures, int numClasses, double learningRate, int numIterations) {
+        if (numClasses < 2)
+            throw new IllegalArgumentException("Expected at least 2 classes: " + numClasses);
+        this.numFeatures = numFeatures;
+        this.numClasses = numClasses;
+        this.learningRate = learningRate;
+        this.numIterations = numIterations;
+    }
+
+    /**
+     * Total number of threads used by a fit (all cores by default)
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * L2 regularization of every binary model, see ParallelLogisticRegression.setRegularization
+     */
+    public void setRegularization(double l2) {
+        if (l2 < 0)
+            throw new IllegalArgumentException("l2 must not be negative: " + l2);
+        this.l2 = l2;
+    }
+
+    /**
+     * How the binary models sum their gradients, see ParallelLogisticRegression.setReduction
+     */
+    public void setReduction(Reduction reduction) {
+        this.reduction = reduction;
+    }
+
+    /**
+     * Print the progress of the fits (on by default)
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Train the K binary models, concurrently
+     */
+    public void trainModelWithBGD(Matrix X, int[] Y) {
+        int n = X.numRows();
+        MultiClass.checkLabels(Y, n, numClasses);
+        int outer = Math.max(1, Math.min(numClasses, parallelism));
+        int inner = Math.max(1, parallelism / outer);
+
+        double[][] trained = new double[numClasses][];
+        ExecutorService executor = Executors.newFixedThreadPool(outer, r -> {
+            Thread thread = new Thread(r, "lr-one-vs-rest");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int k = 0; k < numClasses; k++) {
+                final int c = k;
+                futures.add(executor.submit(() -> trained[c] = fitClass(X, Y, c, inner)));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("One-vs-rest training interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("One-vs-rest fit failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        weights = trained;
+    }
+
+    /* binary model of class c against the others */
+    private double[] fitClass(Matrix X, int[] Y, int c, int numWorkers) {
+        int n = X.numRows();
+        int[] binaryY = new int[n];
+        for (int i = 0; i < n; i++)
+            binaryY[i] = (Y[i] == c) ? 1 : 0;
+        try (ParallelLogisticRegression model = new ParallelLogisticRegression(numFeatures, learningRate,
+                numIterations, 0.5, numWorkers)) {
+            model.setRegularization(l2);
+            model.setReduction(reduction);
+            model.setVerbose(false);
+            model.trainModelWithBGD(X, binaryY);
+            if (verbose)
+                System.out.println("Class " + c + " trained");
+            return model.getWeights();
+        }
+    }
+
+    /**
+     * Probability of class k against the others for every row of X
+     */
+    public double[] scoreData(Matrix X, int k) {
+        return getScorer(k).scoreAll(X);
+    }
+
+    /**
+     * Most likely class of every row of X
+     */
+    public int[] predict(Matrix X) {
+        int[] predictedY = new int[X.numRows()];
+        LogisticKernels.classify(X, weights, 0, X.numRows(), predictedY,
+                new double[numClasses * LogisticKernels.BLOCK_SIZE]);
+        return predictedY;
+    }
+
+    /**
+     * Binary model of class k (threshold 0.5)
+     */
+    public LogisticScorer getScorer(int k) {
+        return new LogisticScorer(weights[k], 0.5);
+    }
+
+    public void evaluateModel(int[] Y, int[] predictedY) {
+        MultiClass.evaluateModel(Y, predictedY, numClasses);
+    }
+
+    public int getNumClasses() {
+        return numClasses;
+    }
+
+    /**
+     * Weights of the model of class k
+     */
+    public double[] getWeights(int k) {
+        return weights[k].clone();
+    }
+}
@@ -0,0 +1,201 @@
+package LogisticRegression;
+
+import Utils.Chunk;
+import Utils.ChunkSource;
+import Utils.ColumnStatistics;
+import Utils.Kernels;
+import Utils.Matrix;
+import Utils.Scaler;
+import Utils.SparseMatrix;
+
+import java.io.IOException;
+
+/**
+ * Logistic regression updated one observation at a time with FTRL-proximal
+ * (per-coordinate adaptive learning rates with L1 and L2 regularization).
+ * Refreshing the model with new rows costs one pass over those rows only.
+ * When column statistics are set, raw rows update them first and are then
+ * min-max scaled with the current range, so normalization follows the stream too.
+ * Sparse matrices (without column statistics) are updated through their non-zeros only.
+ * Not thread-safe: updates are meant to come from a single ingesting thread.
+ */
+public class OnlineLogisticRegression {
+
+    private final int numFeatures;
+    private final double alpha; // learning rate scale
+    private final double beta; // learning rate smoothing
+    private final double l1;
+    private final double l2;
+    private final double threshold;
+
+    private final double[] weights;
+    private final double[] z; // FTRL accumulated adjusted gradients
+    private final double[] squaredGradients; // FTRL n_i
+    private final double[] row; // scaled copy of the current observation
+    private ColumnStatistics statistics; // null when the rows are already scaled
+
+    private long numUpdates;
+    private double totalLoss; // log-loss of every row, predicted before its update
+
+    public OnlineLogisticRegression(int numFeatures, double alpha, double beta, double l1, double l2,
+                                    double threshold) {
+        if (alpha <= 0)
+            throw new IllegalArgumentException("alpha must be positive: " + alpha);
+        this.numFeatures = numFeatures;
+        this.alpha = alpha;
+        this.beta = beta;
+        this.l1 = l1;
+        this.l2 = l2;
+        this.threshold = threshold;
+        weights = new double[numFeatures];
+        z = new double[numFeatures];
+        squaredGradients = new double[numFeatures];
+        row = new double[numFeatures];
+    }
+
+    /**
+     * Start from trained weights (e.g. a loaded LogisticModel) instead of zeros
+     */
+    public void setInitialWeights(double[] initialWeights) {
+        if (initialWeights.length != numFeatures)
+            throw new IllegalArgumentException("Expected " + numFeatures + " weights, got " + initialWeights.length);
+        // choose z so that the FTRL closed form gives back the initial weights with n_i = 0
+        for (int j = 0; j < numFeatures; j++) {
+            double w = initialWeights[j];
+            squaredGradients[j] = 0.0;
+            z[j] = -w * (beta / alpha + l2) - Math.signum(w) * l1;
+            weights[j] = w;
+        }
+    }
+
+    /**
+     * Statistics used to scale incoming raw rows, updated by every row (null if rows are already scaled)
+     */
+    public void setStatistics(ColumnStatistics statistics) {
+        if (statistics != null && statistics.numCols() != numFeatures)
+            throw new IllegalArgumentException("Expected statistics of " + numFeatures + " columns");
+        this.statistics = statistics;
+    }
+
+    public ColumnStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Learn from one observation. Returns the probability of class 1 predicted before the update.
+     */
+    public double update(double[] x, int y) {
+        if (x.length != numFeatures)
+            throw new IllegalArgumentException("Expected " + numFeatures + " features, got " + x.length);
+        System.arraycopy(x, 0, row, 0, numFeatures);
+        return learn(y);
+    }
+
+    /**
+     * Learn from every row of X, in order
+     */
+    public void update(Matrix X, int[] Y) {
+        if (X.isSparse() && statistics == null) {
+            updateSparse((SparseMatrix) X, Y);
+            return;
+        }
+        for (int i = 0; i < X.numRows(); i++) {
+            X.copyRow(i, row);
+            learn(Y[i]);
+        }
+    }
+
+    /**
+     * Learn from every remaining row of a source (without normalization of its own).
+     * Returns the number of rows read.
+     */
+    public long update(ChunkSource source, int chunkSize) throws IOException {
+        if (source.hasNormalization() && statistics != null)
+            throw new IllegalStateException("Rows would be scaled twice: the source already normalizes them");
+        Chunk chunk = new Chunk(chunkSize, numFeatures);
+        long rows = 0;
+        while (source.next(chunk)) {
+            update(chunk.getX(), chunk.getY());
+            rows += chunk.size();
+        }
+        return rows;
+    }
+
+    /* rows visited through their non-zeros only: a zero feature has a zero gradient */
+    private void updateSparse(SparseMatrix X, int[] Y) {
+        int[] colIndices = X.getColumnIndices();
+        double[] values = X.getValues();
+        for (int i = 0; i < X.numRows(); i++) {
+            double margin = X.dotRow(i, weights);
+            double p = 1.0 / (1.0 + Math.exp(-margin));
+            totalLoss += LogisticKernels.logLoss(margin, Y[i]);
+            numUpdates++;
+
+            double error = p - Y[i];
+            for (int k = X.rowStart(i), end = X.rowEnd(i); k < end; k++)
+                step(colIndices[k], error * values[k]);
+        }
+    }
+
+    /* one FTRL-proximal step on the observation in row */
+    private double learn(int y) {
+        if (statistics != null) {
+            statistics.add(row);
+            statistics.scaleRow(row);
+        }
+
+        double margin = Kernels.dot(row, 0, weights, numFeatures);
+        double p = 1.0 / (1.0 + Math.exp(-margin));
+        totalLoss += LogisticKernels.logLoss(margin, y);
+        numUpdates++;
+
+        double error = p - y;
+        for (int j = 0; j < numFeatures; j++) {
+            double g = error * row[j];
+            if (g != 0.0)
+                step(j, g);
+        }
+        return p;
+    }
+
+    /* FTRL-proximal update of coordinate j with gradient g */
+    private void step(int j, double g) {
+        double n = squaredGradients[j];
+        double sigma = (Math.sqrt(n + g * g) - Math.sqrt(n)) / alpha;
+        z[j] += g - sigma * weights[j];
+        squaredGradients[j] = n + g * g;
+        weights[j] = (Math.abs(z[j]) <= l1) ? 0.0
+                : -(z[j] - Math.signum(z[j]) * l1) / ((beta + Math.sqrt(squaredGradients[j])) / alpha + l2);
+    }
+
+    /**
+     * Average log-loss of the rows seen so far, each one predicted before learning from it
+     */
+    public double getProgressiveLoss() {
+        return (numUpdates == 0) ? Double.NaN : totalLoss / numUpdates;
+    }
+
+    public long getNumUpdates() {
+        return numUpdates;
+    }
+
+    public double[] getWeights() {
+        return weights.clone();
+    }
+
+    /**
+     * Immutable snapshot of the current weights for inference (on scaled rows)
+     */
+    public LogisticScorer getScorer() {
+        return new LogisticScorer(weights, threshold);
+    }
+
+    /**
+     * Current model with the current normalization range, ready to save
+     */
+    public LogisticModel toModel(String[] varNames) {
+        return LogisticModel.of(weights, varNames,
+                (statistics == null) ? null : Scaler.fit(statistics, Scaler.Type.MIN_MAX),
+                threshold, alpha, (int) Math.min(numUpdates, Integer.MAX_VALUE));
+    }
+}
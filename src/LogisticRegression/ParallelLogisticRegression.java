@@ -1,12 +1,25 @@
 package LogisticRegression;
 
+import Utils.Chunk;
+import Utils.ChunkSource;
+import Utils.Kernels;
+import Utils.Matrix;
+import Utils.Scaler;
+import Utils.SparseMatrix;
+
+import java.io.IOException;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.Arrays;
 import java.util.Locale;
-import java.util.concurrent.*;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
 
-public class ParallelLogisticRegression {
+public class ParallelLogisticRegression implements AutoCloseable {
 
     protected double[] weights;
     protected int numFeatures;
@@ -14,11 +27,95 @@ public class ParallelLogisticRegression {
     protected int numIterations;
     protected double threshold; // Threshold to determine the class (between 0 and 1)
 
+    private static final long SEED = 42; // seed of the row shuffles
+    private static final long CACHE_BYTES = 256 * 1024; // rows of a block should fit in a core's L2 cache
+    private static final int BLOCKS_PER_WORKER = 4; // at least, when there are enough rows, to balance the load
+    private static final long MIN_WORK_PER_WORKER = 1 << 15; // matrix entries, below it a hand-off costs more than it saves
+
+    protected StoppingCriteria stoppingCriteria = StoppingCriteria.NONE;
+    private Matrix XValidation;
+    private int[] YValidation;
+    private ConvergenceMonitor monitor; // loss history of the last fit
+    private double[] initialWeights; // warm start of trainModelWithBGD, null to start from zeros
+    protected double l1; // L1 penalty of trainModelWithBGD and coordinate descent (the bias is not penalized)
+    protected double l2; // L2 penalty of trainModelWithBGD and coordinate descent
+    private boolean verbose = true; // print the progress of the fits
+    private TrainingListener listener; // receives the metrics of every BGD iteration, may be null
+    private long reductionNanos; // time spent summing partial results, since the start of the iteration
+
+    private final int numWorkers; // threads used by the training engine
+    private int parallelism; // workers used by BGD, IRLS and SGD, 0 to pick them from the size of the data
+    private BlockReducer reducer; // reproducible sums of fixed blocks, null to sum the partial results of the workers
+    private TrainingEngine engine; // persistent workers, reused across fits
+    private double[][] partialGradients; // one preallocated gradient buffer per worker
+    private double[] partialLosses;
+    private double[][] partialHessians; // per-worker Hessian buffers, allocated by the first IRLS fit
+    private double[][] rowBuffers;
+    private double[][] scratch; // per-worker buffer for a block of predictions
+
     public ParallelLogisticRegression(int numFeatures, double learningRate, int numIterations, double threshold) {
+        this(numFeatures, learningRate, numIterations, threshold, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelLogisticRegression(int numFeatures, double learningRate, int numIterations, double threshold,
+                                      int numWorkers) {
+        if (numWorkers < 1)
+            throw new IllegalArgumentException("numWorkers must be positive: " + numWorkers);
         this.numFeatures = numFeatures;
         this.learningRate = learningRate;
         this.numIterations = numIterations;
         this.threshold = threshold;
+        this.numWorkers = numWorkers;
+    }
+
+    /**
+     * Number of workers used for the gradient, loss and Hessian computations, between 1 and the
+     * number of workers of the trainer. 0 (the default) picks it from the size of the data, down to
+     * running sequentially on the calling thread when there are too few rows to be worth splitting
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 0 || parallelism > numWorkers)
+            throw new IllegalArgumentException("parallelism must be between 0 and " + numWorkers + ": " + parallelism);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * How the gradient, loss and Hessian are summed (PLAIN by default). With TREE or COMPENSATED_TREE
+     * the rows are also read through Matrix.reproducible, so the weights depend neither on the number
+     * of workers nor on the CPU and the Vector API, and match a SequentialLogisticRegression using the
+     * same reduction, bit for bit
+     */
+    public void setReduction(Reduction reduction) {
+        this.reducer = BlockReducer.of(reduction);
+    }
+
+    /**
+     * Workers that a pass over n rows of X uses
+     */
+    public int parallelismFor(Matrix X, int n) {
+        return (parallelism > 0) ? parallelism : autoParallelism(X, n, 1, numWorkers);
+    }
+
+    /* workers worth waking for n rows of X, when every stored entry costs costPerEntry multiply-adds */
+    static int autoParallelism(Matrix X, int n, int costPerEntry, int maxWorkers) {
+        long work = (long) Math.ceil(n * entriesPerRow(X)) * costPerEntry;
+        return (int) Math.max(1, Math.min(maxWorkers, work / MIN_WORK_PER_WORKER));
+    }
+
+    /* stored entries of an average row, the cost of processing it */
+    private static double entriesPerRow(Matrix X) {
+        if (X instanceof SparseMatrix && X.numRows() > 0)
+            return (double) ((SparseMatrix) X).nonZeros() / X.numRows();
+        return X.numCols();
+    }
+
+    /* rows of a block: a multiple of the kernel block that fits in cache, small enough to leave blocks to steal */
+    static int blockSize(Matrix X, int n, int workers) {
+        double rowBytes = X.isSparse() ? 12 * entriesPerRow(X)
+                : X.numCols() * X.getPrecision().bytes();
+        long rows = (long) Math.min(CACHE_BYTES / Math.max(rowBytes, 1.0), (double) n / (BLOCKS_PER_WORKER * workers));
+        int block = LogisticKernels.BLOCK_SIZE;
+        return (int) Math.max(block, Math.min(rows, Integer.MAX_VALUE) / block * block);
     }
 
     /**
@@ -31,94 +128,674 @@ public class ParallelLogisticRegression {
     /**
      * Training using Batch Gradient Descent
      */
-    public void trainModelWithBGD(double[][] X, int[] Y) {
-        weights = new double[numFeatures]; // filled with zeros
-        int n = X.length; // number of observations
+    public void trainModelWithBGD(Matrix X, int[] Y) {
+        weights = (initialWeights != null) ? initialWeights.clone() : new double[numFeatures]; // zeros by default
+        int n = X.numRows(); // number of observations
+        double[] gradient = new double[numFeatures];
+        double[] subgradient = (l1 != 0.0) ? new double[numFeatures] : gradient;
+        monitor = new ConvergenceMonitor(stoppingCriteria);
+        if (listener != null)
+            listener.fitStarted("BGD", n, parallelismFor(X, n));
 
-        // create a thread pool
-        int numWorkers = Runtime.getRuntime().availableProcessors();
-        ExecutorService pool = Executors.newFixedThreadPool(numWorkers);
+        // Iterate until maxIterations
+        int iter;
+        for (iter = 0; iter < numIterations; iter++) {
+            long iterationStart = System.nanoTime();
+            long allocationStart = (listener != null) ? startIteration() : 0;
 
-        int chunkSize = (int) Math.ceil((double) n / numWorkers);
+            // every worker computes the partial gradient (and loss) of its rows
+            double loss = computeGradient(X, Y, 0, n, weights, gradient, true);
+            loss += addPenalty(weights, gradient, n);
+            if (l1 != 0.0)
+                Penalty.minimumSubgradient(weights, gradient, n, l1, subgradient);
+            if (monitor.gradientConverged(subgradient, n))
+                break;
 
-        // Iterate until maxIterations
-        for (int iter = 0; iter < numIterations; iter++) {
-            Future<double[]>[] futures = new Future[numWorkers];
-
-            // partition the data and submit tasks to calculate partial results
-            for (int w = 0; w < numWorkers; w++) {
-                int start = Math.min(w * chunkSize, n);
-                int end = Math.min((w + 1) * chunkSize, n);
-                futures[w] = pool.submit(new ParallelWorker(X, Y, start, end));
+            // Update weights using the total gradient
+            for (int j = 0; j < this.numFeatures; j++)
+                weights[j] -= learningRate * gradient[j] / n;
+            if (l1 != 0.0)
+                Penalty.shrink(weights, learningRate * l1); // proximal step of the L1 penalty
+
+            if (verbose && (iter + 1) % 100 == 0)
+                System.out.println("Iteration " + (iter + 1) + ": gradient = " + Arrays.toString(gradient));
+
+            double validationLoss = (XValidation == null) ? Double.NaN
+                    : computeLoss(XValidation, YValidation, weights) / XValidation.numRows();
+            if (listener != null)
+                reportIteration(iter + 1, iterationStart, allocationStart, loss / n, gradient, n);
+            if (monitor.record(loss / n, validationLoss, weights)) {
+                iter++;
+                break;
             }
+        }
+        finishTraining(iter);
+        if (listener != null)
+            listener.fitFinished(iter);
+    }
+
+    /**
+     * Listener for the metrics of every BGD iteration (null to disable), e.g. a MetricsRecorder
+     * or a JfrTrainingListener
+     */
+    public void setListener(TrainingListener listener) {
+        this.listener = listener;
+    }
+
+    /* clear the engine counters, return the allocation counter of the training threads */
+    private long startIteration() {
+        TrainingEngine engine = getEngine();
+        engine.resetStatistics();
+        reductionNanos = 0;
+        return AllocationMeter.allocatedBytes(engine.getWorkerThreadIds());
+    }
+
+    private void reportIteration(int iteration, long start, long allocationStart, double loss, double[] gradient,
+                                 int n) {
+        TrainingEngine engine = getEngine();
+        long allocated = AllocationMeter.allocatedBytes(engine.getWorkerThreadIds());
+        double squaredNorm = 0.0;
+        for (double g : gradient)
+            squaredNorm += g * g;
+        listener.iterationCompleted(new IterationMetrics(iteration, System.nanoTime() - start, loss,
+                Math.sqrt(squaredNorm) / n, engine.getComputeNanos(), engine.getWaitNanos(), reductionNanos,
+                (allocationStart < 0) ? -1 : allocated - allocationStart));
+    }
+
+    /**
+     * Start trainModelWithBGD from these weights instead of zeros (null to reset),
+     * e.g. the weights of a previously saved model when retraining on fresh data
+     */
+    public void setInitialWeights(double[] initialWeights) {
+        if (initialWeights != null && initialWeights.length != numFeatures)
+            throw new IllegalArgumentException("Expected " + numFeatures + " weights, got " + initialWeights.length);
+        this.initialWeights = (initialWeights == null) ? null : initialWeights.clone();
+    }
+
+    /**
+     * L2 regularization of trainModelWithBGD: adds l2 / 2 * ||w||^2 (without the bias) to the average loss
+     */
+    public void setRegularization(double l2) {
+        setRegularization(0.0, l2);
+    }
 
-            // accumulate partial results
+    /**
+     * Elastic-net regularization of trainModelWithBGD and trainModelWithCoordinateDescent: adds
+     * l1 * ||w||_1 + l2 / 2 * ||w||^2 (without the bias) to the average loss.
+     * BGD applies the L1 part with a proximal (soft-thresholding) step, so weights can reach zero
+     */
+    public void setRegularization(double l1, double l2) {
+        if (l1 < 0 || l2 < 0)
+            throw new IllegalArgumentException("l1 and l2 must not be negative: " + l1 + ", " + l2);
+        this.l1 = l1;
+        this.l2 = l2;
+    }
+
+    /* add the L2 gradient of n rows to the summed gradient, return the penalty of n rows for the summed loss */
+    private double addPenalty(double[] w, double[] gradient, int n) {
+        return Penalty.addTo(w, gradient, n, l1, l2);
+    }
+
+    /**
+     * Print the progress of the fits (on by default)
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Criteria to stop trainModelWithBGD before numIterations
+     */
+    public void setStoppingCriteria(StoppingCriteria stoppingCriteria) {
+        this.stoppingCriteria = stoppingCriteria;
+    }
+
+    /**
+     * Held-out rows evaluated after every BGD iteration (null to disable).
+     * Used for patience-based early stopping; the weights with the lowest validation loss are kept.
+     */
+    public void setValidationData(Matrix XValidation, int[] YValidation) {
+        this.XValidation = XValidation;
+        this.YValidation = YValidation;
+    }
+
+    /**
+     * Average training log-loss of every iteration of the last BGD fit
+     */
+    public double[] getLossHistory() {
+        return (monitor == null) ? new double[0] : monitor.getLossHistory();
+    }
+
+    /**
+     * Average validation log-loss of every iteration of the last BGD fit (NaN without validation data)
+     */
+    public double[] getValidationLossHistory() {
+        return (monitor == null) ? new double[0] : monitor.getValidationLossHistory();
+    }
+
+    /* keep the best weights seen on the validation data and report an early stop */
+    private void finishTraining(int iterations) {
+        if (monitor.getBestWeights() != null)
+            weights = monitor.getBestWeights();
+        if (verbose && monitor.getStopReason() != null)
+            System.out.println("Stopped after " + iterations + " iterations: " + monitor.getStopReason());
+    }
+
+    /**
+     * Asynchronous parallel SGD (Hogwild).
+     * Every worker runs numIterations epochs of mini-batch SGD over its own rows, shuffled
+     * at every epoch, and applies its updates to the shared weights without locking.
+     * With ATOMIC each weight is updated with a compare-and-set on its bits, with RACY
+     * plain writes are used and concurrent updates of the same weight may be lost.
+     * With a SparseMatrix a batch reads and updates only the weights of its non-zero features.
+     */
+    public void trainModelWithHogwild(Matrix X, int[] Y, int batchSize, WeightUpdate update) {
+        weights = new double[numFeatures]; // filled with zeros
+        int n = X.numRows();
+        AtomicLongArray sharedWeights = (update == WeightUpdate.ATOMIC) ? new AtomicLongArray(numFeatures) : null;
+        SparseMatrix sparse = (X instanceof SparseMatrix) ? (SparseMatrix) X : null;
+        int[] rows = new int[n];
+        for (int i = 0; i < n; i++)
+            rows[i] = i;
+
+        TrainingEngine engine = getEngine();
+        engine.partition(n);
+        engine.run((worker, start, end) -> {
+            SplittableRandom random = new SplittableRandom(SEED + worker);
+            double[] z = new double[Math.max(LogisticKernels.BLOCK_SIZE, batchSize)];
+            if (sparse != null) {
+                // no dense copy of the weights nor dense gradient: O(non-zeros) per batch
+                for (int epoch = 0; epoch < numIterations; epoch++) {
+                    LogisticKernels.shuffle(rows, start, end, random);
+                    for (int from = start; from < end; from += batchSize) {
+                        int to = Math.min(from + batchSize, end);
+                        double step = learningRate / (to - from);
+                        if (sharedWeights != null)
+                            sparseAtomicStep(sparse, Y, sharedWeights, rows, from, to, step, z);
+                        else
+                            LogisticKernels.gradientStep(sparse, Y, weights, rows, from, to, step, z);
+                    }
+                }
+                return;
+            }
             double[] gradient = new double[numFeatures];
-            try {
-                for (int w = 0; w < numWorkers; w++) {
-                    // retrieve value from future
-                    double[] partialGradient = futures[w].get();
-                    for (int i = 0; i < partialGradient.length; i++)
-                        gradient[i] += partialGradient[i];
+            double[] w = (sharedWeights != null) ? new double[numFeatures] : weights;
+
+            for (int epoch = 0; epoch < numIterations; epoch++) {
+                LogisticKernels.shuffle(rows, start, end, random);
+                for (int from = start; from < end; from += batchSize) {
+                    int to = Math.min(from + batchSize, end);
+                    if (sharedWeights != null) {
+                        // read the current weights, possibly while other workers update them
+                        for (int j = 0; j < numFeatures; j++)
+                            w[j] = Double.longBitsToDouble(sharedWeights.getPlain(j));
+                    }
+
+                    Arrays.fill(gradient, 0.0);
+                    LogisticKernels.accumulateGradient(X, Y, w, rows, from, to, gradient, z);
+
+                    double step = learningRate / (to - from);
+                    for (int j = 0; j < numFeatures; j++) {
+                        if (gradient[j] == 0.0)
+                            continue;
+                        if (sharedWeights != null)
+                            atomicAdd(sharedWeights, j, -step * gradient[j]);
+                        else
+                            w[j] -= step * gradient[j];
+                    }
                 }
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
             }
+        });
 
-            // Update weights using the total gradient
-            for (int j = 0; j < this.numFeatures; j++)
-                weights[j] -= learningRate * gradient[j] / n;
+        if (sharedWeights != null) {
+            for (int j = 0; j < numFeatures; j++)
+                weights[j] = Double.longBitsToDouble(sharedWeights.get(j));
+        }
+    }
 
-            if ((iter + 1) % 100 == 0)
-                System.out.println("Iteration " + (iter + 1) + ": gradient = " + Arrays.toString(gradient));
+    /* how Hogwild workers write the shared weights */
+    public enum WeightUpdate { ATOMIC, RACY }
+
+    /*
+     * gradient step on the sparse rows rows[from..to) with shared weights: the predictions read the
+     * weights of the non-zeros of the batch, then every non-zero adds its update with a compare-and-set
+     */
+    private static void sparseAtomicStep(SparseMatrix X, int[] Y, AtomicLongArray w, int[] rows, int from, int to,
+                                         double step, double[] z) {
+        int[] columns = X.getColumnIndices();
+        double[] values = X.getValues();
+        for (int k = from; k < to; k++) {
+            double dot = 0.0;
+            for (int p = X.rowStart(rows[k]), end = X.rowEnd(rows[k]); p < end; p++)
+                dot += values[p] * Double.longBitsToDouble(w.getPlain(columns[p]));
+            z[k - from] = dot;
+        }
+        Kernels.sigmoid(z, 0, to - from);
+        for (int k = from; k < to; k++) {
+            int i = rows[k];
+            double scale = -step * (z[k - from] - Y[i]);
+            for (int p = X.rowStart(i), end = X.rowEnd(i); p < end; p++)
+                atomicAdd(w, columns[p], scale * values[p]);
         }
-        pool.shutdown(); // shut down the pool
     }
 
-    /* worker calculates gradient for subset of rows in X */
-    private class ParallelWorker implements Callable<double[]> {
-        private final int start, end;
-        private final double[][] X;
+    private static void atomicAdd(AtomicLongArray array, int i, double delta) {
+        long current;
+        long next;
+        do {
+            current = array.get(i);
+            next = Double.doubleToRawLongBits(Double.longBitsToDouble(current) + delta);
+        } while (!array.compareAndSet(i, current, next));
+    }
+
+    /**
+     * Out-of-core training with mini-batch gradient descent.
+     * The source is read chunk by chunk (numIterations passes over it); the next chunk is
+     * loaded on a background thread while the mini-batches of the current one are trained,
+     * so only two chunks are ever in memory.
+     * Sparse chunks are trained on the calling thread through the non-zeros of every batch, without
+     * the dense per-worker gradients.
+     */
+    public void trainModelWithStreaming(ChunkSource source, int chunkSize, int batchSize) throws IOException {
+        if (source.numCols() != numFeatures)
+            throw new IllegalArgumentException("Source has " + source.numCols() + " columns, model has " + numFeatures);
+        weights = new double[numFeatures]; // filled with zeros
+        double[] gradient = new double[numFeatures];
+        double[] z = null; // predictions of a sparse batch, allocated with the first one
+
+        ExecutorService prefetcher = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "lr-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Chunk[] chunks = {new Chunk(chunkSize, numFeatures), new Chunk(chunkSize, numFeatures)};
+
+        try {
+            for (int epoch = 0; epoch < numIterations; epoch++) {
+                source.rewind();
+                int current = 0;
+                Future<Boolean> pending = prefetcher.submit(() -> source.next(chunks[0]));
+
+                while (pending.get()) {
+                    // start reading the next chunk while this one is trained
+                    Chunk chunk = chunks[current];
+                    current = 1 - current;
+                    Chunk nextChunk = chunks[current];
+                    pending = prefetcher.submit(() -> source.next(nextChunk));
+
+                    Matrix X = chunk.getX();
+                    int[] Y = chunk.getY();
+                    for (int from = 0; from < chunk.size(); from += batchSize) {
+                        int to = Math.min(from + batchSize, chunk.size());
+                        if (X.isSparse()) {
+                            if (z == null)
+                                z = new double[Math.max(LogisticKernels.BLOCK_SIZE, batchSize)];
+                            LogisticKernels.gradientStep(X, Y, weights, from, to, learningRate / (to - from), z);
+                            continue;
+                        }
+                        computeGradient(X, Y, from, to, gradient);
+                        for (int j = 0; j < numFeatures; j++)
+                            weights[j] -= learningRate * gradient[j] / (to - from);
+                    }
+                }
+                if (verbose && (epoch + 1) % 100 == 0 && z == null) // no dense gradient with sparse chunks
+                    System.out.println("Epoch " + (epoch + 1) + ": gradient = " + Arrays.toString(gradient));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + source, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException("Failed to read the next chunk", e.getCause());
+        } finally {
+            prefetcher.shutdownNow();
+        }
+    }
+
+    /**
+     * Training with L-BFGS on the average log-loss (at most numIterations iterations).
+     * Every evaluation of the loss and gradient is one parallel pass over the data.
+     * Stops when the largest gradient component or the relative loss change is below tolerance.
+     */
+    public void trainModelWithLBFGS(Matrix X, int[] Y, int memory, double tolerance) {
+        weights = new double[numFeatures]; // filled with zeros
+        int iterations = LBFGS.minimize(logLossObjective(X, Y), weights, numIterations, memory, tolerance);
+        if (verbose)
+            System.out.println("L-BFGS finished after " + iterations + " iterations");
+    }
+
+    /**
+     * Training with Newton's method / IRLS (at most numIterations iterations).
+     * The Hessian X^T W X is accumulated in parallel like the gradient.
+     * Stops when the largest gradient component or half the Newton decrement is below tolerance.
+     */
+    public void trainModelWithIRLS(Matrix X, int[] Y, double tolerance) {
+        weights = new double[numFeatures]; // filled with zeros
+        int iterations = NewtonSolver.minimize(logLossObjective(X, Y), weights, numIterations, tolerance);
+        if (verbose)
+            System.out.println("IRLS finished after " + iterations + " iterations");
+    }
+
+    public enum CoordinateOrder { CYCLIC, SHUFFLED }
+
+    /**
+     * Training with coordinate descent on the average log-loss plus the elastic-net penalty of
+     * setRegularization (at most numIterations quadratic approximations, see CoordinateDescent).
+     * Starts from the initial weights when set. Converges in far fewer passes than BGD on wide data,
+     * and an L1 penalty leaves many weights at exactly zero.
+     * Stops when an approximation changes no weight by more than tolerance.
+     */
+    public void trainModelWithCoordinateDescent(Matrix X, int[] Y, CoordinateOrder order, double tolerance) {
+        weights = (initialWeights != null) ? initialWeights.clone() : new double[numFeatures]; // zeros by default
+        CoordinateDescent solver = coordinateDescent(X, Y);
+        int iterations = solver.minimize(weights, l1, l2, order == CoordinateOrder.SHUFFLED, numIterations, tolerance);
+        if (verbose)
+            System.out.println("Coordinate descent finished after " + iterations + " iterations, "
+                    + countNonZeros(weights) + " non-zero weights");
+    }
+
+    /**
+     * Elastic-net regularization path: coordinate descent fits for numLambdas penalties lambda, from
+     * the smallest one that keeps every weight at zero down to minRatio times it (evenly spaced on a
+     * log scale), with l1 = alpha * lambda and l2 = (1 - alpha) * lambda, 0 < alpha <= 1.
+     * Every fit starts from the weights of the previous one, so the path costs little more than its
+     * last fit. The weights of the trainer are left at the last (least regularized) fit.
+     */
+    public RegularizationPath trainRegularizationPath(Matrix X, int[] Y, double alpha, int numLambdas,
+                                                      double minRatio, CoordinateOrder order, double tolerance) {
+        if (!(alpha > 0.0 && alpha <= 1.0))
+            throw new IllegalArgumentException("alpha must be in (0, 1]: " + alpha);
+        if (numLambdas < 1 || !(minRatio > 0.0 && minRatio <= 1.0))
+            throw new IllegalArgumentException("Invalid path: " + numLambdas + " penalties down to " + minRatio);
+        CoordinateDescent solver = coordinateDescent(X, Y);
+
+        // only the bias: the optimum for the largest penalty
+        weights = new double[numFeatures];
+        double positives = 0.0;
+        for (int y : Y)
+            positives += y;
+        double mean = positives / Y.length;
+        if (mean > 0.0 && mean < 1.0)
+            weights[0] = Math.log(mean / (1.0 - mean));
+        double maxLambda = solver.maxPenalizedGradient(weights) / alpha;
+
+        double[] lambdas = new double[numLambdas];
+        double[][] path = new double[numLambdas][];
+        double[] losses = new double[numLambdas];
+        for (int k = 0; k < numLambdas; k++) {
+            lambdas[k] = (numLambdas == 1) ? maxLambda * minRatio
+                    : maxLambda * Math.pow(minRatio, (double) k / (numLambdas - 1));
+            int iterations = solver.minimize(weights, alpha * lambdas[k], (1.0 - alpha) * lambdas[k],
+                    order == CoordinateOrder.SHUFFLED, numIterations, tolerance);
+            path[k] = weights.clone();
+            losses[k] = solver.getLoss();
+            if (verbose)
+                System.out.println("lambda = " + lambdas[k] + ": " + countNonZeros(weights) + " non-zero weights, loss = "
+                        + losses[k] + " (" + iterations + " iterations)");
+        }
+        return new RegularizationPath(alpha, lambdas, path, losses);
+    }
+
+    /* solver over a column-major (or compressed sparse column) copy of X, on the training workers */
+    private CoordinateDescent coordinateDescent(Matrix X, int[] Y) {
+        if (X.numCols() != numFeatures)
+            throw new IllegalArgumentException("Expected " + numFeatures + " features, got " + X.numCols());
+        int n = X.numRows();
+        // a coordinate is a pass over one column: n entries
+        int workers = (parallelism > 0) ? parallelism
+                : (int) Math.max(1, Math.min(numWorkers, n / MIN_WORK_PER_WORKER));
+        return new CoordinateDescent(X, Y, getEngine(), workers, SEED);
+    }
+
+    private static int countNonZeros(double[] w) {
+        int count = 0;
+        for (int j = 1; j < w.length; j++)
+            if (w[j] != 0.0)
+                count++;
+        return count;
+    }
+
+    /* average log-loss over X, with gradient and Hessian computed by the workers */
+    private TwiceDifferentiable logLossObjective(Matrix X, int[] Y) {
+        int n = X.numRows();
+        return new TwiceDifferentiable() {
+            @Override
+            public double evaluate(double[] w, double[] gradient) {
+                double loss = computeGradient(X, Y, 0, n, w, gradient, true);
+                for (int j = 0; j < numFeatures; j++)
+                    gradient[j] /= n;
+                return loss / n;
+            }
+
+            @Override
+            public void hessian(double[] w, double[] hessian) {
+                computeHessian(X, w, hessian);
+                for (int j = 0; j < hessian.length; j++)
+                    hessian[j] /= n;
+            }
+        };
+    }
+
+    /**
+     * Log-loss at w summed over the rows of X, gradient = the summed gradient, computed by the
+     * workers (e.g. the local part of a distributed fit)
+     */
+    public double computeLossAndGradient(Matrix X, int[] Y, double[] w, double[] gradient) {
+        return computeGradient(X, Y, 0, X.numRows(), w, gradient, true);
+    }
+
+    private void computeGradient(Matrix X, int[] Y, int from, int to, double[] gradient) {
+        computeGradient(X, Y, from, to, weights, gradient, false);
+    }
+
+    /**
+     * gradient = sum of the per-row gradients at w of rows [from, to), computed by all workers.
+     * Returns the summed log-loss when computeLoss is set, 0 otherwise.
+     */
+    private double computeGradient(Matrix X, int[] Y, int from, int to, double[] w, double[] gradient,
+                                   boolean computeLoss) {
+        if (reducer != null)
+            X = X.reproducible(); // the rows of a block too must be summed the same way on every CPU
+        TrainingEngine engine = prepareEngine(X, to - from, numFeatures + 1);
+        int numWorkers = engine.getNumWorkers();
+        for (int k = 0; k < numWorkers; k++)
+            Arrays.fill(partialGradients[k], 0.0);
+        Arrays.fill(partialLosses, 0.0);
+
+        engine.run(new GradientTask(X, Y, from, w, computeLoss));
+
+        // accumulate partial results
+        long reductionStart = System.nanoTime();
+        if (reducer != null) {
+            reduceBlocks(engine, numFeatures + 1);
+            for (int j = 0; j < numFeatures; j++)
+                gradient[j] = reducer.total(j);
+            reductionNanos += System.nanoTime() - reductionStart;
+            return reducer.total(numFeatures);
+        }
+        Arrays.fill(gradient, 0.0);
+        double loss = 0.0;
+        for (int k = 0; k < numWorkers; k++) {
+            double[] partialGradient = partialGradients[k];
+            for (int i = 0; i < numFeatures; i++)
+                gradient[i] += partialGradient[i];
+            loss += partialLosses[k];
+        }
+        reductionNanos += System.nanoTime() - reductionStart;
+        return loss;
+    }
+
+    /**
+     * Log-loss at w summed over the rows of X, computed by all workers
+     */
+    private double computeLoss(Matrix X, int[] Y, double[] w) {
+        TrainingEngine engine = prepareEngine(X, X.numRows(), 1);
+        if (reducer != null) {
+            Matrix rows = X.reproducible();
+            engine.run((worker, start, end) -> reducer.clearedBlock(start / reducer.getBlockRows())[0] =
+                    LogisticKernels.loss(rows, Y, w, start, end, scratch[worker]));
+            reducer.reduce(0, 1);
+            return reducer.total(0);
+        }
+        Arrays.fill(partialLosses, 0.0);
+        engine.run((worker, start, end) ->
+                partialLosses[worker] += LogisticKernels.loss(X, Y, w, start, end, scratch[worker]));
+        double loss = 0.0;
+        for (int k = 0; k < engine.getNumWorkers(); k++)
+            loss += partialLosses[k];
+        return loss;
+    }
+
+    /**
+     * hessian = X^T W X at w (full symmetric matrix, row-major), computed by all workers
+     */
+    private void computeHessian(Matrix X, double[] w, double[] hessian) {
+        int d = numFeatures;
+        TrainingEngine engine = prepareEngine(X, X.numRows(), d * d);
+        int numWorkers = engine.getNumWorkers();
+        if (partialHessians == null || partialHessians.length != numWorkers || partialHessians[0].length != d * d) {
+            partialHessians = new double[numWorkers][d * d];
+            rowBuffers = new double[numWorkers][d];
+        }
+
+        // accumulate the upper triangles, then mirror
+        if (reducer != null) {
+            Matrix rows = X.reproducible();
+            engine.run((worker, start, end) -> LogisticKernels.accumulateHessian(rows, w, start, end,
+                    reducer.clearedBlock(start / reducer.getBlockRows()), scratch[worker], rowBuffers[worker]));
+            reduceBlocks(engine, d * d);
+            for (int i = 0; i < d * d; i++)
+                hessian[i] = reducer.total(i);
+        } else {
+            for (int k = 0; k < numWorkers; k++)
+                Arrays.fill(partialHessians[k], 0.0);
+            engine.run((worker, start, end) -> LogisticKernels.accumulateHessian(X, w, start, end,
+                    partialHessians[worker], scratch[worker], rowBuffers[worker]));
+            Arrays.fill(hessian, 0.0);
+            for (int k = 0; k < numWorkers; k++) {
+                double[] partialHessian = partialHessians[k];
+                for (int i = 0; i < d * d; i++)
+                    hessian[i] += partialHessian[i];
+            }
+        }
+        for (int a = 0; a < d; a++)
+            for (int b = a + 1; b < d; b++)
+                hessian[b * d + a] = hessian[a * d + b];
+    }
+
+    /*
+     * cut n rows of X into blocks for the persistent workers and size the per-worker buffers;
+     * with a reducer the blocks are its fixed blocks of n rows producing width values
+     */
+    private TrainingEngine prepareEngine(Matrix X, int n, int width) {
+        TrainingEngine engine = getEngine();
+        int workers = parallelismFor(X, n);
+        if (reducer != null) {
+            reducer.prepare(n, width);
+            workers = Math.max(1, Math.min(workers, reducer.getNumBlocks()));
+            engine.partitionBlocks(n, reducer.getBlockRows(), workers);
+        } else {
+            engine.partitionBlocks(n, blockSize(X, n, workers), workers);
+        }
+        int numWorkers = engine.getNumWorkers();
+        if (partialGradients == null || partialGradients.length != numWorkers
+                || partialGradients[0].length != numFeatures) {
+            partialGradients = new double[numWorkers][numFeatures];
+            partialLosses = new double[numWorkers];
+        }
+        if (scratch == null || scratch.length != numWorkers)
+            scratch = new double[numWorkers][LogisticKernels.BLOCK_SIZE];
+        return engine;
+    }
+
+    /* tree-sum the blocks of the reducer, splitting wide results among the workers */
+    private void reduceBlocks(TrainingEngine engine, int width) {
+        int workers = engine.getActiveWorkers();
+        if (workers == 1 || (long) reducer.getNumBlocks() * width < MIN_WORK_PER_WORKER * workers) {
+            reducer.reduce(0, width);
+            return;
+        }
+        engine.partitionBlocks(width, (width + workers - 1) / workers, workers);
+        engine.run((worker, start, end) -> reducer.reduce(start, end));
+    }
+
+    /* worker adds the gradient (and loss) of a block of rows in X to its partial results */
+    private class GradientTask implements TrainingEngine.PartitionTask {
+        private final Matrix X;
         private final int[] Y;
+        private final int offset; // first row of the partitioned range
+        private final double[] w;
+        private final boolean computeLoss;
 
-        public ParallelWorker(double[][] X, int[] Y, int start, int end) {
+        public GradientTask(Matrix X, int[] Y, int offset, double[] w, boolean computeLoss) {
             this.X = X;
             this.Y = Y;
-            this.start = start;
-            this.end = end;
+            this.offset = offset;
+            this.w = w;
+            this.computeLoss = computeLoss;
         }
 
-        public double[] call() {
-            double[] partialGradient = new double[numFeatures];
-
-            // Compute gradient for each feature in the subset
-            for (int i = start; i < end; i++) {
-                double yPredicted = computePrediction(X[i]);
-                double error = yPredicted - Y[i];
-                for (int j = 0; j < numFeatures; j++) {
-                    partialGradient[j] += error * X[i][j];
-                }
+        public void run(int worker, int start, int end) {
+            if (reducer != null) {
+                // the block gets its own buffer, with the loss after the gradient
+                double[] block = reducer.clearedBlock(start / reducer.getBlockRows());
+                if (computeLoss)
+                    block[numFeatures] = LogisticKernels.accumulateLossAndGradient(X, Y, w, offset + start,
+                            offset + end, block, scratch[worker]);
+                else
+                    LogisticKernels.accumulateGradient(X, Y, w, offset + start, offset + end, block, scratch[worker]);
+                return;
             }
+            double[] partialGradient = partialGradients[worker];
 
-            return partialGradient;
+            // Compute gradient for each feature in the block
+            if (computeLoss) {
+                partialLosses[worker] += LogisticKernels.accumulateLossAndGradient(X, Y, w, offset + start,
+                        offset + end, partialGradient, scratch[worker]);
+            } else {
+                LogisticKernels.accumulateGradient(X, Y, w, offset + start, offset + end,
+                        partialGradient, scratch[worker]);
+            }
         }
     }
 
-    private double computePrediction(double[] x) {
-        double z = 0.0;
-        for (int i = 0; i < numFeatures; i++) {
-            z += weights[i] * x[i];
-        }
-        return sigmoid(z);
+    /**
+     * Workers are created on first use and kept for the following fits
+     */
+    protected TrainingEngine getEngine() {
+        if (engine == null)
+            engine = new TrainingEngine(numWorkers);
+        return engine;
     }
 
-    public double[] scoreData(double[][] data) {
-        int n = data.length;
-        double[] predictedY = new double[n];
-        for (int i = 0; i < n; i++) {
-            predictedY[i] = computePrediction(data[i]);
+    /**
+     * Stop the worker threads
+     */
+    @Override
+    public void close() {
+        if (engine != null) {
+            engine.close();
+            engine = null;
         }
-        return predictedY;
+    }
+
+    public double[] scoreData(Matrix data) {
+        return getScorer().scoreAll(data);
+    }
+
+    /**
+     * Trained model with the dataset header and the scaler of the training data (null if not normalized), ready to save
+     */
+    public LogisticModel toModel(String[] varNames, Scaler scaler) {
+        return LogisticModel.of(weights, varNames, scaler, threshold, learningRate, numIterations);
+    }
+
+    /**
+     * Immutable snapshot of the current weights for inference
+     */
+    public LogisticScorer getScorer() {
+        return new LogisticScorer(weights, threshold);
     }
 
     public void evaluateModel(int[] Y, double[] predictedY) {
@@ -152,6 +829,10 @@ public class ParallelLogisticRegression {
         System.out.println("Precision= " + df.format(precision));
         System.out.println("Recall= " + df.format(recall));
         System.out.println("Accuracy= " + df.format(accuracy));
+        ClassificationMetrics metrics = new ModelEvaluator().evaluate(Y, predictedY);
+        System.out.println(metrics);
+        System.out.println("Best threshold= " + df.format(metrics.getBestThreshold())
+                + " (accuracy " + df.format(metrics.getConfusionMatrix(metrics.getBestThreshold()).getAccuracy()) + ")");
         System.out.println();
     }
 
@@ -0,0 +1,63 @@
+package LogisticRegression;
+
+/*
+ * Elastic-net penalty l1 * ||w||_1 + l2 / 2 * ||w||^2 shared by the trainers.
+ * The bias w[0] is never penalized.
+ */
+final class Penalty {
+
+    private Penalty() {
+    }
+
+    /* penalty of one row (to be added to the average loss) */
+    static double value(double[] w, double l1, double l2) {
+        double absSum = 0.0;
+        double squaredNorm = 0.0;
+        for (int j = 1; j < w.length; j++) {
+            absSum += Math.abs(w[j]);
+            squaredNorm += w[j] * w[j];
+        }
+        return l1 * absSum + 0.5 * l2 * squaredNorm;
+    }
+
+    /* add the gradient of the L2 part for n rows to the summed gradient, return the penalty of n rows */
+    static double addTo(double[] w, double[] gradient, int n, double l1, double l2) {
+        if (l1 == 0.0 && l2 == 0.0)
+            return 0.0;
+        for (int j = 1; j < w.length && l2 != 0.0; j++)
+            gradient[j] += n * l2 * w[j];
+        return n * value(w, l1, l2);
+    }
+
+    /* proximal step of t * ||w||_1: shrink every weight towards zero by t */
+    static void shrink(double[] w, double t) {
+        for (int j = 1; j < w.length; j++)
+            w[j] = softThreshold(w[j], t);
+    }
+
+    static double softThreshold(double u, double t) {
+        if (u > t)
+            return u - t;
+        if (u < -t)
+            return u + t;
+        return 0.0;
+    }
+
+    /*
+     * out = the smallest subgradient of the summed loss plus n * l1 * ||w||_1, given the summed
+     * gradient of the rest: zero at a minimum, like the gradient of a smooth loss
+     */
+    static double[] minimumSubgradient(double[] w, double[] gradient, int n, double l1, double[] out) {
+        out[0] = gradient[0];
+        double t = n * l1;
+        for (int j = 1; j < w.length; j++) {
+            if (w[j] > 0.0)
+                out[j] = gradient[j] + t;
+            else if (w[j] < 0.0)
+                out[j] = gradient[j] - t;
+            else
+                out[j] = softThreshold(gradient[j], t);
+        }
+        return out;
+    }
+}
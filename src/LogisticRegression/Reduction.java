@@ -0,0 +1,16 @@
+package LogisticRegression;
+
+/**
+ * How the per-row contributions to the gradient, loss and Hessian are summed.
+ */
+public enum Reduction {
+    /** rows summed as they are processed; in parallel the last bits depend on how the rows were shared */
+    PLAIN,
+    /**
+     * fixed-size blocks added pairwise along a fixed tree, rows read with the reproducible kernels:
+     * the same bits for any number of workers, on any CPU, with or without the Vector API
+     */
+    TREE,
+    /** TREE with compensated additions, carrying the rounding error of every addition up the tree */
+    COMPENSATED_TREE
+}
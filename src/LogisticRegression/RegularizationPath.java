@@ -0,0 +1,66 @@
+package LogisticRegression;
+
+/**
+ * Weights fitted for a decreasing sequence of elastic-net penalties lambda, with
+ * l1 = alpha * lambda and l2 = (1 - alpha) * lambda (see
+ * ParallelLogisticRegression.trainRegularizationPath). Fit 0 has the largest penalty.
+ */
+public final class RegularizationPath {
+
+    private final double alpha;
+    private final double[] lambdas;
+    private final double[][] weights;
+    private final double[] losses;
+
+    RegularizationPath(double alpha, double[] lambdas, double[][] weights, double[] losses) {
+        this.alpha = alpha;
+        this.lambdas = lambdas;
+        this.weights = weights;
+        this.losses = losses;
+    }
+
+    /**
+     * Number of fits
+     */
+    public int size() {
+        return lambdas.length;
+    }
+
+    public double getAlpha() {
+        return alpha;
+    }
+
+    public double getLambda(int k) {
+        return lambdas[k];
+    }
+
+    public double getL1(int k) {
+        return alpha * lambdas[k];
+    }
+
+    public double getL2(int k) {
+        return (1.0 - alpha) * lambdas[k];
+    }
+
+    public double[] getWeights(int k) {
+        return weights[k].clone();
+    }
+
+    /**
+     * Non-zero weights of fit k, without the bias
+     */
+    public int getNumNonZeros(int k) {
+        int count = 0;
+        for (int j = 1; j < weights[k].length; j++)
+            if (weights[k][j] != 0.0)
+                count++;
+        return count;
+    }
+
+    /**
+     * Average training log-loss of fit k (without the penalty)
+     */
+    public double getLoss(int k) {
+        return losses[k];
+    }
+}
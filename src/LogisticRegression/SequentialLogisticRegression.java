@@ -1,9 +1,13 @@
 package LogisticRegression;
 
+import Utils.Matrix;
+import Utils.Scaler;
+
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.Arrays;
 import java.util.Locale;
+import java.util.SplittableRandom;
 
 public class SequentialLogisticRegression {
 
@@ -13,6 +17,19 @@ public class SequentialLogisticRegression {
     protected int numIterations;
     protected double threshold; // Threshold to determine the class (between 0 and 1)
 
+    private static final long SEED = 42; // seed of the row shuffles
+
+    protected StoppingCriteria stoppingCriteria = StoppingCriteria.NONE;
+    private Matrix XValidation;
+    private int[] YValidation;
+    private ConvergenceMonitor monitor; // loss history of the last fit
+    private double[] initialWeights; // warm start of trainModelWithBGD, null to start from zeros
+    protected double l1; // L1 penalty of trainModelWithBGD (the bias is not penalized)
+    protected double l2; // L2 penalty of trainModelWithBGD
+    private boolean verbose = true; // print the progress of the fits
+    private TrainingListener listener; // receives the metrics of every BGD iteration, may be null
+    private BlockReducer reducer; // fixed-block tree sums of BGD, null to sum the rows in order
+
     public SequentialLogisticRegression(int numFeatures, double learningRate, int numIterations, double threshold) {
         this.numFeatures = numFeatures;
         this.learningRate = learningRate;
@@ -30,49 +47,258 @@ public class SequentialLogisticRegression {
     /**
      * Training using Batch Gradient Descent
      */
-    public void trainModelWithBGD(double[][] X, int[] Y) {
-        weights = new double[numFeatures]; // filled with zeros
+    public void trainModelWithBGD(Matrix X, int[] Y) {
+        weights = (initialWeights != null) ? initialWeights.clone() : new double[numFeatures]; // zeros by default
+        double[] z = new double[LogisticKernels.BLOCK_SIZE];
+        double[] subgradient = new double[numFeatures];
+        monitor = new ConvergenceMonitor(stoppingCriteria);
+        if (listener != null)
+            listener.fitStarted("BGD", X.numRows(), 1);
+        long[] noThreads = new long[0];
+        int n;
         // Iterate until maxIterations
-        for (int n = 0; n < numIterations; n++) {
+        for (n = 0; n < numIterations; n++) {
+            long iterationStart = System.nanoTime();
+            long allocationStart = (listener != null) ? AllocationMeter.allocatedBytes(noThreads) : 0;
             double[] gradient = new double[numFeatures];
 
-            // Compute gradient for each observation in the dataset
-            for (int i = 0; i < X.length; i++) {
-                double yPredicted = computePrediction(X[i]);
-                double error = yPredicted - Y[i];
-
-                for (int j = 0; j < numFeatures; j++) {
-                    gradient[j] += error * X[i][j];
-                }
-            }
+            // Compute gradient (and loss) for each observation in the dataset
+            double loss = (reducer == null)
+                    ? LogisticKernels.accumulateLossAndGradient(X, Y, weights, 0, X.numRows(), gradient, z)
+                    : reduceLossAndGradient(X, Y, weights, gradient, z);
+            loss += addPenalty(weights, gradient, X.numRows());
+            if (monitor.gradientConverged((l1 == 0.0) ? gradient
+                    : Penalty.minimumSubgradient(weights, gradient, X.numRows(), l1, subgradient), X.numRows()))
+                break;
 
             // Update weights using the gradient
             for (int j = 0; j < numFeatures; j++) {
-                weights[j] -= learningRate * gradient[j] / X.length;
+                weights[j] -= learningRate * gradient[j] / X.numRows();
             }
+            if (l1 != 0.0)
+                Penalty.shrink(weights, learningRate * l1); // proximal step of the L1 penalty
 
-            if ((n+1) % 100 == 0)
+            if (verbose && (n+1) % 100 == 0)
                 System.out.println("Iteration " + (n+1) + ": gradient = " + Arrays.toString(gradient));
+
+            double validationLoss = (XValidation == null) ? Double.NaN
+                    : reduceLoss(XValidation, YValidation, weights, z) / XValidation.numRows();
+            if (listener != null) {
+                long wall = System.nanoTime() - iterationStart;
+                long allocated = AllocationMeter.allocatedBytes(noThreads);
+                listener.iterationCompleted(new IterationMetrics(n + 1, wall, loss / X.numRows(),
+                        Math.sqrt(squaredNorm(gradient)) / X.numRows(), new long[]{wall}, new long[1], 0,
+                        (allocationStart < 0) ? -1 : allocated - allocationStart));
+            }
+            if (monitor.record(loss / X.numRows(), validationLoss, weights)) {
+                n++;
+                break;
+            }
         }
+        finishTraining(n);
+        if (listener != null)
+            listener.fitFinished(n);
     }
 
-    private double computePrediction(double[] x) {
-        double z = 0.0;
-        for (int i = 0; i < numFeatures; i++) {
-            z += weights[i] * x[i];
+    /**
+     * Listener for the metrics of every BGD iteration (null to disable), e.g. a MetricsRecorder
+     * or a JfrTrainingListener
+     */
+    public void setListener(TrainingListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * How BGD sums the gradient and loss (PLAIN by default). With TREE or COMPENSATED_TREE the rows
+     * are read through Matrix.reproducible and the weights match a ParallelLogisticRegression using
+     * the same reduction, bit for bit
+     */
+    public void setReduction(Reduction reduction) {
+        this.reducer = BlockReducer.of(reduction);
+    }
+
+    /* summed loss, gradient = summed gradient, block by block like the parallel trainer */
+    private double reduceLossAndGradient(Matrix X, int[] Y, double[] w, double[] gradient, double[] z) {
+        X = X.reproducible(); // the same kernels as the parallel trainer, on every CPU
+        int n = X.numRows();
+        reducer.prepare(n, numFeatures + 1);
+        int blockRows = reducer.getBlockRows();
+        for (int b = 0; b < reducer.getNumBlocks(); b++) {
+            double[] block = reducer.clearedBlock(b);
+            int start = b * blockRows;
+            block[numFeatures] = LogisticKernels.accumulateLossAndGradient(X, Y, w, start,
+                    Math.min(start + blockRows, n), block, z);
         }
-        return sigmoid(z);
+        reducer.reduce(0, numFeatures + 1);
+        for (int j = 0; j < numFeatures; j++)
+            gradient[j] = reducer.total(j);
+        return reducer.total(numFeatures);
     }
 
-    public double[] scoreData(double[][] data) {
-        int n = data.length;
-        double[] predictedY = new double[n];
-        for (int i = 0; i < n; i++) {
-            predictedY[i] = computePrediction(data[i]);
+    /* summed loss over X, with the reducer when set */
+    private double reduceLoss(Matrix X, int[] Y, double[] w, double[] z) {
+        int n = X.numRows();
+        if (reducer == null)
+            return LogisticKernels.loss(X, Y, w, 0, n, z);
+        X = X.reproducible();
+        reducer.prepare(n, 1);
+        int blockRows = reducer.getBlockRows();
+        for (int b = 0; b < reducer.getNumBlocks(); b++) {
+            int start = b * blockRows;
+            reducer.clearedBlock(b)[0] = LogisticKernels.loss(X, Y, w, start, Math.min(start + blockRows, n), z);
+        }
+        reducer.reduce(0, 1);
+        return reducer.total(0);
+    }
+
+    private static double squaredNorm(double[] v) {
+        double sum = 0.0;
+        for (double x : v)
+            sum += x * x;
+        return sum;
+    }
+
+    /**
+     * Start trainModelWithBGD from these weights instead of zeros (null to reset),
+     * e.g. the weights of a previously saved model when retraining on fresh data
+     */
+    public void setInitialWeights(double[] initialWeights) {
+        if (initialWeights != null && initialWeights.length != numFeatures)
+            throw new IllegalArgumentException("Expected " + numFeatures + " weights, got " + initialWeights.length);
+        this.initialWeights = (initialWeights == null) ? null : initialWeights.clone();
+    }
+
+    /**
+     * L2 regularization of trainModelWithBGD: adds l2 / 2 * ||w||^2 (without the bias) to the average loss
+     */
+    public void setRegularization(double l2) {
+        setRegularization(0.0, l2);
+    }
+
+    /**
+     * Elastic-net regularization of trainModelWithBGD: adds l1 * ||w||_1 + l2 / 2 * ||w||^2 (without
+     * the bias) to the average loss. The L1 part is applied with a proximal (soft-thresholding) step
+     */
+    public void setRegularization(double l1, double l2) {
+        if (l1 < 0 || l2 < 0)
+            throw new IllegalArgumentException("l1 and l2 must not be negative: " + l1 + ", " + l2);
+        this.l1 = l1;
+        this.l2 = l2;
+    }
+
+    /* add the L2 gradient of n rows to the summed gradient, return the penalty of n rows for the summed loss */
+    private double addPenalty(double[] w, double[] gradient, int n) {
+        return Penalty.addTo(w, gradient, n, l1, l2);
+    }
+
+    /**
+     * Print the progress of the fits (on by default)
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Criteria to stop trainModelWithBGD before numIterations
+     */
+    public void setStoppingCriteria(StoppingCriteria stoppingCriteria) {
+        this.stoppingCriteria = stoppingCriteria;
+    }
+
+    /**
+     * Held-out rows evaluated after every BGD iteration (null to disable).
+     * Used for patience-based early stopping; the weights with the lowest validation loss are kept.
+     */
+    public void setValidationData(Matrix XValidation, int[] YValidation) {
+        this.XValidation = XValidation;
+        this.YValidation = YValidation;
+    }
+
+    /**
+     * Average training log-loss of every iteration of the last BGD fit
+     */
+    public double[] getLossHistory() {
+        return (monitor == null) ? new double[0] : monitor.getLossHistory();
+    }
+
+    /**
+     * Average validation log-loss of every iteration of the last BGD fit (NaN without validation data)
+     */
+    public double[] getValidationLossHistory() {
+        return (monitor == null) ? new double[0] : monitor.getValidationLossHistory();
+    }
+
+    /* keep the best weights seen on the validation data and report an early stop */
+    private void finishTraining(int iterations) {
+        if (monitor.getBestWeights() != null)
+            weights = monitor.getBestWeights();
+        if (verbose && monitor.getStopReason() != null)
+            System.out.println("Stopped after " + iterations + " iterations: " + monitor.getStopReason());
+    }
+
+    /**
+     * Training using Mini-batch Stochastic Gradient Descent.
+     * Each of the numIterations epochs visits every row once, updating the weights after
+     * every batchSize rows; with shuffle the row order is permuted at every epoch.
+     * With a SparseMatrix an update costs the non-zeros of the batch instead of numFeatures.
+     */
+    public void trainModelWithMiniBatchSGD(Matrix X, int[] Y, int batchSize, boolean shuffle) {
+        weights = new double[numFeatures]; // filled with zeros
+        int n = X.numRows();
+        double[] gradient = new double[numFeatures];
+        double[] z = new double[Math.max(LogisticKernels.BLOCK_SIZE, batchSize)];
+        int[] rows = new int[n];
+        for (int i = 0; i < n; i++)
+            rows[i] = i;
+        SplittableRandom random = new SplittableRandom(SEED);
+
+        for (int epoch = 0; epoch < numIterations; epoch++) {
+            if (shuffle)
+                LogisticKernels.shuffle(rows, 0, n, random);
+
+            for (int from = 0; from < n; from += batchSize) {
+                int to = Math.min(from + batchSize, n);
+                if (X.isSparse()) {
+                    // no dense gradient: only the weights of the non-zero features are touched
+                    LogisticKernels.gradientStep(X, Y, weights, rows, from, to, learningRate / (to - from), z);
+                    continue;
+                }
+                Arrays.fill(gradient, 0.0);
+                if (shuffle)
+                    LogisticKernels.accumulateGradient(X, Y, weights, rows, from, to, gradient, z);
+                else
+                    LogisticKernels.accumulateGradient(X, Y, weights, from, to, gradient, z);
+
+                for (int j = 0; j < numFeatures; j++)
+                    weights[j] -= learningRate * gradient[j] / (to - from);
+            }
+
+            if (verbose && (epoch + 1) % 100 == 0 && !X.isSparse())
+                System.out.println("Epoch " + (epoch + 1) + ": gradient = " + Arrays.toString(gradient));
         }
+    }
+
+    public double[] scoreData(Matrix data) {
+        int n = data.numRows();
+        double[] predictedY = new double[n];
+        LogisticKernels.score(data, weights, 0, n, predictedY);
         return predictedY;
     }
 
+    /**
+     * Trained model with the dataset header and the scaler of the training data (null if not normalized), ready to save
+     */
+    public LogisticModel toModel(String[] varNames, Scaler scaler) {
+        return LogisticModel.of(weights, varNames, scaler, threshold, learningRate, numIterations);
+    }
+
+    /**
+     * Immutable snapshot of the current weights for inference
+     */
+    public LogisticScorer getScorer() {
+        return new LogisticScorer(weights, threshold);
+    }
+
     public void evaluateModel(int[] Y, double[] predictedY) {
         int FP = 0;
         int FN = 0;
@@ -104,6 +330,10 @@ public class SequentialLogisticRegression {
         System.out.println("Precision= " + df.format(precision));
         System.out.println("Recall= " + df.format(recall));
         System.out.println("Accuracy= " + df.format(accuracy));
+        ClassificationMetrics metrics = new ModelEvaluator().evaluate(Y, predictedY);
+        System.out.println(metrics);
+        System.out.println("Best threshold= " + df.format(metrics.getBestThreshold())
+                + " (accuracy " + df.format(metrics.getConfusionMatrix(metrics.getBestThreshold()).getAccuracy()) + ")");
         System.out.println();
     }
 
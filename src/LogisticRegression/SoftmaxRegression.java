@@ -0,0 +1,213 @@
+package LogisticRegression;
+
+import Utils.Matrix;
+
+import java.util.Arrays;
+
+/**
+ * Multinomial (softmax) logistic regression: one weight vector per class, P(y = k | x) = softmax(W x)_k.
+ * Trained with Batch Gradient Descent on the average cross-entropy. Every iteration is a single
+ * parallel pass over the data computing the gradient of all the classes: each block of rows is
+ * scored against every class while it is in cache, instead of reading the data once per class.
+ * Runs on a TrainingEngine like ParallelLogisticRegression.
+ */
+public class SoftmaxRegression implements AutoCloseable {
+
+    private final int numFeatures;
+    private final int numClasses;
+    private final double learningRate;
+    private final int numIterations;
+    private double l2; // L2 penalty (the biases are not penalized)
+    private boolean verbose = true; // print the progress of the fits
+    private double[][] weights; // weights[k] of class k
+    private double[] lossHistory; // average training cross-entropy of every iteration of the last fit
+
+    private final int numWorkers; // threads used by the training engine
+    private int parallelism; // 0 to pick the number of workers from the size of the data
+    private TrainingEngine engine; // persistent workers, reused across fits
+    private double[][][] partialGradients; // [worker][class][feature]
+    private double[] partialLosses;
+    private double[][] scratch; // per-worker logits of a block of rows for every class
+
+    public SoftmaxRegression(int numFeatures, int numClasses, double learningRate, int numIterations) {
+        this(numFeatures, numClasses, learningRate, numIterations, Runtime.getRuntime().availableProcessors());
+    }
+
+    public SoftmaxRegression(int numFeatures, int numClasses, double learningRate, int numIterations,
+                             int numWorkers) {
+        if (numClasses < 2)
+            throw new IllegalArgumentException("Expected at least 2 classes: " + numClasses);
+        if (numWorkers < 1)
+            throw new IllegalArgumentException("numWorkers must be positive: " + numWorkers);
+        this.numFeatures = numFeatures;
+        this.numClasses = numClasses;
+        this.learningRate = learningRate;
+        this.numIterations = numIterations;
+        this.numWorkers = numWorkers;
+    }
+
+    /**
+     * Number of workers used by a fit, see ParallelLogisticRegression.setParallelism
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 0 || parallelism > numWorkers)
+            throw new IllegalArgumentException("parallelism must be between 0 and " + numWorkers + ": " + parallelism);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * L2 regularization: adds l2 / 2 * ||W||^2 (without the biases) to the average loss
+     */
+    public void setRegularization(double l2) {
+        if (l2 < 0)
+            throw new IllegalArgumentException("l2 must not be negative: " + l2);
+        this.l2 = l2;
+    }
+
+    /**
+     * Print the progress of the fits (on by default)
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Training using Batch Gradient Descent
+     */
+    public void trainModelWithBGD(Matrix X, int[] Y) {
+        int n = X.numRows();
+        MultiClass.checkLabels(Y, n, numClasses);
+        weights = new double[numClasses][numFeatures]; // zeros by default
+        double[][] gradient = new double[numClasses][numFeatures];
+        lossHistory = new double[numIterations];
+
+        TrainingEngine engine = prepareEngine(X, n);
+        for (int iter = 0; iter < numIterations; iter++) {
+            // one pass: every worker adds the gradient of all the classes for its blocks
+            for (int w = 0; w < numWorkers; w++)
+                for (double[] g : partialGradients[w])
+                    Arrays.fill(g, 0.0);
+            Arrays.fill(partialLosses, 0.0);
+            engine.run((worker, start, end) -> partialLosses[worker] += LogisticKernels
+                    .accumulateSoftmaxLossAndGradient(X, Y, weights, start, end, partialGradients[worker],
+                            scratch[worker]));
+
+            // accumulate partial results
+            double loss = 0.0;
+            for (int k = 0; k < numClasses; k++) {
+                Arrays.fill(gradient[k], 0.0);
+                for (int w = 0; w < numWorkers; w++) {
+                    double[] partialGradient = partialGradients[w][k];
+                    for (int j = 0; j < numFeatures; j++)
+                        gradient[k][j] += partialGradient[j];
+                }
+            }
+            for (int w = 0; w < numWorkers; w++)
+                loss += partialLosses[w];
+            loss += addPenalty(gradient, n);
+
+            for (int k = 0; k < numClasses; k++)
+                for (int j = 0; j < numFeatures; j++)
+                    weights[k][j] -= learningRate * gradient[k][j] / n;
+
+            lossHistory[iter] = loss / n;
+            if (verbose && (iter + 1) % 100 == 0)
+                System.out.println("Iteration " + (iter + 1) + ": loss = " + loss / n);
+        }
+    }
+
+    /* add the L2 penalty of n rows to the summed gradients, return it for the summed loss */
+    private double addPenalty(double[][] gradient, int n) {
+        if (l2 == 0.0)
+            return 0.0;
+        double squaredNorm = 0.0;
+        for (int k = 0; k < numClasses; k++) {
+            for (int j = 1; j < numFeatures; j++) {
+                gradient[k][j] += n * l2 * weights[k][j];
+                squaredNorm += weights[k][j] * weights[k][j];
+            }
+        }
+        return 0.5 * n * l2 * squaredNorm;
+    }
+
+    /* cut n rows of X into blocks for the persistent workers and size the per-worker buffers */
+    private TrainingEngine prepareEngine(Matrix X, int n) {
+        if (engine == null)
+            engine = new TrainingEngine(numWorkers);
+        int workers = (parallelism > 0) ? parallelism
+                : ParallelLogisticRegression.autoParallelism(X, n, numClasses, numWorkers);
+        engine.partitionBlocks(n, ParallelLogisticRegression.blockSize(X, n, workers), workers);
+        if (partialGradients == null || partialGradients[0][0].length != numFeatures) {
+            partialGradients = new double[numWorkers][numClasses][numFeatures];
+            partialLosses = new double[numWorkers];
+            scratch = new double[numWorkers][numClasses * LogisticKernels.BLOCK_SIZE];
+        }
+        return engine;
+    }
+
+    /**
+     * Probability of every class for one row
+     */
+    public double[] predictProbabilities(double[] x) {
+        double[] p = new double[numClasses];
+        double max = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < numClasses; k++) {
+            for (int j = 0; j < numFeatures; j++)
+                p[k] += weights[k][j] * x[j];
+            max = Math.max(max, p[k]);
+        }
+        double sum = 0.0;
+        for (int k = 0; k < numClasses; k++) {
+            p[k] = Math.exp(p[k] - max);
+            sum += p[k];
+        }
+        for (int k = 0; k < numClasses; k++)
+            p[k] /= sum;
+        return p;
+    }
+
+    /**
+     * Most likely class of every row of X, computed by the workers
+     */
+    public int[] predict(Matrix X) {
+        int n = X.numRows();
+        int[] predictedY = new int[n];
+        TrainingEngine engine = prepareEngine(X, n);
+        engine.run((worker, start, end) ->
+                LogisticKernels.classify(X, weights, start, end, predictedY, scratch[worker]));
+        return predictedY;
+    }
+
+    public void evaluateModel(int[] Y, int[] predictedY) {
+        MultiClass.evaluateModel(Y, predictedY, numClasses);
+    }
+
+    /**
+     * Average training cross-entropy of every iteration of the last fit
+     */
+    public double[] getLossHistory() {
+        return (lossHistory == null) ? new double[0] : lossHistory.clone();
+    }
+
+    public int getNumClasses() {
+        return numClasses;
+    }
+
+    /**
+     * Weights of class k
+     */
+    public double[] getWeights(int k) {
+        return weights[k].clone();
+    }
+
+    /**
+     * Stop the worker threads
+     */
+    @Override
+    public void close() {
+        if (engine != null) {
+            engine.close();
+            engine = null;
+        }
+    }
+}
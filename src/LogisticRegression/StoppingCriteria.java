@@ -0,0 +1,34 @@
+package LogisticRegression;
+
+/**
+ * When iterative training stops before numIterations.
+ * A criterion set to 0 is disabled.
+ */
+public class StoppingCriteria {
+
+    public static final StoppingCriteria NONE = new StoppingCriteria(0, 0, 0);
+
+    private final double gradientTolerance; // largest component of the average gradient
+    private final double lossTolerance; // relative change of the training loss between iterations
+    private final int patience; // iterations without improvement of the validation loss
+
+    public StoppingCriteria(double gradientTolerance, double lossTolerance, int patience) {
+        if (gradientTolerance < 0 || lossTolerance < 0 || patience < 0)
+            throw new IllegalArgumentException("Stopping criteria must not be negative");
+        this.gradientTolerance = gradientTolerance;
+        this.lossTolerance = lossTolerance;
+        this.patience = patience;
+    }
+
+    public double getGradientTolerance() {
+        return gradientTolerance;
+    }
+
+    public double getLossTolerance() {
+        return lossTolerance;
+    }
+
+    public int getPatience() {
+        return patience;
+    }
+}
@@ -0,0 +1,229 @@
+package LogisticRegression;
+
+import java.util.Arrays;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Long-lived pool of workers sharing the rows of every task.
+ * The threads are started once and reused for every epoch of every fit, so an
+ * iteration only costs a hand-off through a phaser instead of submitting new tasks.
+ * The calling thread takes part as worker 0.
+ * Rows are either pinned to one fixed range per worker (partition) or cut into blocks
+ * (partitionBlocks): every worker first takes the blocks of its own contiguous share,
+ * then steals the remaining blocks of the others, so a slow worker no longer sets the
+ * pace of the whole iteration. With a single active worker the task simply runs on
+ * the calling thread.
+ * An engine runs one task at a time: it is meant to be driven by a single trainer.
+ * Every run adds the compute time of each worker and the time it then waited for the
+ * others at the barrier to counters that trainers read for their metrics.
+ */
+public class TrainingEngine implements AutoCloseable {
+
+    /*
+     * work executed by the workers over ranges of rows. With blocks a worker may run several
+     * disjoint ranges per task, so results must be accumulated into per-worker buffers
+     */
+    public interface PartitionTask {
+        void run(int worker, int start, int end);
+    }
+
+    private final int numWorkers;
+    private final Phaser phaser;
+    private int[] bounds; // rows (blocks with partitionBlocks) of worker w are [bounds[w], bounds[w + 1])
+    private boolean blocks; // set by partitionBlocks, cleared by partition
+    private int numRows;
+    private int blockSize;
+    private int activeWorkers; // workers taking part in the task, the others stay idle
+    private final AtomicInteger[] nextBlock; // next unclaimed block of the share of every worker
+    private PartitionTask task;
+    private volatile Throwable failure;
+    private volatile boolean closed;
+    private final long[] workerThreadIds; // threads of workers 1..numWorkers-1
+    private final long[] computeNanos; // per worker, since resetStatistics
+    private final long[] waitNanos;
+    private final long[] finishTimes; // end of the current task of every worker
+
+    public TrainingEngine(int numWorkers) {
+        if (numWorkers < 1)
+            throw new IllegalArgumentException("numWorkers must be positive: " + numWorkers);
+        this.numWorkers = numWorkers;
+        this.phaser = new Phaser(numWorkers);
+        this.bounds = new int[numWorkers + 1];
+        this.workerThreadIds = new long[numWorkers - 1];
+        this.computeNanos = new long[numWorkers];
+        this.waitNanos = new long[numWorkers];
+        this.finishTimes = new long[numWorkers];
+        this.nextBlock = new AtomicInteger[numWorkers];
+        for (int w = 0; w < numWorkers; w++)
+            nextBlock[w] = new AtomicInteger();
+        this.activeWorkers = numWorkers;
+
+        for (int w = 1; w < numWorkers; w++) {
+            final int worker = w;
+            Thread thread = new Thread(() -> workerLoop(worker), "lr-worker-" + w);
+            thread.setDaemon(true);
+            workerThreadIds[w - 1] = thread.getId();
+            thread.start();
+        }
+    }
+
+    public int getNumWorkers() {
+        return numWorkers;
+    }
+
+    /**
+     * Split n rows into numWorkers contiguous partitions
+     */
+    public void partition(int n) {
+        int chunkSize = (int) Math.ceil((double) n / numWorkers);
+        for (int w = 0; w <= numWorkers; w++)
+            bounds[w] = Math.min(w * chunkSize, n);
+        blocks = false;
+        activeWorkers = numWorkers;
+    }
+
+    /**
+     * Cut n rows into blocks of blockSize rows, shared by the first activeWorkers workers
+     * with work stealing
+     */
+    public void partitionBlocks(int n, int blockSize, int activeWorkers) {
+        if (blockSize < 1 || activeWorkers < 1 || activeWorkers > numWorkers)
+            throw new IllegalArgumentException("Invalid block partition: " + blockSize + " rows, "
+                    + activeWorkers + " of " + numWorkers + " workers");
+        int numBlocks = (int) ((n + (long) blockSize - 1) / blockSize);
+        for (int w = 0; w <= numWorkers; w++)
+            bounds[w] = (int) ((long) numBlocks * Math.min(w, activeWorkers) / activeWorkers);
+        this.numRows = n;
+        this.blockSize = blockSize;
+        this.activeWorkers = activeWorkers;
+        blocks = true;
+    }
+
+    /**
+     * Number of workers taking part in the next runs
+     */
+    public int getActiveWorkers() {
+        return activeWorkers;
+    }
+
+    /**
+     * Run the task on every partition and wait until all workers are done
+     */
+    public void run(PartitionTask task) {
+        if (closed)
+            throw new IllegalStateException("Training engine is closed");
+        this.task = task;
+        failure = null;
+        if (blocks) {
+            for (int w = 0; w < numWorkers; w++)
+                nextBlock[w].set(bounds[w]);
+            if (activeWorkers == 1) {
+                // not worth a hand-off: run every block on the calling thread
+                execute(0);
+                rethrowFailure();
+                return;
+            }
+        }
+
+        phaser.arriveAndAwaitAdvance(); // release the workers
+        execute(0);
+        phaser.arriveAndAwaitAdvance(); // wait for all partitions
+        long done = System.nanoTime();
+        for (int w = 0; w < numWorkers; w++)
+            waitNanos[w] += done - finishTimes[w];
+        rethrowFailure();
+    }
+
+    private void rethrowFailure() {
+        Throwable t = failure;
+        if (t != null)
+            throw new RuntimeException("Training worker failed", t);
+    }
+
+    private void workerLoop(int worker) {
+        while (true) {
+            phaser.arriveAndAwaitAdvance(); // wait for work
+            if (closed) {
+                phaser.arriveAndDeregister();
+                return;
+            }
+            execute(worker);
+            phaser.arriveAndAwaitAdvance(); // work done
+        }
+    }
+
+    private void execute(int worker) {
+        long start = System.nanoTime();
+        try {
+            if (blocks)
+                runBlocks(worker);
+            else
+                task.run(worker, bounds[worker], bounds[worker + 1]);
+        } catch (Throwable t) {
+            failure = t;
+        }
+        long end = System.nanoTime();
+        computeNanos[worker] += end - start;
+        finishTimes[worker] = end;
+    }
+
+    /* claim the blocks of the own share first, then steal from the other active workers */
+    private void runBlocks(int worker) {
+        if (worker >= activeWorkers)
+            return;
+        for (int k = 0; k < activeWorkers; k++) {
+            int victim = (worker + k) % activeWorkers;
+            AtomicInteger cursor = nextBlock[victim];
+            int last = bounds[victim + 1];
+            if (cursor.get() >= last)
+                continue;
+            int block;
+            while ((block = cursor.getAndIncrement()) < last) {
+                int start = block * blockSize;
+                task.run(worker, start, Math.min(start + blockSize, numRows));
+            }
+        }
+    }
+
+    /**
+     * Clear the compute and wait counters
+     */
+    public void resetStatistics() {
+        Arrays.fill(computeNanos, 0);
+        Arrays.fill(waitNanos, 0);
+    }
+
+    /**
+     * Time every worker spent running tasks since resetStatistics
+     */
+    public long[] getComputeNanos() {
+        return computeNanos.clone();
+    }
+
+    /**
+     * Time every worker spent at the barrier waiting for slower partitions since resetStatistics
+     */
+    public long[] getWaitNanos() {
+        return waitNanos.clone();
+    }
+
+    /**
+     * Ids of the engine's own threads (worker 0 is the calling thread)
+     */
+    public long[] getWorkerThreadIds() {
+        return workerThreadIds.clone();
+    }
+
+    /**
+     * Stop the worker threads
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        task = null;
+        phaser.arriveAndDeregister(); // wake the workers so they can exit
+    }
+}
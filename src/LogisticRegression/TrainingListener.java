@@ -0,0 +1,16 @@
+package LogisticRegression;
+
+/**
+ * Receives the measurements of a fit, on the training thread: implementations
+ * should return quickly, since their time is part of the iteration.
+ */
+public interface TrainingListener {
+
+    default void fitStarted(String method, int numRows, int numWorkers) {
+    }
+
+    void iterationCompleted(IterationMetrics metrics);
+
+    default void fitFinished(int iterations) {
+    }
+}
@@ -0,0 +1,12 @@
+package LogisticRegression;
+
+/**
+ * Objective that also provides its Hessian, required by the second-order solvers (NewtonSolver)
+ */
+interface TwiceDifferentiable extends Objective {
+
+    /**
+     * Write the full (symmetric) Hessian at w into hessian, row-major d x d
+     */
+    void hessian(double[] w, double[] hessian);
+}
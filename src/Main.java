@@ -1,6 +1,11 @@
 import LogisticRegression.*;
 import Utils.DataSet;
+import Utils.Matrix;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
 
 public class Main {
@@ -8,14 +13,29 @@ public class Main {
     static int numIterations = 500;
     static double threshold = 0.5; // Threshold for classification
     static double testSize = 0.2; // Portion of the test subset
+    static int batchSize = 32; // Rows per update in the SGD modes
+    static double tolerance = 1e-6; // Convergence tolerance of L-BFGS and IRLS
+    static Matrix.Precision precision = Matrix.Precision.valueOf(
+            System.getProperty("lr.precision", "double").toUpperCase()); // storage of the features in memory
+    static double l1 = 0.0; // L1 regularization of Batch Gradient Descent and coordinate descent
+    static double l2 = 0.0; // L2 regularization of Batch Gradient Descent and coordinate descent
 
     static DataSet ds;
-    static double[][] XTrain;
+    static Matrix XTrain;
     static int[] YTrain;
-    static double[][] XTest;
+    static Matrix XTest;
     static int[] YTest;
 
     static final int NUM_EVAL_RUNS = 3;
+    static final int LBFGS_MEMORY = 10; // curvature pairs kept by L-BFGS
+    static final int NUM_FOLDS = 5; // folds of the cross-validated grid search
+    static final double ELASTIC_NET_ALPHA = 0.5; // share of L1 in the penalties of the regularization path
+    static final int PATH_LENGTH = 20; // penalties of the regularization path
+    static final double PATH_MIN_RATIO = 1e-3; // smallest penalty of the path, relative to the largest
+    static final double PATH_VALIDATION_SIZE = 0.2; // portion of the training set that picks the penalty of the path
+    static final String BINARY_EXTENSION = ".bin"; // suffix of the binary copy of the input file
+    static final String MODEL_EXTENSION = ".model"; // suffix of the model the parallel BGD can save and resume from
+    static String modelFile;
     static Scanner in;
 
     public static void main(String[] args) {
@@ -47,6 +67,13 @@ public class Main {
             System.out.println("3. Evaluate Parallel Performance");
             System.out.println("4. Find best dataset size for parallelism");
             System.out.println("5. Set hyper-parameters");
+            System.out.println("6. Train model with Mini-batch SGD");
+            System.out.println("7. Train model with Hogwild (asynchronous parallel SGD)");
+            System.out.println("8. Train model with L-BFGS");
+            System.out.println("9. Train model with Newton / IRLS");
+            System.out.println("g. Tune hyper-parameters with cross-validated grid search");
+            System.out.println("m. Train multi-class models (one-vs-rest and softmax)");
+            System.out.println("e. Train elastic-net models with coordinate descent (regularization path)");
             System.out.println("q. Quit");
 
             System.out.print("> ");
@@ -69,6 +96,30 @@ public class Main {
                 case '5':
                     setHyperparameters();
                     break;
+                case '6':
+                    trainWithMiniBatchSGD();
+                    break;
+                case '7':
+                    trainWithHogwild();
+                    break;
+                case '8':
+                    trainWithSecondOrderSolver(false);
+                    break;
+                case '9':
+                    trainWithSecondOrderSolver(true);
+                    break;
+                case 'g':
+                case 'G':
+                    tuneHyperparameters();
+                    break;
+                case 'm':
+                case 'M':
+                    trainMultiClass();
+                    break;
+                case 'e':
+                case 'E':
+                    trainWithCoordinateDescent();
+                    break;
                 case 'q':
                 case 'Q':
                     break;
@@ -81,16 +132,41 @@ public class Main {
     }
 
     static void loadDataset(String inputFile) {
-        // Read csv file
-        System.out.print("Loading dataset...");
         ds = new DataSet();
-        ds.readDataSet(inputFile);
-        System.out.println(" DONE");
+        File csvFile = new File(inputFile);
+        File binaryFile = new File(inputFile + BINARY_EXTENSION);
+        modelFile = inputFile + MODEL_EXTENSION;
+
+        if (binaryFile.exists() && binaryFile.lastModified() >= csvFile.lastModified()) {
+            // Reuse the binary copy saved by a previous run
+            System.out.print("Loading binary dataset " + binaryFile.getName() + "...");
+            ds.loadBinary(binaryFile.getPath());
+            System.out.println(" DONE");
+        } else {
+            // Read csv file
+            System.out.print("Loading dataset...");
+            ds.readDataSet(inputFile);
+            System.out.println(" DONE");
+        }
 
-        // Scale predictor variables
-        System.out.print("Scaling data...");
-        ds.normalize();
-        System.out.println(" DONE");
+        if (!ds.isNormalized()) {
+            // Scale predictor variables
+            System.out.print("Scaling data...");
+            ds.normalize();
+            System.out.println(" DONE");
+
+            // Save a binary copy so the next run can skip parsing and scaling
+            System.out.print("Saving binary dataset " + binaryFile.getName() + "...");
+            ds.saveBinary(binaryFile.getPath());
+            System.out.println(" DONE");
+        }
+
+        // Smaller features: less memory traffic per epoch
+        if (precision != Matrix.Precision.DOUBLE) {
+            System.out.print("Converting features to " + precision + "...");
+            ds.convertStorage(precision);
+            System.out.println(" DONE");
+        }
 
         // Split data into training and test sets
         System.out.print("Splitting data into training and test sets...");
@@ -110,11 +186,12 @@ public class Main {
     static void trainWithSequentialVersion() {
         // Create instance of the sequential logistic regression
         SequentialLogisticRegression seqLogistic = new SequentialLogisticRegression(
-                XTrain[0].length, learningRate, numIterations, threshold
+                XTrain.numCols(), learningRate, numIterations, threshold
         );
 
         // Train model
         System.out.println("\nTraining model with Batch Gradient Descent");
+        seqLogistic.setRegularization(l1, l2);
         seqLogistic.trainModelWithBGD(XTrain, YTrain);
         System.out.println("Training DONE\n");
 
@@ -129,12 +206,84 @@ public class Main {
     static void trainWithParallelVersion() {
         // Create instance of the parallel logistic regression
         ParallelLogisticRegression parLogistic = new ParallelLogisticRegression(
-                XTrain[0].length, learningRate, numIterations, threshold
+                XTrain.numCols(), learningRate, numIterations, threshold
         );
 
+        // Warm start from the model saved by a previous run, only when asked
+        if (new File(modelFile).exists() && confirm("\nWarm start from the model saved in " + modelFile + "?")) {
+            try {
+                LogisticModel model = LogisticModel.load(modelFile);
+                if (model.numFeatures() == XTrain.numCols()) {
+                    parLogistic.setInitialWeights(model.getWeights());
+                    System.out.println("\nWarm start from " + modelFile);
+                }
+            } catch (IOException e) {
+                System.out.println("\nIgnoring saved model: " + e.getMessage());
+            }
+        }
+
         // Train model
         System.out.println("\nTraining model with Batch Gradient Descent");
+        MetricsRecorder metrics = new MetricsRecorder();
+        parLogistic.setListener(metrics);
+        parLogistic.setRegularization(l1, l2);
         parLogistic.trainModelWithBGD(XTrain, YTrain);
+        System.out.println("Training DONE");
+        metrics.printSummary();
+        System.out.println();
+
+        // Print model weights
+        parLogistic.printModel();
+
+        // Save the model for the next run, only when asked
+        if (confirm("\nSave the model to " + modelFile + "?")) {
+            try {
+                parLogistic.toModel(ds.getVarNames(), ds.getScaler()).save(modelFile);
+                System.out.println("Model saved to " + modelFile);
+            } catch (IOException e) {
+                System.out.println("Could not save the model: " + e.getMessage());
+            }
+        }
+
+        // Compute errors
+        double[] predictedY = parLogistic.scoreData(XTest);
+        parLogistic.evaluateModel(YTest, predictedY);
+        parLogistic.close();
+    }
+
+    /* yes/no question answered on its own line, no by default */
+    static boolean confirm(String question) {
+        System.out.print(question + " (y/N): ");
+        String answer = in.nextLine().trim();
+        return answer.equalsIgnoreCase("y") || answer.equalsIgnoreCase("yes");
+    }
+
+    static void trainWithMiniBatchSGD() {
+        SequentialLogisticRegression seqLogistic = new SequentialLogisticRegression(
+                XTrain.numCols(), learningRate, numIterations, threshold
+        );
+
+        // Train model
+        System.out.println("\nTraining model with Mini-batch SGD (batch size " + batchSize + ")");
+        seqLogistic.trainModelWithMiniBatchSGD(XTrain, YTrain, batchSize, true);
+        System.out.println("Training DONE\n");
+
+        // Print model weights
+        seqLogistic.printModel();
+
+        // Compute errors
+        double[] predictedY = seqLogistic.scoreData(XTest);
+        seqLogistic.evaluateModel(YTest, predictedY);
+    }
+
+    static void trainWithHogwild() {
+        ParallelLogisticRegression parLogistic = new ParallelLogisticRegression(
+                XTrain.numCols(), learningRate, numIterations, threshold
+        );
+
+        // Train model
+        System.out.println("\nTraining model with Hogwild SGD (batch size " + batchSize + ")");
+        parLogistic.trainModelWithHogwild(XTrain, YTrain, batchSize, ParallelLogisticRegression.WeightUpdate.ATOMIC);
         System.out.println("Training DONE\n");
 
         // Print model weights
@@ -143,13 +292,118 @@ public class Main {
         // Compute errors
         double[] predictedY = parLogistic.scoreData(XTest);
         parLogistic.evaluateModel(YTest, predictedY);
+        parLogistic.close();
+    }
+
+    static void trainWithSecondOrderSolver(boolean newton) {
+        ParallelLogisticRegression parLogistic = new ParallelLogisticRegression(
+                XTrain.numCols(), learningRate, numIterations, threshold
+        );
+
+        // Train model
+        if (newton) {
+            System.out.println("\nTraining model with Newton / IRLS");
+            parLogistic.trainModelWithIRLS(XTrain, YTrain, tolerance);
+        } else {
+            System.out.println("\nTraining model with L-BFGS");
+            parLogistic.trainModelWithLBFGS(XTrain, YTrain, LBFGS_MEMORY, tolerance);
+        }
+        System.out.println("Training DONE\n");
+
+        // Print model weights
+        parLogistic.printModel();
+
+        // Compute errors
+        double[] predictedY = parLogistic.scoreData(XTest);
+        parLogistic.evaluateModel(YTest, predictedY);
+        parLogistic.close();
+    }
+
+    static void trainWithCoordinateDescent() {
+        ParallelLogisticRegression parLogistic = new ParallelLogisticRegression(
+                XTrain.numCols(), learningRate, numIterations, threshold
+        );
+
+        // Hold out part of the training set to pick the penalty: the test set is only used at the end
+        int numValidation = (int) (XTrain.numRows() * PATH_VALIDATION_SIZE);
+        Matrix XValidation = XTrain.rowRange(0, numValidation);
+        int[] YValidation = Arrays.copyOfRange(YTrain, 0, numValidation);
+        Matrix XFit = XTrain.rowRange(numValidation, XTrain.numRows());
+        int[] YFit = Arrays.copyOfRange(YTrain, numValidation, YTrain.length);
+
+        // Fit the whole path, every penalty warm-started from the previous one
+        System.out.println("\nTraining elastic-net path with coordinate descent (alpha = " + ELASTIC_NET_ALPHA + ") on "
+                + XFit.numRows() + " rows, " + numValidation + " held out for validation");
+        long start = System.currentTimeMillis();
+        RegularizationPath path = parLogistic.trainRegularizationPath(XFit, YFit, ELASTIC_NET_ALPHA, PATH_LENGTH,
+                PATH_MIN_RATIO, ParallelLogisticRegression.CoordinateOrder.CYCLIC, tolerance);
+        System.out.println("Path DONE in " + (System.currentTimeMillis() - start) + " ms\n");
+
+        // Pick the penalty with the lowest validation log-loss
+        ModelEvaluator evaluator = new ModelEvaluator();
+        int best = 0;
+        double bestLoss = Double.POSITIVE_INFINITY;
+        for (int k = 0; k < path.size(); k++) {
+            double[] predictedY = new LogisticScorer(path.getWeights(k), threshold).scoreAll(XValidation);
+            double validationLoss = evaluator.evaluate(YValidation, predictedY).getLogLoss();
+            System.out.printf("lambda=%.6g non-zero=%d train loss=%.4f validation loss=%.4f%n", path.getLambda(k),
+                    path.getNumNonZeros(k), path.getLoss(k), validationLoss);
+            if (validationLoss < bestLoss) {
+                bestLoss = validationLoss;
+                best = k;
+            }
+        }
+
+        // Refit at the chosen penalty on the whole training set
+        System.out.println("\nBest penalty: lambda = " + path.getLambda(best));
+        parLogistic.setInitialWeights(path.getWeights(best));
+        parLogistic.setRegularization(path.getL1(best), path.getL2(best));
+        parLogistic.trainModelWithCoordinateDescent(XTrain, YTrain, ParallelLogisticRegression.CoordinateOrder.CYCLIC,
+                tolerance);
+        System.out.println("Training DONE\n");
+
+        // Print model weights
+        parLogistic.printModel();
+
+        // Compute errors
+        double[] predictedY = parLogistic.scoreData(XTest);
+        parLogistic.evaluateModel(YTest, predictedY);
+        parLogistic.close();
+    }
+
+    static void trainMultiClass() {
+        int numClasses = Math.max(2, Math.max(MultiClass.numClasses(YTrain), MultiClass.numClasses(YTest)));
+        System.out.println("\n" + numClasses + " classes");
+
+        // Train one binary model per class, concurrently
+        System.out.println("\nTraining one-vs-rest models with Batch Gradient Descent");
+        OneVsRestLogisticRegression oneVsRest = new OneVsRestLogisticRegression(
+                XTrain.numCols(), numClasses, learningRate, numIterations
+        );
+        oneVsRest.setRegularization(l2);
+        long start = System.currentTimeMillis();
+        oneVsRest.trainModelWithBGD(XTrain, YTrain);
+        System.out.println("Training DONE in " + (System.currentTimeMillis() - start) + " ms");
+        oneVsRest.evaluateModel(YTest, oneVsRest.predict(XTest));
+
+        // Train the multinomial model, all classes in each pass
+        System.out.println("\nTraining softmax model with Batch Gradient Descent");
+        try (SoftmaxRegression softmax = new SoftmaxRegression(
+                XTrain.numCols(), numClasses, learningRate, numIterations
+        )) {
+            softmax.setRegularization(l2);
+            start = System.currentTimeMillis();
+            softmax.trainModelWithBGD(XTrain, YTrain);
+            System.out.println("Training DONE in " + (System.currentTimeMillis() - start) + " ms");
+            softmax.evaluateModel(YTest, softmax.predict(XTest));
+        }
     }
 
     static void evaluateParallelPerformance() {
         System.out.println("\nEvaluating Sequential Implementation...");
         // Create instance of the sequential logistic regression
         SequentialLogisticRegression seqLogistic = new SequentialLogisticRegression(
-                XTrain[0].length, learningRate, numIterations, threshold
+                XTrain.numCols(), learningRate, numIterations, threshold
         );
 
         double sequentialTime = 0;
@@ -167,7 +421,7 @@ public class Main {
         System.out.println("\nEvaluating Parallel Implementation...");
         // Create instance of the sequential logistic regression
         ParallelLogisticRegression parLogistic = new ParallelLogisticRegression(
-                XTrain[0].length, learningRate, numIterations, threshold
+                XTrain.numCols(), learningRate, numIterations, threshold
         );
 
         double parallelTime = 0;
@@ -188,6 +442,7 @@ public class Main {
         // Compute errors
         double[] predictedY = parLogistic.scoreData(XTest);
         parLogistic.evaluateModel(YTest, predictedY);
+        parLogistic.close();
 
         double speedup = sequentialTime / parallelTime;
         int numProcessors = Runtime.getRuntime().availableProcessors();
@@ -210,6 +465,36 @@ public class Main {
         numIterations = in.nextInt();
         System.out.print("threshold (" + threshold + "): ");
         threshold = in.nextDouble();
+        System.out.print("L1 regularization (" + l1 + "): ");
+        l1 = in.nextDouble();
+        System.out.print("L2 regularization (" + l2 + "): ");
+        l2 = in.nextDouble();
+    }
+
+    static void tuneHyperparameters() {
+        // Grid around the current hyper-parameters
+        GridSearch grid = new GridSearch(
+                new double[]{learningRate / 10, learningRate, learningRate * 10},
+                new int[]{numIterations / 5, numIterations, numIterations * 2},
+                new double[]{0.3, 0.4, 0.5, 0.6, 0.7},
+                new double[]{0.0, 1e-3, 1e-2}
+        );
+
+        System.out.println("\nCross-validating the grid with " + NUM_FOLDS + " folds...");
+        long start = System.currentTimeMillis();
+        List<GridSearch.Result> results = grid.search(XTrain, YTrain, NUM_FOLDS);
+        System.out.println("DONE in " + (System.currentTimeMillis() - start) + " ms\n");
+
+        System.out.println("Best configurations:");
+        for (int i = 0; i < Math.min(5, results.size()); i++)
+            System.out.println((i + 1) + ". " + results.get(i));
+
+        GridSearch.Result best = results.get(0);
+        learningRate = best.learningRate;
+        numIterations = best.numIterations;
+        threshold = best.threshold;
+        l2 = best.l2;
+        System.out.println("\nHyper-parameters set to the best configuration");
     }
 
     static void findOptimalDatasetSizeForParallelism() {
@@ -224,7 +509,7 @@ public class Main {
             System.out.println("\n\nEvaluating dataset with " + n + " observations...");
             DataSet myDs = new DataSet();
             myDs.generateDataset(n, nFeatures);
-            double[][] X = myDs.getX();
+            Matrix X = myDs.getX();
             int[] Y = myDs.getY();
 
             // Create instance of the sequential logistic regression
@@ -252,6 +537,8 @@ public class Main {
                 parallelTime += System.currentTimeMillis() - start;
             }
             parallelTime /= numRuns;
+            int workers = parLogistic.parallelismFor(X, n);
+            parLogistic.close();
 
             speedup = sequentialTime / parallelTime;
             int numProcessors = Runtime.getRuntime().availableProcessors();
@@ -263,6 +550,7 @@ public class Main {
             System.out.format("Average Parallel Time: %.1f ms\n", parallelTime);
             System.out.format("Speedup: %.2f \n", speedup);
             System.out.format("Efficiency: %.2f%%\n", efficiency);
+            System.out.println("Workers picked by the parallel trainer: " + workers);
 
             if (speedup > 1.0) {
                 System.out.println("\nApproximate optimal dataset size for parallelism: " + n);
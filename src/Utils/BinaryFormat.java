@@ -0,0 +1,216 @@
+package Utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Compact columnar file for a DataSet.
+ * Layout (little-endian):
+ * header: magic, version, rows, columns, flags, variable names, statistics row count, scaler type,
+ * then per column min, max, mean, variance, scaler offset and scale
+ * then, each one starting on a 64-byte boundary: the labels (int32) and every feature column (float64).
+ * Loading maps the file and wraps the columns without copying them (copy-on-write mapping
+ * when the file can be opened for writing, so the data can still be modified in memory;
+ * the file itself is never changed).
+ */
+class BinaryFormat {
+
+    static final int MAGIC = 0x5344524c; // "LRDS"
+    static final int VERSION = 2;
+    static final int FLAG_NORMALIZED = 1;
+
+    private static final int ALIGNMENT = 64;
+    private static final long MAX_MAPPING = 1L << 30;
+
+    // content of a loaded file
+    String[] varNames;
+    Matrix X;
+    int[] Y;
+    IntBuffer labels; // mapped labels, when they are not copied into Y
+    ColumnStatistics statistics; // of the raw features, null if unknown
+    Scaler scaler; // applied to X, null if not normalized
+    boolean normalized;
+    boolean writable; // false when the columns are mapped read-only
+
+    void write(String fileName) throws IOException {
+        if (X.isSparse())
+            throw new UnsupportedOperationException("The binary format stores dense columns, not sparse rows");
+        int n = X.numRows();
+        int d = X.numCols();
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            long position = 0;
+
+            // header
+            buf.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(d).putInt(normalized ? FLAG_NORMALIZED : 0);
+            buf.putInt(varNames.length);
+            for (String name : varNames) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                position = ensure(channel, buf, position, 4 + bytes.length);
+                buf.putInt(bytes.length).put(bytes);
+            }
+            position = ensure(channel, buf, position, 12);
+            buf.putLong(statistics == null ? 0 : statistics.getCount());
+            buf.putInt(scaler == null ? -1 : scaler.getType().ordinal());
+            double[] offsets = (scaler == null) ? null : scaler.getOffsets();
+            double[] scales = (scaler == null) ? null : scaler.getScales();
+            for (int j = 0; j < d; j++) {
+                position = ensure(channel, buf, position, 48);
+                buf.putDouble(statistics == null ? 0.0 : statistics.getMin(j));
+                buf.putDouble(statistics == null ? 0.0 : statistics.getMax(j));
+                buf.putDouble(statistics == null || statistics.getCount() == 0 ? 0.0 : statistics.getMean(j));
+                buf.putDouble(statistics == null || statistics.getCount() == 0 ? 0.0 : statistics.getVariance(j));
+                buf.putDouble(scaler == null ? 0.0 : offsets[j]);
+                buf.putDouble(scaler == null ? 1.0 : scales[j]);
+            }
+            position = pad(channel, buf, position);
+
+            // labels
+            for (int i = 0; i < n; i++) {
+                position = ensure(channel, buf, position, 4);
+                buf.putInt(Y[i]);
+            }
+            position = pad(channel, buf, position);
+
+            // feature columns
+            for (int j = 0; j < d; j++) {
+                for (int i = 0; i < n; i++) {
+                    position = ensure(channel, buf, position, 8);
+                    buf.putDouble(X.get(i, j));
+                }
+                position = pad(channel, buf, position);
+            }
+            flush(channel, buf, position);
+        }
+    }
+
+    void read(String fileName, boolean copyLabels) throws IOException {
+        try (FileChannel channel = openForMapping(Path.of(fileName))) {
+            FileChannel.MapMode columnMode = writable ? FileChannel.MapMode.PRIVATE : FileChannel.MapMode.READ_ONLY;
+            long size = channel.size();
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, MAX_MAPPING))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt() != MAGIC)
+                throw new IOException("Not a binary dataset file: " + fileName);
+            int version = header.getInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported binary dataset version " + version + " in " + fileName);
+            int n = header.getInt();
+            int d = header.getInt();
+            normalized = (header.getInt() & FLAG_NORMALIZED) != 0;
+
+            varNames = new String[header.getInt()];
+            for (int k = 0; k < varNames.length; k++) {
+                byte[] bytes = new byte[header.getInt()];
+                header.get(bytes);
+                varNames[k] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            readStatistics(header, d);
+            long position = align(header.position());
+
+            // labels are small, they are usually copied into an int[] for the trainers
+            labels = channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * n)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            if (copyLabels) {
+                Y = new int[n];
+                labels.get(0, Y);
+                labels = null;
+            }
+            position = align(position + 4L * n);
+
+            // feature columns are used in place, each one in a single buffer (at most 2 GB)
+            long columnBytes = 8L * n;
+            if (columnBytes > Integer.MAX_VALUE)
+                throw new IOException("Columns of " + n + " rows do not fit in a single buffer (at most "
+                        + Integer.MAX_VALUE / 8 + " rows): " + fileName);
+            long columnSize = align(columnBytes);
+            if (position + columnSize * d > size)
+                throw new IOException("Truncated binary dataset file: " + fileName);
+            DoubleBuffer[] columns = new DoubleBuffer[d];
+            MappedByteBuffer segment = null;
+            long segmentStart = 0;
+            for (int j = 0; j < d; j++) {
+                long start = position + columnSize * j;
+                if (segment == null || start + columnBytes > segmentStart + segment.capacity()) {
+                    segmentStart = start;
+                    long length = Math.min(size - start, Math.max(columnBytes, MAX_MAPPING / columnSize * columnSize));
+                    segment = channel.map(columnMode, segmentStart, length);
+                }
+                int from = (int) (start - segmentStart);
+                columns[j] = segment.slice(from, (int) columnBytes).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            }
+            X = new BufferMatrix(columns, n);
+        }
+    }
+
+    private void readStatistics(ByteBuffer header, int d) {
+        long count = header.getLong();
+        int type = header.getInt();
+        double[] minValues = new double[d];
+        double[] maxValues = new double[d];
+        double[] means = new double[d];
+        double[] variances = new double[d];
+        double[] offsets = new double[d];
+        double[] scales = new double[d];
+        for (int j = 0; j < d; j++) {
+            minValues[j] = header.getDouble();
+            maxValues[j] = header.getDouble();
+            means[j] = header.getDouble();
+            variances[j] = header.getDouble();
+            offsets[j] = header.getDouble();
+            scales[j] = header.getDouble();
+        }
+        statistics = normalized ? ColumnStatistics.of(count, minValues, maxValues, means, variances) : null;
+        scaler = (normalized && type >= 0) ? new Scaler(Scaler.Type.values()[type], offsets, scales) : null;
+    }
+
+    /* copy-on-write mappings need a channel open for writing, read-only files get a read-only mapping */
+    private FileChannel openForMapping(Path path) throws IOException {
+        try {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            writable = true;
+            return channel;
+        } catch (IOException | SecurityException e) {
+            writable = false;
+            return FileChannel.open(path, StandardOpenOption.READ);
+        }
+    }
+
+    private static long align(long position) {
+        return (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /* make room for the next value, writing the buffer out when full */
+    private static long ensure(FileChannel channel, ByteBuffer buf, long position, int bytes) throws IOException {
+        if (buf.remaining() >= bytes)
+            return position;
+        return flush(channel, buf, position);
+    }
+
+    private static long flush(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining())
+            position += channel.write(buf, position);
+        buf.clear();
+        return position;
+    }
+
+    private static long pad(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        long end = position + buf.position();
+        long aligned = align(end);
+        for (long p = end; p < aligned; p++) {
+            position = ensure(channel, buf, position, 1);
+            buf.put((byte) 0);
+        }
+        return position;
+    }
+}
@@ -0,0 +1,71 @@
+package Utils;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+/**
+ * Column-major matrix over DoubleBuffers, one per column.
+ * Used to work directly on memory-mapped files without copying them to the heap.
+ */
+public class BufferMatrix extends Matrix {
+
+    private final DoubleBuffer[] columns;
+
+    public BufferMatrix(DoubleBuffer[] columns, int numRows) {
+        this(columns, numRows, 0);
+    }
+
+    private BufferMatrix(DoubleBuffer[] columns, int numRows, int offset) {
+        super(numRows, columns.length, offset, 1, 0, Layout.COLUMN_MAJOR);
+        this.columns = columns;
+    }
+
+    @Override
+    public Precision getPrecision() {
+        return Precision.DOUBLE;
+    }
+
+    @Override
+    public double get(int i, int j) {
+        return columns[j].get(offset + i);
+    }
+
+    @Override
+    public void set(int i, int j, double value) {
+        columns[j].put(offset + i, value);
+    }
+
+    @Override
+    public double dotRow(int i, double[] w) {
+        int row = offset + i;
+        double z = 0.0;
+        for (int j = 0; j < numCols; j++)
+            z += columns[j].get(row) * w[j];
+        return z;
+    }
+
+    /* walk the block column by column, so every column is read sequentially */
+    @Override
+    public void dotRows(int from, int to, double[] w, double[] out, int outOffset) {
+        Arrays.fill(out, outOffset, outOffset + to - from, 0.0);
+        for (int j = 0; j < numCols; j++) {
+            DoubleBuffer column = columns[j];
+            double wj = w[j];
+            for (int i = from; i < to; i++)
+                out[outOffset + i - from] += column.get(offset + i) * wj;
+        }
+    }
+
+    @Override
+    public void addScaledRow(int i, double alpha, double[] acc) {
+        int row = offset + i;
+        for (int j = 0; j < numCols; j++)
+            acc[j] += alpha * columns[j].get(row);
+    }
+
+    @Override
+    public Matrix rowRange(int from, int to) {
+        checkRange(from, to);
+        return view(new BufferMatrix(columns, to - from, offset + from));
+    }
+}
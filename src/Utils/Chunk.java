@@ -0,0 +1,50 @@
+package Utils;
+
+/**
+ * A block of consecutive rows read from a ChunkSource.
+ * The buffers are allocated once and refilled by every read.
+ */
+public class Chunk {
+    private final Matrix buffer; // storage owned by the chunk
+    private final int[] labels;
+    private Matrix X; // rows of the current chunk (a view, possibly not over buffer)
+    private int size;
+
+    public Chunk(int capacity, int numCols) {
+        buffer = Matrix.allocate(capacity, numCols);
+        labels = new int[capacity];
+        X = buffer.rowRange(0, 0);
+    }
+
+    public int capacity() {
+        return labels.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Matrix getX() {
+        return X;
+    }
+
+    public int[] getY() {
+        return labels; // only the first size() labels are valid
+    }
+
+    Matrix buffer() {
+        return buffer;
+    }
+
+    /* rows [0, size) of the chunk buffer are the data */
+    void fill(int size) {
+        this.size = size;
+        this.X = buffer.rowRange(0, size);
+    }
+
+    /* the data lives elsewhere (e.g. a mapped file), labels were copied into the chunk */
+    void wrap(Matrix rows) {
+        this.size = rows.numRows();
+        this.X = rows;
+    }
+}
@@ -0,0 +1,79 @@
+package Utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Sequential reader of a dataset too large for the heap: rows are delivered in
+ * chunks of fixed capacity, so memory use does not depend on the file size.
+ * Chunks can be scaled on the fly with a scaler given by setScaler (e.g. the one
+ * fitted by DataSet.normalize) or fitted in one streaming pass by fitNormalization.
+ */
+public abstract class ChunkSource implements Closeable {
+
+    private Scaler scaler;
+
+    public abstract int numCols();
+
+    /**
+     * Read the next rows into chunk. Returns false when there is no more data.
+     */
+    public boolean next(Chunk chunk) throws IOException {
+        if (!read(chunk))
+            return false;
+        if (scaler != null)
+            scaler.transform(chunk.getX());
+        return true;
+    }
+
+    /**
+     * Go back to the first row (start of a new epoch)
+     */
+    public abstract void rewind() throws IOException;
+
+    protected abstract boolean read(Chunk chunk) throws IOException;
+
+    /**
+     * Min-max scaling with the given range
+     */
+    public void setNormalization(double[] minValues, double[] maxValues) {
+        setScaler(Scaler.fit(ColumnStatistics.ofRange(minValues, maxValues), Scaler.Type.MIN_MAX));
+    }
+
+    /**
+     * Scaler applied to every chunk (null to disable)
+     */
+    public void setScaler(Scaler scaler) {
+        this.scaler = scaler;
+    }
+
+    public Scaler getScaler() {
+        return scaler;
+    }
+
+    public boolean hasNormalization() {
+        return scaler != null;
+    }
+
+    /**
+     * Min-max scaling fitted with one pass over the data, then rewind
+     */
+    public void fitNormalization(int chunkSize) throws IOException {
+        fitNormalization(chunkSize, Scaler.Type.MIN_MAX);
+    }
+
+    /**
+     * Compute the statistics of every column with one pass over the data,
+     * fit a scaler of the given type, then rewind
+     */
+    public void fitNormalization(int chunkSize, Scaler.Type type) throws IOException {
+        ColumnStatistics stats = new ColumnStatistics(numCols());
+        setScaler(null);
+        rewind();
+        Chunk chunk = new Chunk(chunkSize, numCols());
+        while (read(chunk))
+            stats.add(chunk.getX(), 0, chunk.size());
+        rewind();
+        setScaler(Scaler.fit(stats, type));
+    }
+}
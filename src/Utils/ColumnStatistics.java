@@ -0,0 +1,233 @@
+package Utils;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Running statistics of every column: count, min, max, mean and variance.
+ * Rows can be added one at a time (Welford's update), so the statistics of a
+ * growing dataset never need a full pass, and two partial results can be merged.
+ * These are the parameters of the scalers fitted by DataSet.normalize (see Scaler).
+ */
+public class ColumnStatistics {
+
+    private static final int BLOCK_ROWS = 4096; // rows summarized by a single task
+
+    private final int numCols;
+    private long count;
+    private final double[] min;
+    private final double[] max;
+    private final double[] mean;
+    private final double[] m2; // sum of squared deviations from the mean
+
+    public ColumnStatistics(int numCols) {
+        this.numCols = numCols;
+        min = new double[numCols];
+        max = new double[numCols];
+        mean = new double[numCols];
+        m2 = new double[numCols];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Statistics known only by their range (e.g. read from a binary dataset).
+     * Mean and variance stay undefined until rows are added.
+     */
+    public static ColumnStatistics ofRange(double[] minValues, double[] maxValues) {
+        ColumnStatistics stats = new ColumnStatistics(minValues.length);
+        System.arraycopy(minValues, 0, stats.min, 0, minValues.length);
+        System.arraycopy(maxValues, 0, stats.max, 0, maxValues.length);
+        return stats;
+    }
+
+    /**
+     * Statistics saved earlier (e.g. in a binary dataset)
+     */
+    public static ColumnStatistics of(long count, double[] minValues, double[] maxValues, double[] means,
+                                      double[] variances) {
+        ColumnStatistics stats = ofRange(minValues, maxValues);
+        stats.count = count;
+        for (int j = 0; j < stats.numCols; j++) {
+            stats.mean[j] = means[j];
+            stats.m2[j] = variances[j] * count;
+        }
+        return stats;
+    }
+
+    public int numCols() {
+        return numCols;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void add(double[] row) {
+        count++;
+        for (int j = 0; j < numCols; j++) {
+            double v = row[j];
+            if (v < min[j]) min[j] = v;
+            if (v > max[j]) max[j] = v;
+            double delta = v - mean[j];
+            mean[j] += delta / count;
+            m2[j] += delta * (v - mean[j]);
+        }
+    }
+
+    /**
+     * Add rows [from, to) of X
+     */
+    public void add(Matrix X, int from, int to) {
+        merge(block(X, from, to));
+    }
+
+    /**
+     * Statistics of all the rows of X, computed in one parallel pass:
+     * every block of rows is summarized on its own and the partial results are merged
+     */
+    public static ColumnStatistics compute(Matrix X) {
+        int n = X.numRows();
+        int numBlocks = Math.max(1, (n + BLOCK_ROWS - 1) / BLOCK_ROWS);
+        IntStream blocks = IntStream.range(0, numBlocks);
+        if (numBlocks > 1)
+            blocks = blocks.parallel();
+        return blocks.mapToObj(b -> block(X, b * BLOCK_ROWS, Math.min(n, (b + 1) * BLOCK_ROWS)))
+                .reduce((a, b) -> {
+                    a.merge(b);
+                    return a;
+                })
+                .orElseGet(() -> new ColumnStatistics(X.numCols()));
+    }
+
+    /* statistics of rows [from, to), visiting the matrix in its storage order */
+    private static ColumnStatistics block(Matrix X, int from, int to) {
+        if (X.isSparse())
+            return sparseBlock((SparseMatrix) X, from, to);
+        int d = X.numCols();
+        ColumnStatistics stats = new ColumnStatistics(d);
+        stats.count = to - from;
+        double[] min = stats.min, max = stats.max, mean = stats.mean, m2 = stats.m2;
+        if (X.getLayout() == Matrix.Layout.COLUMN_MAJOR) {
+            for (int j = 0; j < d; j++) {
+                for (int i = from; i < to; i++) {
+                    double v = X.get(i, j);
+                    if (v < min[j]) min[j] = v;
+                    if (v > max[j]) max[j] = v;
+                    double delta = v - mean[j];
+                    mean[j] += delta / (i - from + 1);
+                    m2[j] += delta * (v - mean[j]);
+                }
+            }
+        } else {
+            double[] row = new double[d];
+            for (int i = from; i < to; i++) {
+                X.copyRow(i, row);
+                double k = i - from + 1;
+                for (int j = 0; j < d; j++) {
+                    double v = row[j];
+                    if (v < min[j]) min[j] = v;
+                    if (v > max[j]) max[j] = v;
+                    double delta = v - mean[j];
+                    mean[j] += delta / k;
+                    m2[j] += delta * (v - mean[j]);
+                }
+            }
+        }
+        return stats;
+    }
+
+    /* same as block, visiting only the stored entries: the zeros of a column are accounted for at the end */
+    private static ColumnStatistics sparseBlock(SparseMatrix X, int from, int to) {
+        int d = X.numCols();
+        ColumnStatistics stats = new ColumnStatistics(d);
+        long count = to - from;
+        stats.count = count;
+        double[] min = stats.min, max = stats.max, mean = stats.mean, m2 = stats.m2;
+        int[] nonZeros = new int[d];
+        int[] colIndices = X.getColumnIndices();
+        double[] values = X.getValues();
+        int start = (from < to) ? X.rowStart(from) : 0;
+        int end = (from < to) ? X.rowEnd(to - 1) : 0;
+
+        for (int k = start; k < end; k++) {
+            int j = colIndices[k];
+            double v = values[k];
+            if (v < min[j]) min[j] = v;
+            if (v > max[j]) max[j] = v;
+            mean[j] += v; // sum for now
+            nonZeros[j]++;
+        }
+        for (int j = 0; j < d; j++) {
+            mean[j] /= Math.max(count, 1);
+            if (nonZeros[j] < count) {
+                min[j] = Math.min(min[j], 0.0);
+                max[j] = Math.max(max[j], 0.0);
+            }
+            m2[j] = (count - nonZeros[j]) * mean[j] * mean[j]; // deviation of the zeros
+        }
+        for (int k = start; k < end; k++) {
+            int j = colIndices[k];
+            double delta = values[k] - mean[j];
+            m2[j] += delta * delta;
+        }
+        return stats;
+    }
+
+    /**
+     * Combine with the statistics of other rows (Chan et al. pairwise update)
+     */
+    public void merge(ColumnStatistics other) {
+        if (other.numCols != numCols)
+            throw new IllegalArgumentException("Expected " + numCols + " columns, got " + other.numCols);
+        long total = count + other.count;
+        for (int j = 0; j < numCols; j++) {
+            min[j] = Math.min(min[j], other.min[j]);
+            max[j] = Math.max(max[j], other.max[j]);
+            if (other.count == 0)
+                continue;
+            double delta = other.mean[j] - mean[j];
+            mean[j] += delta * other.count / total;
+            m2[j] += other.m2[j] + delta * delta * ((double) count * other.count / total);
+        }
+        count = total;
+    }
+
+    public double getMin(int j) {
+        return min[j];
+    }
+
+    public double getMax(int j) {
+        return max[j];
+    }
+
+    public double getMean(int j) {
+        return (count == 0) ? Double.NaN : mean[j];
+    }
+
+    /**
+     * Population variance of column j
+     */
+    public double getVariance(int j) {
+        return (count == 0) ? Double.NaN : m2[j] / count;
+    }
+
+    public double[] getMinValues() {
+        return min.clone();
+    }
+
+    public double[] getMaxValues() {
+        return max.clone();
+    }
+
+    /**
+     * Min-max scale a row in place with the current range (constant columns are left unchanged)
+     */
+    public void scaleRow(double[] row) {
+        for (int j = 0; j < numCols; j++) {
+            if (max[j] == min[j])
+                continue;
+            row[j] = (row[j] - min[j]) / (max[j] - min[j]);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package Utils;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams a CSV file (same layout as DataSet.readDataSet) through a sliding
+ * memory-mapped window, parsing rows straight from the mapped bytes.
+ */
+public class CsvChunkSource extends ChunkSource {
+
+    private static final long WINDOW_SIZE = 64L << 20; // bytes mapped at once
+
+    private final FileChannel channel;
+    private final String[] varNames;
+    private final long dataStart;
+    private final long size;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long windowSize = WINDOW_SIZE;
+    private long position; // file offset of the next unread line
+
+    public CsvChunkSource(String fileName) throws IOException {
+        channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ);
+        try {
+            CsvLoader header = new CsvLoader(fileName);
+            dataStart = header.readHeader(channel);
+            varNames = header.getVarNames();
+            size = channel.size();
+            position = dataStart;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public String[] getVarNames() {
+        return varNames;
+    }
+
+    @Override
+    public int numCols() {
+        return varNames.length - 1;
+    }
+
+    @Override
+    public void rewind() {
+        position = dataStart;
+    }
+
+    @Override
+    protected boolean read(Chunk chunk) throws IOException {
+        Matrix X = chunk.buffer();
+        int[] Y = chunk.getY();
+        int rows = 0;
+        while (rows < chunk.capacity() && position < size) {
+            if (window == null || position < windowStart || position >= windowStart + window.limit())
+                map(position);
+
+            int p = (int) (position - windowStart);
+            int limit = window.limit();
+            int lineEnd = p;
+            while (lineEnd < limit && window.get(lineEnd) != '\n')
+                lineEnd++;
+
+            if (lineEnd == limit && windowStart + limit < size) {
+                // the line continues after the window: map again from its start
+                if (p == 0)
+                    windowSize *= 2; // a single line longer than the window
+                map(position);
+                continue;
+            }
+
+            int end = lineEnd;
+            if (end > p && window.get(end - 1) == '\r')
+                end--;
+            if (end > p)
+                CsvLoader.parseLine(window, p, end, X, Y, rows++);
+            position = windowStart + lineEnd + 1;
+        }
+        chunk.fill(rows);
+        return rows > 0;
+    }
+
+    private void map(long start) throws IOException {
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowSize, size - start));
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
@@ -0,0 +1,501 @@
+package Utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Memory-mapped CSV reader.
+ * The file is split into byte ranges that start right after a newline; every range is
+ * mapped on its own (so files larger than 2 GB work) and parsed in parallel straight
+ * from the mapped bytes into the preallocated matrix, without creating Strings.
+ * Same file layout as DataSet.readDataSet: header, row index, target, features.
+ */
+class CsvLoader {
+
+    private static final byte DELIMITER = ',';
+    private static final long MAX_RANGE_SIZE = 1L << 30; // bytes mapped at once
+    private static final long MIN_RANGE_SIZE = 1L << 20; // do not split small files further
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final Path path;
+    private FeatureHasher hasher; // null unless loadHashed
+    private long rangeStart = 0; // bytes of the file whose rows are read, see setByteRange
+    private long rangeEnd = Long.MAX_VALUE;
+    private String[] varNames;
+    private Matrix X;
+    private int[] Y;
+
+    CsvLoader(String fileName) {
+        this.path = Path.of(fileName);
+    }
+
+    /**
+     * Only read the rows that start in the bytes [start, end) of the file (a shard of it).
+     * Splitting a file at any offsets gives every row to exactly one range
+     */
+    void setByteRange(long start, long end) {
+        if (start < 0 || end < start)
+            throw new IllegalArgumentException("Invalid byte range [" + start + ", " + end + ")");
+        this.rangeStart = start;
+        this.rangeEnd = end;
+    }
+
+    /**
+     * Read the whole file (or its byte range)
+     */
+    void load(Matrix.Layout layout, Matrix.Precision precision) throws IOException {
+        load(layout, precision, false);
+    }
+
+    /**
+     * Read the whole file into a SparseMatrix: only the non-zero features are kept
+     */
+    void loadSparse() throws IOException {
+        load(Matrix.Layout.ROW_MAJOR, Matrix.Precision.DOUBLE, true);
+    }
+
+    /**
+     * Read the whole file into a SparseMatrix of hashed features (see FeatureHasher):
+     * the feature columns may hold any text
+     */
+    void loadHashed(FeatureHasher hasher) throws IOException {
+        this.hasher = hasher;
+        load(Matrix.Layout.ROW_MAJOR, Matrix.Precision.DOUBLE, true);
+    }
+
+    private void load(Matrix.Layout layout, Matrix.Precision precision, boolean sparse) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long dataStart = readHeader(channel);
+            long size = lineStartFrom(channel, Math.max(dataStart, Math.min(rangeEnd, channel.size())));
+            long start = Math.min(size, lineStartFrom(channel, Math.max(dataStart, rangeStart)));
+            long[] bounds = splitRanges(channel, start, size);
+            int numRanges = bounds.length - 1;
+
+            MappedByteBuffer[] buffers = new MappedByteBuffer[numRanges];
+            for (int r = 0; r < numRanges; r++)
+                buffers[r] = channel.map(FileChannel.MapMode.READ_ONLY, bounds[r], bounds[r + 1] - bounds[r]);
+
+            // first pass: rows per range, to know where each range writes
+            int[] rowCounts = new int[numRanges];
+            IntStream.range(0, numRanges).parallel().forEach(r -> rowCounts[r] = countRows(buffers[r]));
+            int[] firstRow = new int[numRanges + 1];
+            for (int r = 0; r < numRanges; r++) {
+                long next = (long) firstRow[r] + rowCounts[r];
+                if (next > Integer.MAX_VALUE)
+                    throw new IOException("Too many rows in " + path);
+                firstRow[r + 1] = (int) next;
+            }
+
+            int n = firstRow[numRanges];
+            Y = new int[n];
+            if (sparse) {
+                // second pass: every range keeps its own non-zeros, then they are concatenated
+                SparseRows[] parts = new SparseRows[numRanges];
+                FeatureHasher.Columns columns = (hasher == null) ? null : hasher.columns(varNames);
+                IntStream.range(0, numRanges).parallel()
+                        .forEach(r -> parts[r] = (hasher == null)
+                                ? parseSparseRange(buffers[r], firstRow[r], rowCounts[r])
+                                : parseHashedRange(buffers[r], firstRow[r], rowCounts[r], columns));
+                X = SparseRows.concat(parts, n, (hasher == null) ? varNames.length - 1 : hasher.numFeatures());
+                return;
+            }
+            // quantized columns need the range of their values: parse as float first
+            X = Matrix.allocate(n, varNames.length - 1, layout,
+                    precision.isQuantized() ? Matrix.Precision.FLOAT : precision);
+
+            // second pass: parse every range into its rows
+            IntStream.range(0, numRanges).parallel().forEach(r -> parseRange(buffers[r], firstRow[r]));
+            if (precision.isQuantized())
+                X = X.convert(layout, precision);
+        }
+    }
+
+    String[] getVarNames() {
+        return varNames;
+    }
+
+    Matrix getX() {
+        return X;
+    }
+
+    int[] getY() {
+        return Y;
+    }
+
+    /* read the variable names, return the offset of the first data row */
+    long readHeader(FileChannel channel) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+        long position = 0;
+        StringBuilder header = new StringBuilder();
+        while (true) {
+            buf.clear();
+            int read = channel.read(buf, position);
+            if (read <= 0)
+                break;
+            int end = indexOf(buf, read, (byte) '\n');
+            header.append(new String(buf.array(), 0, end < 0 ? read : end, StandardCharsets.UTF_8));
+            if (end >= 0) {
+                position += end + 1;
+                break;
+            }
+            position += read;
+        }
+        String line = header.toString();
+        if (line.endsWith("\r"))
+            line = line.substring(0, line.length() - 1);
+        varNames = line.split(String.valueOf((char) DELIMITER));
+        if (varNames.length < 3)
+            throw new IOException("Expected row index, target and at least one feature in " + path);
+        return position;
+    }
+
+    /* byte ranges of about equal size, each one starting at the beginning of a line */
+    private long[] splitRanges(FileChannel channel, long start, long size) throws IOException {
+        long length = size - start;
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        long numRanges = Math.max(1, Math.min(4L * numThreads, length / MIN_RANGE_SIZE));
+        numRanges = Math.max(numRanges, (length + MAX_RANGE_SIZE - 1) / MAX_RANGE_SIZE);
+
+        long[] bounds = new long[(int) numRanges + 1];
+        bounds[0] = start;
+        int count = 1;
+        ByteBuffer buf = ByteBuffer.allocate(8 * 1024);
+        for (long r = 1; r < numRanges; r++) {
+            long position = Math.max(start + length * r / numRanges, bounds[count - 1]);
+            long lineStart = nextLineStart(channel, buf, position, size);
+            if (lineStart > bounds[count - 1] && lineStart < size)
+                bounds[count++] = lineStart;
+        }
+        bounds[count++] = size;
+        long[] result = new long[count];
+        System.arraycopy(bounds, 0, result, 0, count);
+        return result;
+    }
+
+    /* position if a line starts there, else the start of the next line */
+    private static long lineStartFrom(FileChannel channel, long position) throws IOException {
+        long size = channel.size();
+        if (position == 0 || position >= size)
+            return Math.min(position, size);
+        ByteBuffer buf = ByteBuffer.allocate(8 * 1024);
+        return nextLineStart(channel, buf, position - 1, size);
+    }
+
+    private static long nextLineStart(FileChannel channel, ByteBuffer buf, long position, long size)
+            throws IOException {
+        while (position < size) {
+            buf.clear();
+            int read = channel.read(buf, position);
+            if (read <= 0)
+                break;
+            int end = indexOf(buf, read, (byte) '\n');
+            if (end >= 0)
+                return position + end + 1;
+            position += read;
+        }
+        return size;
+    }
+
+    private static int indexOf(ByteBuffer buf, int length, byte b) {
+        byte[] bytes = buf.array();
+        for (int i = 0; i < length; i++)
+            if (bytes[i] == b)
+                return i;
+        return -1;
+    }
+
+    /* a row is any line with at least one character other than '\r' */
+    private static int countRows(MappedByteBuffer buf) {
+        int limit = buf.limit();
+        int rows = 0;
+        boolean content = false;
+        for (int p = 0; p < limit; p++) {
+            byte b = buf.get(p);
+            if (b == '\n') {
+                if (content)
+                    rows++;
+                content = false;
+            } else if (b != '\r') {
+                content = true;
+            }
+        }
+        return content ? rows + 1 : rows;
+    }
+
+    private void parseRange(MappedByteBuffer buf, int row) {
+        int limit = buf.limit();
+        int p = 0;
+        while (p < limit) {
+            int lineEnd = p;
+            while (lineEnd < limit && buf.get(lineEnd) != '\n')
+                lineEnd++;
+            int end = lineEnd;
+            if (end > p && buf.get(end - 1) == '\r')
+                end--;
+
+            if (end > p)
+                parseLine(buf, p, end, X, Y, row++);
+            p = lineEnd + 1;
+        }
+    }
+
+    private SparseRows parseSparseRange(MappedByteBuffer buf, int row, int numRows) {
+        int d = varNames.length - 1;
+        SparseRows rows = new SparseRows(numRows);
+        double[] values = new double[d]; // dense row, parsed then compressed
+        Matrix line = new DoubleMatrix(values, 1, d, 0, d, 1, Matrix.Layout.ROW_MAJOR);
+        int limit = buf.limit();
+        int p = 0;
+        while (p < limit) {
+            int lineEnd = p;
+            while (lineEnd < limit && buf.get(lineEnd) != '\n')
+                lineEnd++;
+            int end = lineEnd;
+            if (end > p && buf.get(end - 1) == '\r')
+                end--;
+
+            if (end > p) {
+                parseLine(buf, p, end, line, 0, Y, row++);
+                rows.add(values);
+            }
+            p = lineEnd + 1;
+        }
+        return rows;
+    }
+
+    private SparseRows parseHashedRange(MappedByteBuffer buf, int row, int numRows, FeatureHasher.Columns columns) {
+        SparseRows rows = new SparseRows(numRows);
+        FeatureHasher.Row line = new FeatureHasher.Row();
+        int limit = buf.limit();
+        int p = 0;
+        while (p < limit) {
+            int lineEnd = p;
+            while (lineEnd < limit && buf.get(lineEnd) != '\n')
+                lineEnd++;
+            int end = lineEnd;
+            if (end > p && buf.get(end - 1) == '\r')
+                end--;
+
+            if (end > p) {
+                line.clear();
+                line.add(0, 1.0); // bias
+                int field = 0;
+                int fieldStart = p;
+                for (int q = p; q <= end; q++) {
+                    if (q < end && buf.get(q) != DELIMITER)
+                        continue;
+                    if (field == 1) {
+                        Y[row] = parseLabel(buf, fieldStart, q);
+                    } else if (field >= 2) {
+                        if (field >= varNames.length)
+                            throw new IllegalArgumentException("Too many columns in row " + (row + 1));
+                        hasher.hashField(buf, fieldStart, q, columns, field, line);
+                    }
+                    field++;
+                    fieldStart = q + 1;
+                }
+                if (field != varNames.length)
+                    throw new IllegalArgumentException("Expected " + varNames.length + " columns in row "
+                            + (row + 1) + ", found " + field);
+                line.compact();
+                rows.add(line.indices, line.values, line.size);
+                row++;
+            }
+            p = lineEnd + 1;
+        }
+        return rows;
+    }
+
+    /* CSR rows of one byte range, grown while parsing */
+    private static class SparseRows {
+        final int[] rowPointers;
+        int[] colIndices = new int[1024];
+        double[] values = new double[1024];
+        int numRows;
+
+        SparseRows(int capacity) {
+            rowPointers = new int[capacity + 1];
+        }
+
+        /* dense row: keep its non-zeros */
+        void add(double[] row) {
+            int k = rowPointers[numRows];
+            for (int j = 0; j < row.length; j++) {
+                if (row[j] == 0.0)
+                    continue;
+                ensureCapacity(k + 1);
+                colIndices[k] = j;
+                values[k++] = row[j];
+            }
+            rowPointers[++numRows] = k;
+        }
+
+        /* row given by sorted, distinct column indices */
+        void add(int[] indices, double[] rowValues, int size) {
+            int k = rowPointers[numRows];
+            ensureCapacity(k + size);
+            for (int a = 0; a < size; a++) {
+                if (rowValues[a] == 0.0)
+                    continue;
+                colIndices[k] = indices[a];
+                values[k++] = rowValues[a];
+            }
+            rowPointers[++numRows] = k;
+        }
+
+        private void ensureCapacity(int size) {
+            if (size <= values.length)
+                return;
+            int capacity = Math.max(size, Math.addExact(values.length, values.length >> 1));
+            colIndices = Arrays.copyOf(colIndices, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        static SparseMatrix concat(SparseRows[] parts, int numRows, int numCols) {
+            int[] first = new int[parts.length + 1];
+            for (int r = 0; r < parts.length; r++)
+                first[r + 1] = Math.addExact(first[r], parts[r].rowPointers[parts[r].numRows]);
+            int[] rowPointers = new int[numRows + 1];
+            int[] colIndices = new int[first[parts.length]];
+            double[] values = new double[first[parts.length]];
+            IntStream.range(0, parts.length).parallel().forEach(r -> {
+                SparseRows part = parts[r];
+                int row = 0;
+                for (int q = 0; q < r; q++)
+                    row += parts[q].numRows;
+                for (int i = 1; i <= part.numRows; i++)
+                    rowPointers[row + i] = first[r] + part.rowPointers[i];
+                int nnz = part.rowPointers[part.numRows];
+                System.arraycopy(part.colIndices, 0, colIndices, first[r], nnz);
+                System.arraycopy(part.values, 0, values, first[r], nnz);
+            });
+            return new SparseMatrix(rowPointers, colIndices, values, numRows, numCols);
+        }
+    }
+
+    /**
+     * Parse the line [start, end) (without its line terminator) into row of X and Y
+     */
+    static void parseLine(ByteBuffer buf, int start, int end, Matrix X, int[] Y, int row) {
+        parseLine(buf, start, end, X, row, Y, row);
+    }
+
+    /* same, with the features going to row xRow of X (e.g. a one-row buffer) */
+    private static void parseLine(ByteBuffer buf, int start, int end, Matrix X, int xRow, int[] Y, int row) {
+        int numCols = X.numCols();
+
+        // Add bias as x[0]
+        X.set(xRow, 0, 1.0);
+
+        // Skip first column (it is the observation number)
+        int field = 0;
+        int fieldStart = start;
+        for (int q = start; q <= end; q++) {
+            if (q < end && buf.get(q) != DELIMITER)
+                continue;
+            if (field == 1) {
+                Y[row] = parseLabel(buf, fieldStart, q);
+            } else if (field >= 2) {
+                if (field > numCols)
+                    throw new IllegalArgumentException("Too many columns in row " + (row + 1));
+                X.set(xRow, field - 1, parseDouble(buf, fieldStart, q));
+            }
+            field++;
+            fieldStart = q + 1;
+        }
+        if (field != numCols + 1)
+            throw new IllegalArgumentException("Expected " + (numCols + 1) + " columns in row "
+                    + (row + 1) + ", found " + field);
+    }
+
+    private static int parseLabel(ByteBuffer buf, int start, int end) {
+        double value = parseDouble(buf, start, end);
+        if (value != (int) value)
+            throw new NumberFormatException("Label is not an integer: " + text(buf, start, end));
+        return (int) value;
+    }
+
+    /**
+     * Parse a decimal number without allocating.
+     * Mantissas up to 2^53 with exponents up to 22 are computed exactly with a single
+     * multiplication or division; anything else goes through Double.parseDouble.
+     */
+    static double parseDouble(ByteBuffer buf, int start, int end) {
+        while (start < end && buf.get(start) == ' ')
+            start++;
+        while (end > start && buf.get(end - 1) == ' ')
+            end--;
+
+        int p = start;
+        boolean negative = false;
+        if (p < end && (buf.get(p) == '-' || buf.get(p) == '+'))
+            negative = buf.get(p++) == '-';
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean any = false;
+        for (; p < end; p++) {
+            int d = buf.get(p) - '0';
+            if (d < 0 || d > 9)
+                break;
+            any = true;
+            if (mantissa != 0 || d != 0)
+                digits++;
+            mantissa = mantissa * 10 + d;
+        }
+        if (p < end && buf.get(p) == '.') {
+            for (p++; p < end; p++) {
+                int d = buf.get(p) - '0';
+                if (d < 0 || d > 9)
+                    break;
+                any = true;
+                if (mantissa != 0 || d != 0)
+                    digits++;
+                mantissa = mantissa * 10 + d;
+                exponent--;
+            }
+        }
+        if (any && p < end && (buf.get(p) == 'e' || buf.get(p) == 'E')) {
+            p++;
+            boolean negativeExp = false;
+            if (p < end && (buf.get(p) == '-' || buf.get(p) == '+'))
+                negativeExp = buf.get(p++) == '-';
+            int exp = 0;
+            boolean expDigits = false;
+            for (; p < end; p++) {
+                int d = buf.get(p) - '0';
+                if (d < 0 || d > 9)
+                    break;
+                expDigits = true;
+                exp = Math.min(exp * 10 + d, 100_000);
+            }
+            if (!expDigits)
+                any = false;
+            exponent += negativeExp ? -exp : exp;
+        }
+
+        if (!any || p != end || digits > 18 || mantissa > (1L << 53) || Math.abs(exponent) > 22)
+            return Double.parseDouble(text(buf, start, end)); // slow path, also reports bad input
+
+        double value = (exponent >= 0) ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+        return negative ? -value : value;
+    }
+
+    private static String text(ByteBuffer buf, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = buf.get(start + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -1,44 +1,32 @@
 package Utils;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.BufferedInputStream;
-import java.io.FileInputStream;
 import java.util.Arrays;
 
 public class DataSet {
     // Full dataset
-    private double[][] X; // features
+    private Matrix X; // features
     private int[] Y; // label
 
-    // Training and test subsets
-    private double[][] XTrain;
+    // Training and test subsets (views over the rows of X)
+    private Matrix XTrain;
     private int[] YTrain;
-    private double[][] XTest;
+    private Matrix XTest;
     private int[] YTest;
+    private Matrix XValidation;
+    private int[] YValidation;
+
+    // storage used for the feature matrix
+    private Matrix.Layout layout = Matrix.Layout.ROW_MAJOR;
+    private Matrix.Precision precision = Matrix.Precision.DOUBLE;
+    private boolean sparse; // features stored in CSR format (SparseMatrix)
+    private FeatureHasher hasher; // hashing of raw (e.g. categorical) columns, null to parse numbers only
 
-    private static final String DELIMITER = ","; // used in CSV files
     protected String[] varNames;
 
-    private int countLines(String filename) throws IOException {
-        try (InputStream is = new BufferedInputStream(new FileInputStream(filename))) {
-            byte[] c = new byte[1024];
-            int count = 0;
-            int readChars;
-            boolean empty = true;
-            while ((readChars = is.read(c)) != -1) {
-                empty = false;
-                for (int i = 0; i < readChars; ++i) {
-                    if (c[i] == '\n') {
-                        count++;
-                    }
-                }
-            }
-            return (count == 0 && !empty) ? 1 : count;
-        }
-    }
+    // normalization, kept to scale new data the same way
+    private ColumnStatistics statistics; // raw column statistics, can be updated with new rows
+    private Scaler scaler; // scaler applied to X
+    private boolean normalized;
 
     /**
      * Read the dataset
@@ -47,76 +35,92 @@ public class DataSet {
      * 2) first column contains the row index
      * 3) second column contains the target
      * 4) columns are separated with ","
+     * The file is memory-mapped and parsed in parallel (see CsvLoader).
      */
     public void readDataSet(String fileName) {
-        BufferedReader fileReader = null;
+        readDataSet(fileName, 0, Long.MAX_VALUE);
+    }
 
+    /**
+     * Read only the rows that start in the bytes [fromByte, toByte) of the file, e.g. the shard
+     * of one process: splitting a file at any byte offsets gives every row to exactly one shard
+     */
+    public void readDataSet(String fileName, long fromByte, long toByte) {
         try {
-            // First, determine the number of lines in the file
-            int linesNumber = countLines(fileName);
-
-            // allocate memory for rows
-            X = new double[linesNumber - 1][];
-            Y = new int[linesNumber - 1];
-
-            String line;
-            // Create the file reader
-            fileReader = new BufferedReader(new FileReader(fileName));
-
-            // Read the variable names
-            line = fileReader.readLine();
-            varNames = line.split(DELIMITER);
-
-            // Read the file line by line
-            int rowNumber = 0;
-            while ((line = fileReader.readLine()) != null) {
-                // Get all columns available in line
-                String[] columns = line.split(DELIMITER);
-
-                double[] x = new double[columns.length - 1];
-
-                // Add bias as x[0]
-                x[0] = 1.0;
+            CsvLoader loader = new CsvLoader(fileName);
+            loader.setByteRange(fromByte, toByte);
+            if (hasher != null)
+                loader.loadHashed(hasher);
+            else if (sparse)
+                loader.loadSparse();
+            else
+                loader.load(layout, precision);
+            varNames = loader.getVarNames();
+            X = loader.getX();
+            Y = loader.getY();
+            normalized = false;
+            statistics = null;
+            scaler = null;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
 
-                // Skip first column (it is the observation number)
-                // also: start from x[1]
-                for (int i = 2; i < columns.length; i++) {
-                    x[i - 1] = Double.parseDouble(columns[i]);
-                }
+    /**
+     * Normalize the data (min-max scaling, or max-abs scaling for sparse data so zeros stay zeros)
+     */
+    public void normalize() {
+        normalize(X.isSparse() ? Scaler.Type.MAX_ABS : Scaler.Type.MIN_MAX);
+    }
 
-                // store values in memory
-                X[rowNumber] = x;
-                Y[rowNumber++] = Integer.parseInt(columns[1]);
+    /**
+     * Normalize the data with the given scaler.
+     * The statistics of all columns are computed in one parallel pass, then the fitted
+     * scaler is applied in parallel and kept (see getScaler) to scale new data.
+     */
+    public void normalize(Scaler.Type type) {
+        if (normalized)
+            return;
+        statistics = ColumnStatistics.compute(X);
+        scaler = Scaler.fit(statistics, type);
+        scaler.transform(X);
+        normalized = true;
+    }
 
-            }
+    /**
+     * Save the dataset in the binary columnar format (see BinaryFormat)
+     */
+    public void saveBinary(String fileName) {
+        try {
+            BinaryFormat file = new BinaryFormat();
+            file.varNames = varNames;
+            file.X = X;
+            file.Y = Y;
+            file.statistics = statistics;
+            file.scaler = scaler;
+            file.normalized = normalized;
+            file.write(fileName);
         } catch (Exception e) {
             e.printStackTrace();
-        } finally {
-            try {
-                assert fileReader != null;
-                fileReader.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
         }
     }
 
     /**
-     * Normalize the data
+     * Load a dataset saved with saveBinary.
+     * The file is memory-mapped and the features are used in place, without parsing or copying.
      */
-    public void normalize() {
-        double[] varX = new double[X.length];
-        for (int i = 0; i < X[0].length; i++) {
-            for (int j = 0; j < X.length; j++) {
-                varX[j] = X[j][i];
-            }
-            double maxVal = Arrays.stream(varX).max().getAsDouble();
-            double minVal = Arrays.stream(varX).min().getAsDouble();
-            if (maxVal == minVal)
-                continue;
-            for (int j = 0; j < X.length; j++) {
-                X[j][i] = (X[j][i] - minVal) / (maxVal - minVal);
-            }
+    public void loadBinary(String fileName) {
+        try {
+            BinaryFormat file = new BinaryFormat();
+            file.read(fileName, true);
+            varNames = file.varNames;
+            X = file.X;
+            Y = file.Y;
+            normalized = file.normalized;
+            statistics = file.statistics;
+            scaler = file.scaler;
+        } catch (Exception e) {
+            e.printStackTrace();
         }
     }
 
@@ -124,40 +128,119 @@ public class DataSet {
      * Split the data into training and test sets
      */
     public void splitData(double testSize) {
-        int n = X.length;
+        splitData(testSize, 0.0);
+    }
+
+    /**
+     * Split the data into test, validation (for early stopping) and training sets
+     */
+    public void splitData(double testSize, double validationSize) {
+        int n = X.numRows();
         int testSizeInt = (int) (n * testSize);
-        XTest = Arrays.copyOfRange(X, 0, testSizeInt);
+        int validationEnd = testSizeInt + (int) (n * validationSize);
+        XTest = X.rowRange(0, testSizeInt);
         YTest = Arrays.copyOfRange(Y, 0, testSizeInt);
-        XTrain = Arrays.copyOfRange(X, testSizeInt, n);
-        YTrain = Arrays.copyOfRange(Y, testSizeInt, n);
+        XValidation = X.rowRange(testSizeInt, validationEnd);
+        YValidation = Arrays.copyOfRange(Y, testSizeInt, validationEnd);
+        XTrain = X.rowRange(validationEnd, n);
+        YTrain = Arrays.copyOfRange(Y, validationEnd, n);
     }
 
     public void printDataSetInfo() {
         System.out.println("\nData set information:");
-        System.out.println("Number of observations: " + X.length);
-        System.out.println("Number of features: " + X[0].length);
-        System.out.println("Number of training observations: " + XTrain.length);
-        System.out.println("Number of test observations: " + XTest.length);
+        System.out.println("Number of observations: " + X.numRows());
+        System.out.println("Number of features: " + X.numCols());
+        System.out.println("Number of training observations: " + XTrain.numRows());
+        System.out.println("Number of test observations: " + XTest.numRows());
+        if (XValidation.numRows() > 0)
+            System.out.println("Number of validation observations: " + XValidation.numRows());
         System.out.println();
         System.out.println("First 5 rows of the dataset: ");
         for (int i = 0; i < 5; i++) {
-            System.out.println(Arrays.toString(X[i]) + "\t\t" + Y[i]);
+            System.out.println(Arrays.toString(X.getRow(i)) + "\t\t" + Y[i]);
         }
     }
 
     public void generateDataset(int nObservations, int nFeatures) {
-        X = new double[nObservations][nFeatures];
+        X = Matrix.allocate(nObservations, nFeatures, layout, precision);
+        normalized = false;
+        statistics = null;
+        scaler = null;
         Y = new int[nObservations];
         for (int i = 0; i < nObservations; i++) {
-            X[i][0] = 1.0;
+            X.set(i, 0, 1.0);
             for (int j = 1; j < nFeatures; j++) {
-                X[i][j] = Math.random();
+                X.set(i, j, Math.random());
             }
             Y[i] = Math.random() > 0.5 ? 1 : 0;
         }
     }
 
-    public double[][] getX() {
+    /**
+     * Store the current features with another precision, e.g. INT8 codes after normalize.
+     * Must be called before splitData (the subsets are views of the features)
+     */
+    public void convertStorage(Matrix.Precision precision) {
+        if (X.isSparse() || X.getPrecision() == precision)
+            return;
+        X = X.convert(X.getLayout(), precision);
+    }
+
+    /**
+     * Select the layout and precision used by the next readDataSet / generateDataset
+     */
+    public void setStorage(Matrix.Layout layout, Matrix.Precision precision) {
+        this.layout = layout;
+        this.precision = precision;
+    }
+
+    /**
+     * Store the features of the next readDataSet in CSR format, keeping only the non-zeros
+     * (layout and precision are then ignored)
+     */
+    public void setSparse(boolean sparse) {
+        this.sparse = sparse;
+    }
+
+    /**
+     * Hash the feature columns of the next readDataSet (see FeatureHasher) into a SparseMatrix
+     * of hasher.numFeatures() columns; null to go back to numeric columns
+     */
+    public void setFeatureHashing(FeatureHasher hasher) {
+        this.hasher = hasher;
+    }
+
+    public boolean isNormalized() {
+        return normalized;
+    }
+
+    public double[] getMinValues() {
+        return (statistics == null) ? null : statistics.getMinValues();
+    }
+
+    public double[] getMaxValues() {
+        return (statistics == null) ? null : statistics.getMaxValues();
+    }
+
+    /**
+     * Scaler fitted by normalize, null if the data is not normalized
+     */
+    public Scaler getScaler() {
+        return scaler;
+    }
+
+    /**
+     * Statistics of the raw features computed by normalize
+     */
+    public ColumnStatistics getStatistics() {
+        return statistics;
+    }
+
+    public String[] getVarNames() {
+        return varNames;
+    }
+
+    public Matrix getX() {
         return X;
     }
 
@@ -165,7 +248,7 @@ public class DataSet {
         return Y;
     }
 
-    public double[][] getXTrain() {
+    public Matrix getXTrain() {
         return XTrain;
     }
 
@@ -173,11 +256,19 @@ public class DataSet {
         return YTrain;
     }
 
-    public double[][] getXTest() {
+    public Matrix getXTest() {
         return XTest;
     }
 
     public int[] getYTest() {
         return YTest;
     }
+
+    public Matrix getXValidation() {
+        return XValidation;
+    }
+
+    public int[] getYValidation() {
+        return YValidation;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+package Utils;
+
+/**
+ * Matrix backed by a single double[]
+ */
+public class DoubleMatrix extends Matrix {
+
+    private final double[] data;
+
+    public DoubleMatrix(double[] data, int numRows, int numCols, int offset, int rowStride, int colStride,
+                        Layout layout) {
+        super(numRows, numCols, offset, rowStride, colStride, layout);
+        this.data = data;
+    }
+
+    @Override
+    public Precision getPrecision() {
+        return Precision.DOUBLE;
+    }
+
+    @Override
+    public double get(int i, int j) {
+        return data[offset + i * rowStride + j * colStride];
+    }
+
+    @Override
+    public void set(int i, int j, double value) {
+        data[offset + i * rowStride + j * colStride] = value;
+    }
+
+    @Override
+    public double dotRow(int i, double[] w) {
+        int base = offset + i * rowStride;
+        if (colStride == 1)
+            return isReproducible() ? Kernels.reproducibleDot(data, base, w, numCols) : Kernels.dot(data, base, w, numCols);
+        double z = 0.0;
+        for (int j = 0, p = base; j < numCols; j++, p += colStride)
+            z += data[p] * w[j];
+        return z;
+    }
+
+    @Override
+    public void addScaledRow(int i, double alpha, double[] acc) {
+        int base = offset + i * rowStride;
+        if (colStride == 1) {
+            if (isReproducible())
+                Kernels.reproducibleAxpy(alpha, data, base, acc, numCols);
+            else
+                Kernels.axpy(alpha, data, base, acc, numCols);
+        } else {
+            for (int j = 0, p = base; j < numCols; j++, p += colStride)
+                acc[j] += alpha * data[p];
+        }
+    }
+
+    @Override
+    public void copyRow(int i, double[] out) {
+        if (colStride == 1)
+            System.arraycopy(data, offset + i * rowStride, out, 0, numCols);
+        else
+            super.copyRow(i, out);
+    }
+
+    @Override
+    public Matrix rowRange(int from, int to) {
+        checkRange(from, to);
+        return view(new DoubleMatrix(data, to - from, numCols, offset + from * rowStride, rowStride, colStride, layout));
+    }
+
+    /**
+     * Backing array, shared with every view of this matrix
+     */
+    public double[] getData() {
+        return data;
+    }
+}
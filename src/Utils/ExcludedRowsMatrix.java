@@ -0,0 +1,104 @@
+package Utils;
+
+/**
+ * View of a matrix without the rows [from, to): row i of the view is row i of the
+ * parent before the gap and row i + (to - from) after it. Nothing is copied.
+ * Used for the training part of a cross-validation fold.
+ * Dense parents only: the view is not a SparseMatrix, so it could not give the sparse
+ * code paths the non-zeros of its rows.
+ */
+class ExcludedRowsMatrix extends Matrix {
+
+    private final Matrix head; // rows before the gap
+    private final Matrix tail; // rows after the gap
+    private final int split; // number of rows of head
+
+    ExcludedRowsMatrix(Matrix parent, int from, int to) {
+        this(parent.rowRange(0, from), parent.rowRange(to, parent.numRows()), parent);
+    }
+
+    private ExcludedRowsMatrix(Matrix head, Matrix tail, Matrix parent) {
+        super(head.numRows() + tail.numRows(), parent.numCols(), 0, 0, 0, parent.getLayout());
+        this.head = head;
+        this.tail = tail;
+        this.split = head.numRows();
+    }
+
+    @Override
+    public Precision getPrecision() {
+        return head.getPrecision();
+    }
+
+    @Override
+    public double get(int i, int j) {
+        return (i < split) ? head.get(i, j) : tail.get(i - split, j);
+    }
+
+    @Override
+    public void set(int i, int j, double value) {
+        if (i < split)
+            head.set(i, j, value);
+        else
+            tail.set(i - split, j, value);
+    }
+
+    @Override
+    public double dotRow(int i, double[] w) {
+        return (i < split) ? head.dotRow(i, w) : tail.dotRow(i - split, w);
+    }
+
+    @Override
+    public void addScaledRow(int i, double alpha, double[] acc) {
+        if (i < split)
+            head.addScaledRow(i, alpha, acc);
+        else
+            tail.addScaledRow(i - split, alpha, acc);
+    }
+
+    /* blocks that cross the gap are split, so the parents can use their own block loops */
+    @Override
+    public void dotRows(int from, int to, double[] w, double[] out, int outOffset) {
+        if (from < split)
+            head.dotRows(from, Math.min(to, split), w, out, outOffset);
+        if (to > split) {
+            int start = Math.max(from, split);
+            tail.dotRows(start - split, to - split, w, out, outOffset + start - from);
+        }
+    }
+
+    @Override
+    public void addScaledRows(int from, int to, double[] alpha, int alphaOffset, double[] acc) {
+        if (from < split)
+            head.addScaledRows(from, Math.min(to, split), alpha, alphaOffset, acc);
+        if (to > split) {
+            int start = Math.max(from, split);
+            tail.addScaledRows(start - split, to - split, alpha, alphaOffset + start - from, acc);
+        }
+    }
+
+    @Override
+    public void copyRow(int i, double[] out) {
+        if (i < split)
+            head.copyRow(i, out);
+        else
+            tail.copyRow(i - split, out);
+    }
+
+    @Override
+    public Matrix rowRange(int from, int to) {
+        checkRange(from, to);
+        if (to <= split)
+            return head.rowRange(from, to);
+        if (from >= split)
+            return tail.rowRange(from - split, to - split);
+        return view(new ExcludedRowsMatrix(head.rowRange(from, split), tail.rowRange(0, to - split), head));
+    }
+
+    /* the rows are read through head and tail: they must be reproducible views too */
+    @Override
+    public Matrix reproducible() {
+        if (isReproducible())
+            return this;
+        return markReproducible(new ExcludedRowsMatrix(head.reproducible(), tail.reproducible(), head));
+    }
+}
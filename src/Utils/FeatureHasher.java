@@ -0,0 +1,238 @@
+package Utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Hashing trick: maps the raw fields of a CSV row into a fixed space of 2^bits
+ * sparse features, without building a dictionary.
+ * A numeric field becomes the feature hash(column name) with its value; any other field
+ * (or any field of a column declared categorical) becomes the feature
+ * hash(column name, field text) with value 1. Empty fields are skipped.
+ * Hashes are MurmurHash3 (x86, 32 bits) computed straight from the file bytes.
+ * Feature 0 is reserved for the bias, so the hashed features are 1 .. 2^bits.
+ * With signed hashing, a second hash bit gives every feature a sign, so collisions
+ * cancel out on average instead of adding up.
+ */
+public class FeatureHasher {
+
+    private static final int MAX_BITS = 30;
+
+    private final int bits;
+    private final boolean signed;
+    private final int seed;
+    private String[] categoricalColumns = new String[0];
+
+    public FeatureHasher(int bits, boolean signed) {
+        this(bits, signed, 0);
+    }
+
+    public FeatureHasher(int bits, boolean signed, int seed) {
+        if (bits < 1 || bits > MAX_BITS)
+            throw new IllegalArgumentException("bits must be in [1, " + MAX_BITS + "]: " + bits);
+        this.bits = bits;
+        this.signed = signed;
+        this.seed = seed;
+    }
+
+    /**
+     * Treat these columns as categorical even when their values look numeric (e.g. zip codes)
+     */
+    public void setCategoricalColumns(String... columns) {
+        categoricalColumns = columns.clone();
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    /**
+     * Columns of the hashed matrix: the bias and 2^bits hashed features
+     */
+    public int numFeatures() {
+        return (1 << bits) + 1;
+    }
+
+    /**
+     * Per-column state for a file with this header (columns 0 and 1 are the row index and the target)
+     */
+    Columns columns(String[] varNames) {
+        Columns columns = new Columns(varNames.length);
+        for (int k = 2; k < varNames.length; k++) {
+            byte[] name = varNames[k].getBytes(StandardCharsets.UTF_8);
+            columns.seeds[k] = murmur3(ByteBuffer.wrap(name), 0, name.length, seed);
+            columns.numericHashes[k] = murmur3(ByteBuffer.wrap(name), 0, name.length, ~seed);
+            for (String categorical : categoricalColumns)
+                if (categorical.equals(varNames[k]))
+                    columns.categorical[k] = true;
+        }
+        return columns;
+    }
+
+    /* hashes derived once from the header */
+    static class Columns {
+        final int[] seeds; // seed of the value hashes of every column
+        final int[] numericHashes; // feature hash of every column holding numbers
+        final boolean[] categorical;
+
+        Columns(int numColumns) {
+            seeds = new int[numColumns];
+            numericHashes = new int[numColumns];
+            categorical = new boolean[numColumns];
+        }
+    }
+
+    /**
+     * Hash field [start, end) of column k into row (index/value pairs, possibly repeated)
+     */
+    void hashField(ByteBuffer buf, int start, int end, Columns columns, int k, Row row) {
+        while (start < end && buf.get(start) == ' ')
+            start++;
+        while (end > start && buf.get(end - 1) == ' ')
+            end--;
+        if (start == end)
+            return;
+
+        int hash;
+        double value;
+        if (!columns.categorical[k] && isNumber(buf, start, end)) {
+            value = CsvLoader.parseDouble(buf, start, end);
+            if (value == 0.0)
+                return;
+            hash = columns.numericHashes[k];
+        } else {
+            value = 1.0;
+            hash = murmur3(buf, start, end, columns.seeds[k]);
+        }
+        if (signed && (hash & (1 << MAX_BITS)) != 0)
+            value = -value;
+        row.add(1 + (hash & ((1 << bits) - 1)), value);
+    }
+
+    /* sparse row under construction, reused across rows */
+    static class Row {
+        int[] indices = new int[16];
+        double[] values = new double[16];
+        int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        void add(int index, double value) {
+            if (size == indices.length) {
+                indices = Arrays.copyOf(indices, 2 * size);
+                values = Arrays.copyOf(values, 2 * size);
+            }
+            indices[size] = index;
+            values[size++] = value;
+        }
+
+        /* sort by index and sum the colliding features (rows are short: insertion sort) */
+        void compact() {
+            for (int a = 1; a < size; a++) {
+                int index = indices[a];
+                double value = values[a];
+                int b = a - 1;
+                while (b >= 0 && indices[b] > index) {
+                    indices[b + 1] = indices[b];
+                    values[b + 1] = values[b];
+                    b--;
+                }
+                indices[b + 1] = index;
+                values[b + 1] = value;
+            }
+            int n = 0;
+            for (int a = 0; a < size; a++) {
+                if (n > 0 && indices[n - 1] == indices[a]) {
+                    values[n - 1] += values[a];
+                } else {
+                    indices[n] = indices[a];
+                    values[n++] = values[a];
+                }
+            }
+            size = n;
+        }
+    }
+
+    /* optional sign, digits with an optional decimal point, optional exponent */
+    private static boolean isNumber(ByteBuffer buf, int start, int end) {
+        int p = start;
+        if (buf.get(p) == '-' || buf.get(p) == '+')
+            p++;
+        boolean digits = false;
+        while (p < end && isDigit(buf.get(p))) {
+            p++;
+            digits = true;
+        }
+        if (p < end && buf.get(p) == '.') {
+            p++;
+            while (p < end && isDigit(buf.get(p))) {
+                p++;
+                digits = true;
+            }
+        }
+        if (!digits)
+            return false;
+        if (p < end && (buf.get(p) == 'e' || buf.get(p) == 'E')) {
+            p++;
+            if (p < end && (buf.get(p) == '-' || buf.get(p) == '+'))
+                p++;
+            boolean expDigits = false;
+            while (p < end && isDigit(buf.get(p))) {
+                p++;
+                expDigits = true;
+            }
+            if (!expDigits)
+                return false;
+        }
+        return p == end;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * MurmurHash3 x86 32-bit of bytes [start, end)
+     */
+    @SuppressWarnings("fallthrough") // the tail bytes fall through on purpose, as in the reference
+    static int murmur3(ByteBuffer buf, int start, int end, int seed) {
+        final int c1 = 0xcc9e2d51;
+        final int c2 = 0x1b873593;
+        int h = seed;
+        int length = end - start;
+        int p = start;
+        for (int blockEnd = start + (length & ~3); p < blockEnd; p += 4) {
+            int k = (buf.get(p) & 0xff) | (buf.get(p + 1) & 0xff) << 8
+                    | (buf.get(p + 2) & 0xff) << 16 | (buf.get(p + 3) & 0xff) << 24;
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            h ^= k;
+            h = Integer.rotateLeft(h, 13);
+            h = h * 5 + 0xe6546b64;
+        }
+        int k = 0;
+        switch (length & 3) {
+            case 3:
+                k ^= (buf.get(p + 2) & 0xff) << 16;
+            case 2:
+                k ^= (buf.get(p + 1) & 0xff) << 8;
+            case 1:
+                k ^= (buf.get(p) & 0xff);
+                k *= c1;
+                k = Integer.rotateLeft(k, 15);
+                k *= c2;
+                h ^= k;
+        }
+        h ^= length;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
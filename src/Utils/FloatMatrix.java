@@ -0,0 +1,68 @@
+package Utils;
+
+/**
+ * Matrix backed by a single float[] (half the bytes per row, values are widened to double when read)
+ */
+public class FloatMatrix extends Matrix {
+
+    private final float[] data;
+
+    public FloatMatrix(float[] data, int numRows, int numCols, int offset, int rowStride, int colStride,
+                       Layout layout) {
+        super(numRows, numCols, offset, rowStride, colStride, layout);
+        this.data = data;
+    }
+
+    @Override
+    public Precision getPrecision() {
+        return Precision.FLOAT;
+    }
+
+    @Override
+    public double get(int i, int j) {
+        return data[offset + i * rowStride + j * colStride];
+    }
+
+    @Override
+    public void set(int i, int j, double value) {
+        data[offset + i * rowStride + j * colStride] = (float) value;
+    }
+
+    @Override
+    public double dotRow(int i, double[] w) {
+        int base = offset + i * rowStride;
+        if (colStride == 1)
+            return isReproducible() ? Kernels.reproducibleDot(data, base, w, numCols) : Kernels.dot(data, base, w, numCols);
+        double z = 0.0;
+        for (int j = 0, p = base; j < numCols; j++, p += colStride)
+            z += data[p] * w[j];
+        return z;
+    }
+
+    @Override
+    public void addScaledRow(int i, double alpha, double[] acc) {
+        int base = offset + i * rowStride;
+        if (colStride == 1) {
+            if (isReproducible())
+                Kernels.reproducibleAxpy(alpha, data, base, acc, numCols);
+            else
+                Kernels.axpy(alpha, data, base, acc, numCols);
+        } else {
+            for (int j = 0, p = base; j < numCols; j++, p += colStride)
+                acc[j] += alpha * data[p];
+        }
+    }
+
+    @Override
+    public Matrix rowRange(int from, int to) {
+        checkRange(from, to);
+        return view(new FloatMatrix(data, to - from, numCols, offset + from * rowStride, rowStride, colStride, layout));
+    }
+
+    /**
+     * Backing array, shared with every view of this matrix
+     */
+    public float[] getData() {
+        return data;
+    }
+}
@@ -0,0 +1,24 @@
+package Utils;
+
+/* numeric primitives behind Kernels, one implementation per instruction set */
+interface KernelProvider {
+
+    double dot(double[] x, int xOffset, double[] w, int n);
+
+    double dot(float[] x, int xOffset, double[] w, int n);
+
+    void axpy(double alpha, double[] x, int xOffset, double[] acc, int n);
+
+    void axpy(double alpha, float[] x, int xOffset, double[] acc, int n);
+
+    /* the byte and short versions read unsigned codes (QuantizedMatrix) */
+    double dot(byte[] x, int xOffset, double[] w, int n);
+
+    double dot(short[] x, int xOffset, double[] w, int n);
+
+    void axpy(double alpha, byte[] x, int xOffset, double[] acc, int n);
+
+    void axpy(double alpha, short[] x, int xOffset, double[] acc, int n);
+
+    void sigmoid(double[] z, int from, int to);
+}
@@ -0,0 +1,138 @@
+package Utils;
+
+/**
+ * Numeric kernels shared by the matrices and the trainers: dot product, AXPY (also over the
+ * unsigned codes of QuantizedMatrix) and batched sigmoid.
+ * Uses SIMD through the Vector API when the jdk.incubator.vector module is present
+ * (run with --add-modules jdk.incubator.vector), plain loops otherwise.
+ * The scalar path can be forced with -Dlr.kernels=scalar.
+ * The reproducible variants fix the order of every operation, so their results do not depend on
+ * the CPU, its vector width or the presence of the Vector API (see Matrix.reproducible).
+ */
+public final class Kernels {
+
+    private static final KernelProvider IMPL = load("Utils.VectorKernels", new ScalarKernels());
+    private static final KernelProvider REPRODUCIBLE = load("Utils.ReproducibleVectorKernels",
+            new ReproducibleKernels());
+
+    private Kernels() {
+    }
+
+    private static KernelProvider load(String vectorKernels, KernelProvider scalarKernels) {
+        if (!"scalar".equals(System.getProperty("lr.kernels"))
+                && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (KernelProvider) Class.forName(vectorKernels).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // fall back to the scalar kernels
+            }
+        }
+        return scalarKernels;
+    }
+
+    /**
+     * true when the SIMD kernels are in use
+     */
+    public static boolean isVectorized() {
+        return !(IMPL instanceof ScalarKernels);
+    }
+
+    /**
+     * sum of x[xOffset + j] * w[j] for j in [0, n)
+     */
+    public static double dot(double[] x, int xOffset, double[] w, int n) {
+        return IMPL.dot(x, xOffset, w, n);
+    }
+
+    public static double dot(float[] x, int xOffset, double[] w, int n) {
+        return IMPL.dot(x, xOffset, w, n);
+    }
+
+    /**
+     * acc[j] += alpha * x[xOffset + j] for j in [0, n)
+     */
+    public static void axpy(double alpha, double[] x, int xOffset, double[] acc, int n) {
+        IMPL.axpy(alpha, x, xOffset, acc, n);
+    }
+
+    public static void axpy(double alpha, float[] x, int xOffset, double[] acc, int n) {
+        IMPL.axpy(alpha, x, xOffset, acc, n);
+    }
+
+    /**
+     * sum of c_j * w[j] for j in [0, n), with c_j the unsigned code x[xOffset + j] (see QuantizedMatrix)
+     */
+    public static double dot(byte[] x, int xOffset, double[] w, int n) {
+        return IMPL.dot(x, xOffset, w, n);
+    }
+
+    public static double dot(short[] x, int xOffset, double[] w, int n) {
+        return IMPL.dot(x, xOffset, w, n);
+    }
+
+    /**
+     * acc[j] += alpha * c_j for j in [0, n), with c_j the unsigned code x[xOffset + j]
+     */
+    public static void axpy(double alpha, byte[] x, int xOffset, double[] acc, int n) {
+        IMPL.axpy(alpha, x, xOffset, acc, n);
+    }
+
+    public static void axpy(double alpha, short[] x, int xOffset, double[] acc, int n) {
+        IMPL.axpy(alpha, x, xOffset, acc, n);
+    }
+
+    /**
+     * z[i] = 1 / (1 + exp(-z[i])) for i in [from, to)
+     */
+    public static void sigmoid(double[] z, int from, int to) {
+        IMPL.sigmoid(z, from, to);
+    }
+
+    /**
+     * Same as dot with a fixed order of operations: four interleaved partial sums, no FMA
+     */
+    public static double reproducibleDot(double[] x, int xOffset, double[] w, int n) {
+        return REPRODUCIBLE.dot(x, xOffset, w, n);
+    }
+
+    public static double reproducibleDot(float[] x, int xOffset, double[] w, int n) {
+        return REPRODUCIBLE.dot(x, xOffset, w, n);
+    }
+
+    /**
+     * Same as axpy with the product and the sum rounded separately (no FMA)
+     */
+    public static void reproducibleAxpy(double alpha, double[] x, int xOffset, double[] acc, int n) {
+        REPRODUCIBLE.axpy(alpha, x, xOffset, acc, n);
+    }
+
+    public static void reproducibleAxpy(double alpha, float[] x, int xOffset, double[] acc, int n) {
+        REPRODUCIBLE.axpy(alpha, x, xOffset, acc, n);
+    }
+
+    /**
+     * Same as the dot product of codes, summed in order
+     */
+    public static double reproducibleDot(byte[] x, int xOffset, double[] w, int n) {
+        return REPRODUCIBLE.dot(x, xOffset, w, n);
+    }
+
+    public static double reproducibleDot(short[] x, int xOffset, double[] w, int n) {
+        return REPRODUCIBLE.dot(x, xOffset, w, n);
+    }
+
+    public static void reproducibleAxpy(double alpha, byte[] x, int xOffset, double[] acc, int n) {
+        REPRODUCIBLE.axpy(alpha, x, xOffset, acc, n);
+    }
+
+    public static void reproducibleAxpy(double alpha, short[] x, int xOffset, double[] acc, int n) {
+        REPRODUCIBLE.axpy(alpha, x, xOffset, acc, n);
+    }
+
+    /**
+     * Same as sigmoid with StrictMath.exp
+     */
+    public static void reproducibleSigmoid(double[] z, int from, int to) {
+        REPRODUCIBLE.sigmoid(z, from, to);
+    }
+}
@@ -0,0 +1,78 @@
+package Utils;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+
+/**
+ * Streams a file written by DataSet.saveBinary.
+ * Chunks are views over the mapped columns: rows are paged in by the OS as they are
+ * used and nothing is copied, unless the source has to scale them.
+ */
+public class MappedChunkSource extends ChunkSource {
+
+    private final Matrix X;
+    private final IntBuffer labels;
+    private final String[] varNames;
+    private final boolean normalizedFile;
+    private int position;
+
+    public MappedChunkSource(String fileName) throws IOException {
+        BinaryFormat file = new BinaryFormat();
+        file.read(fileName, false);
+        X = file.X;
+        labels = file.labels;
+        varNames = file.varNames;
+        normalizedFile = file.normalized;
+    }
+
+    public String[] getVarNames() {
+        return varNames;
+    }
+
+    /**
+     * true when the file was saved after DataSet.normalize
+     */
+    public boolean isNormalizedFile() {
+        return normalizedFile;
+    }
+
+    public int numRows() {
+        return X.numRows();
+    }
+
+    @Override
+    public int numCols() {
+        return X.numCols();
+    }
+
+    @Override
+    public void rewind() {
+        position = 0;
+    }
+
+    @Override
+    protected boolean read(Chunk chunk) {
+        int n = Math.min(chunk.capacity(), X.numRows() - position);
+        if (n <= 0)
+            return false;
+        labels.get(position, chunk.getY(), 0, n);
+
+        Matrix rows = X.rowRange(position, position + n);
+        if (hasNormalization()) {
+            // scaling writes into the rows: copy them so the mapping stays untouched
+            Matrix buffer = chunk.buffer();
+            for (int j = 0; j < rows.numCols(); j++)
+                for (int i = 0; i < n; i++)
+                    buffer.set(i, j, rows.get(i, j));
+            chunk.fill(n);
+        } else {
+            chunk.wrap(rows);
+        }
+        position += n;
+        return true;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,216 @@
+package Utils;
+
+/**
+ * Feature matrix. The dense implementations store it in a single flat array:
+ * element (i, j) lives at offset + i * rowStride + j * colStride, which covers
+ * both row-major and column-major layouts as well as row-range views that share
+ * the storage of their parent (SparseMatrix only keeps the non-zeros of every row).
+ */
+public abstract class Matrix {
+
+    public enum Layout { ROW_MAJOR, COLUMN_MAJOR }
+
+    /**
+     * Storage of the elements: 64- or 32-bit floating point, or 16- or 8-bit codes per column
+     * (see QuantizedMatrix)
+     */
+    public enum Precision {
+        DOUBLE(8), FLOAT(4), INT16(2), INT8(1);
+
+        private final int bytes;
+
+        Precision(int bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * Bytes of a stored element
+         */
+        public int bytes() {
+            return bytes;
+        }
+
+        public boolean isQuantized() {
+            return this == INT16 || this == INT8;
+        }
+    }
+
+    protected final int numRows;
+    protected final int numCols;
+    protected final int offset;
+    protected final int rowStride;
+    protected final int colStride;
+    protected final Layout layout;
+    private boolean reproducible; // fixed order of operations, see reproducible()
+
+    protected Matrix(int numRows, int numCols, int offset, int rowStride, int colStride, Layout layout) {
+        this.layout = layout;
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.offset = offset;
+        this.rowStride = rowStride;
+        this.colStride = colStride;
+    }
+
+    /**
+     * Allocate a zero-filled matrix (quantized columns hold values in [0, 1])
+     */
+    public static Matrix allocate(int numRows, int numCols, Layout layout, Precision precision) {
+        if ((long) numRows * numCols > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Matrix too large: " + numRows + " x " + numCols);
+        int rowStride = (layout == Layout.ROW_MAJOR) ? numCols : 1;
+        int colStride = (layout == Layout.ROW_MAJOR) ? 1 : numRows;
+        if (precision.isQuantized())
+            return QuantizedMatrix.allocateUnitRange(numRows, numCols, layout, precision);
+        if (precision == Precision.FLOAT)
+            return new FloatMatrix(new float[numRows * numCols], numRows, numCols, 0, rowStride, colStride, layout);
+        return new DoubleMatrix(new double[numRows * numCols], numRows, numCols, 0, rowStride, colStride, layout);
+    }
+
+    public static Matrix allocate(int numRows, int numCols) {
+        return allocate(numRows, numCols, Layout.ROW_MAJOR, Precision.DOUBLE);
+    }
+
+    public int numRows() {
+        return numRows;
+    }
+
+    public int numCols() {
+        return numCols;
+    }
+
+    public Layout getLayout() {
+        return layout;
+    }
+
+    public abstract Precision getPrecision();
+
+    /**
+     * true when only the non-zero entries are stored (see SparseMatrix)
+     */
+    public boolean isSparse() {
+        return false;
+    }
+
+    public abstract double get(int i, int j);
+
+    public abstract void set(int i, int j, double value);
+
+    /**
+     * Dot product of row i with w
+     */
+    public abstract double dotRow(int i, double[] w);
+
+    /**
+     * acc += alpha * row i
+     */
+    public abstract void addScaledRow(int i, double alpha, double[] acc);
+
+    /**
+     * out[outOffset + k] = dot product of row (from + k) with w, for rows [from, to)
+     */
+    public void dotRows(int from, int to, double[] w, double[] out, int outOffset) {
+        for (int i = from; i < to; i++)
+            out[outOffset + i - from] = dotRow(i, w);
+    }
+
+    /**
+     * acc += alpha[alphaOffset + k] * row (from + k), for rows [from, to)
+     */
+    public void addScaledRows(int from, int to, double[] alpha, int alphaOffset, double[] acc) {
+        for (int i = from; i < to; i++)
+            addScaledRow(i, alpha[alphaOffset + i - from], acc);
+    }
+
+    /**
+     * View of rows [from, to) sharing this matrix storage
+     */
+    public abstract Matrix rowRange(int from, int to);
+
+    /**
+     * View of this matrix (sharing its storage) whose row products, and the logistic kernels run
+     * over it, use a fixed order of operations (see Kernels.reproducibleDot): the results are the
+     * same bits on every CPU, with or without the Vector API. Views taken from it keep this property
+     */
+    public Matrix reproducible() {
+        return reproducible ? this : markReproducible(rowRange(0, numRows));
+    }
+
+    public boolean isReproducible() {
+        return reproducible;
+    }
+
+    /* a view keeps the kernels of the matrix it was taken from */
+    protected <M extends Matrix> M view(M view) {
+        ((Matrix) view).reproducible = reproducible;
+        return view;
+    }
+
+    /* switch a new view to the reproducible kernels */
+    protected static <M extends Matrix> M markReproducible(M view) {
+        ((Matrix) view).reproducible = true;
+        return view;
+    }
+
+    /**
+     * View of all the rows except [from, to), sharing this matrix storage
+     * (sparse matrices only support removing a first or last range)
+     */
+    public Matrix withoutRows(int from, int to) {
+        checkRange(from, to);
+        if (from == 0)
+            return rowRange(to, numRows);
+        if (to == numRows)
+            return rowRange(0, from);
+        if (isSparse())
+            throw new UnsupportedOperationException("Sparse rows cannot be viewed around a gap");
+        return view(new ExcludedRowsMatrix(this, from, to));
+    }
+
+    public double[] getRow(int i) {
+        double[] row = new double[numCols];
+        copyRow(i, row);
+        return row;
+    }
+
+    /**
+     * out[j] = element (i, j)
+     */
+    public void copyRow(int i, double[] out) {
+        for (int j = 0; j < numCols; j++)
+            out[j] = get(i, j);
+    }
+
+    /**
+     * out[outOffset + k] = element (from + k, j), for rows [from, to)
+     */
+    public void copyColumn(int j, int from, int to, double[] out, int outOffset) {
+        for (int i = from; i < to; i++)
+            out[outOffset + i - from] = get(i, j);
+    }
+
+    /**
+     * Copy into a new matrix with the given layout and precision
+     * (quantized columns are mapped onto the range of their values)
+     */
+    public Matrix convert(Layout layout, Precision precision) {
+        if (precision.isQuantized())
+            return QuantizedMatrix.quantize(this, layout, precision);
+        Matrix copy = allocate(numRows, numCols, layout, precision);
+        if (layout == Layout.ROW_MAJOR) {
+            for (int i = 0; i < numRows; i++)
+                for (int j = 0; j < numCols; j++)
+                    copy.set(i, j, get(i, j));
+        } else {
+            for (int j = 0; j < numCols; j++)
+                for (int i = 0; i < numRows; i++)
+                    copy.set(i, j, get(i, j));
+        }
+        return copy;
+    }
+
+    protected void checkRange(int from, int to) {
+        if (from < 0 || to > numRows || from > to)
+            throw new IndexOutOfBoundsException("Row range [" + from + ", " + to + ") out of [0, " + numRows + ")");
+    }
+}
@@ -0,0 +1,263 @@
+package Utils;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Matrix of 8- or 16-bit unsigned codes, one linear mapping per column:
+ * element (i, j) = min[j] + code * step[j], with 255 (INT8) or 65535 (INT16) steps between the
+ * smallest and the largest value of the column. A row takes 1/8 (INT8) or 1/4 (INT16) of the bytes
+ * of a double row; binary columns are stored exactly. Values are dequantized on the fly and all
+ * the products are accumulated in double.
+ * Values written with set are rounded to the nearest code and clamped to the range of the column.
+ */
+public class QuantizedMatrix extends Matrix {
+
+    private static final int BLOCK_ROWS = 4096; // rows quantized by a single task
+    private static final ThreadLocal<double[]> SCRATCH = ThreadLocal.withInitial(() -> new double[0]);
+
+    private final byte[] bytes; // codes of INT8, null for INT16
+    private final short[] shorts; // codes of INT16, null for INT8
+    private final int levels; // largest code
+    private final int storageRows; // rows of the matrix owning the storage
+    private final double[] mins; // shared with every view
+    private final double[] steps;
+
+    private QuantizedMatrix(byte[] bytes, short[] shorts, double[] mins, double[] steps, int storageRows,
+                            int numRows, int numCols, int offset, int rowStride, int colStride, Layout layout) {
+        super(numRows, numCols, offset, rowStride, colStride, layout);
+        this.bytes = bytes;
+        this.shorts = shorts;
+        this.levels = (bytes != null) ? 0xFF : 0xFFFF;
+        this.storageRows = storageRows;
+        this.mins = mins;
+        this.steps = steps;
+    }
+
+    /**
+     * Zero-filled matrix whose columns hold values in [0, 1] (e.g. normalized features)
+     */
+    static QuantizedMatrix allocateUnitRange(int numRows, int numCols, Layout layout, Precision precision) {
+        QuantizedMatrix X = create(numRows, numCols, layout, precision);
+        for (int j = 0; j < numCols; j++)
+            X.steps[j] = 1.0 / X.levels;
+        return X;
+    }
+
+    /* zero codes, zero mapping */
+    private static QuantizedMatrix create(int numRows, int numCols, Layout layout, Precision precision) {
+        if (!precision.isQuantized())
+            throw new IllegalArgumentException("Not a quantized precision: " + precision);
+        int rowStride = (layout == Layout.ROW_MAJOR) ? numCols : 1;
+        int colStride = (layout == Layout.ROW_MAJOR) ? 1 : numRows;
+        int size = numRows * numCols;
+        return new QuantizedMatrix((precision == Precision.INT8) ? new byte[size] : null,
+                (precision == Precision.INT16) ? new short[size] : null, new double[numCols], new double[numCols],
+                numRows, numRows, numCols, 0, rowStride, colStride, layout);
+    }
+
+    /**
+     * Quantized copy of source, every column mapped onto the range of its values
+     */
+    static QuantizedMatrix quantize(Matrix source, Layout layout, Precision precision) {
+        int n = source.numRows();
+        int d = source.numCols();
+        ColumnStatistics stats = ColumnStatistics.compute(source);
+        QuantizedMatrix X = create(n, d, layout, precision);
+        for (int j = 0; j < d && n > 0; j++) {
+            X.mins[j] = stats.getMin(j);
+            X.steps[j] = (stats.getMax(j) - stats.getMin(j)) / X.levels;
+        }
+        // every block of rows writes its own codes
+        IntStream.range(0, (n + BLOCK_ROWS - 1) / BLOCK_ROWS).parallel().forEach(b -> {
+            double[] row = new double[d];
+            for (int i = b * BLOCK_ROWS; i < Math.min(n, (b + 1) * BLOCK_ROWS); i++) {
+                source.copyRow(i, row);
+                for (int j = 0; j < d; j++)
+                    X.set(i, j, row[j]);
+            }
+        });
+        return X;
+    }
+
+    @Override
+    public Precision getPrecision() {
+        return (bytes != null) ? Precision.INT8 : Precision.INT16;
+    }
+
+    private int code(int p) {
+        return (bytes != null) ? bytes[p] & 0xFF : shorts[p] & 0xFFFF;
+    }
+
+    @Override
+    public double get(int i, int j) {
+        return mins[j] + code(offset + i * rowStride + j * colStride) * steps[j];
+    }
+
+    @Override
+    public void set(int i, int j, double value) {
+        double step = steps[j];
+        long code = (step > 0.0) ? Math.round((value - mins[j]) / step) : 0;
+        code = Math.max(0, Math.min(levels, code));
+        int p = offset + i * rowStride + j * colStride;
+        if (bytes != null)
+            bytes[p] = (byte) code;
+        else
+            shorts[p] = (short) code;
+    }
+
+    @Override
+    public double dotRow(int i, double[] w) {
+        double z = 0.0;
+        for (int j = 0; j < numCols; j++)
+            z += mins[j] * w[j];
+        int base = offset + i * rowStride;
+        for (int j = 0, p = base; j < numCols; j++, p += colStride)
+            z += code(p) * (steps[j] * w[j]);
+        return z;
+    }
+
+    /* the weights are scaled once per block: then a row costs one multiply-add per code */
+    @Override
+    public void dotRows(int from, int to, double[] w, double[] out, int outOffset) {
+        double[] scaled = scratch();
+        double bias = 0.0;
+        for (int j = 0; j < numCols; j++) {
+            bias += mins[j] * w[j];
+            scaled[j] = steps[j] * w[j];
+        }
+        for (int i = from; i < to; i++) {
+            int base = offset + i * rowStride;
+            double z = bias;
+            if (bytes != null && colStride == 1) {
+                z += isReproducible() ? Kernels.reproducibleDot(bytes, base, scaled, numCols)
+                        : Kernels.dot(bytes, base, scaled, numCols);
+            } else if (colStride == 1) {
+                z += isReproducible() ? Kernels.reproducibleDot(shorts, base, scaled, numCols)
+                        : Kernels.dot(shorts, base, scaled, numCols);
+            } else {
+                for (int j = 0, p = base; j < numCols; j++, p += colStride)
+                    z += code(p) * scaled[j];
+            }
+            out[outOffset + i - from] = z;
+        }
+    }
+
+    /*
+     * the codes of the block are summed first, then mapped once:
+     * sum of alpha_i x_ij = min[j] * sum of alpha_i + step[j] * sum of alpha_i code_ij
+     */
+    @Override
+    public void addScaledRows(int from, int to, double[] alpha, int alphaOffset, double[] acc) {
+        double[] codeSums = scratch();
+        Arrays.fill(codeSums, 0, numCols, 0.0);
+        double alphaSum = 0.0;
+        for (int i = from; i < to; i++) {
+            double a = alpha[alphaOffset + i - from];
+            alphaSum += a;
+            int base = offset + i * rowStride;
+            if (bytes != null && colStride == 1) {
+                if (isReproducible())
+                    Kernels.reproducibleAxpy(a, bytes, base, codeSums, numCols);
+                else
+                    Kernels.axpy(a, bytes, base, codeSums, numCols);
+            } else if (colStride == 1) {
+                if (isReproducible())
+                    Kernels.reproducibleAxpy(a, shorts, base, codeSums, numCols);
+                else
+                    Kernels.axpy(a, shorts, base, codeSums, numCols);
+            } else {
+                for (int j = 0, p = base; j < numCols; j++, p += colStride)
+                    codeSums[j] += a * code(p);
+            }
+        }
+        for (int j = 0; j < numCols; j++)
+            acc[j] += mins[j] * alphaSum + steps[j] * codeSums[j];
+    }
+
+    @Override
+    public void copyColumn(int j, int from, int to, double[] out, int outOffset) {
+        double min = mins[j];
+        double step = steps[j];
+        int base = offset + from * rowStride + j * colStride;
+        if (bytes != null && rowStride == 1) {
+            for (int k = 0; k < to - from; k++)
+                out[outOffset + k] = min + (bytes[base + k] & 0xFF) * step;
+        } else if (rowStride == 1) {
+            for (int k = 0; k < to - from; k++)
+                out[outOffset + k] = min + (shorts[base + k] & 0xFFFF) * step;
+        } else {
+            for (int k = 0, p = base; k < to - from; k++, p += rowStride)
+                out[outOffset + k] = min + code(p) * step;
+        }
+    }
+
+    /* per-thread buffer of numCols doubles, reused by the block methods */
+    private double[] scratch() {
+        double[] buffer = SCRATCH.get();
+        if (buffer.length < numCols) {
+            buffer = new double[numCols];
+            SCRATCH.set(buffer);
+        }
+        return buffer;
+    }
+
+    @Override
+    public void addScaledRow(int i, double alpha, double[] acc) {
+        int base = offset + i * rowStride;
+        if (bytes != null && colStride == 1) {
+            for (int j = 0; j < numCols; j++)
+                acc[j] += alpha * (mins[j] + (bytes[base + j] & 0xFF) * steps[j]);
+        } else if (colStride == 1) {
+            for (int j = 0; j < numCols; j++)
+                acc[j] += alpha * (mins[j] + (shorts[base + j] & 0xFFFF) * steps[j]);
+        } else {
+            for (int j = 0, p = base; j < numCols; j++, p += colStride)
+                acc[j] += alpha * (mins[j] + code(p) * steps[j]);
+        }
+    }
+
+    @Override
+    public Matrix rowRange(int from, int to) {
+        checkRange(from, to);
+        return view(new QuantizedMatrix(bytes, shorts, mins, steps, storageRows, to - from, numCols,
+                offset + from * rowStride, rowStride, colStride, layout));
+    }
+
+    /**
+     * The same precision keeps the codes and their mapping (nothing is quantized again)
+     */
+    @Override
+    public Matrix convert(Layout layout, Precision precision) {
+        if (precision != getPrecision())
+            return super.convert(layout, precision);
+        QuantizedMatrix copy = create(numRows, numCols, layout, precision);
+        System.arraycopy(mins, 0, copy.mins, 0, numCols);
+        System.arraycopy(steps, 0, copy.steps, 0, numCols);
+        for (int i = 0; i < numRows; i++) {
+            for (int j = 0; j < numCols; j++) {
+                int p = offset + i * rowStride + j * colStride;
+                int q = i * copy.rowStride + j * copy.colStride;
+                if (bytes != null)
+                    copy.bytes[q] = bytes[p];
+                else
+                    copy.shorts[q] = shorts[p];
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * x' = (x - offsets[j]) / scales[j] for every column, by changing the mapping of the codes only
+     * (exact, no code is rewritten). The mapping is shared by all the views of the storage, so this
+     * is only allowed on the matrix owning it
+     */
+    void transformColumns(double[] offsets, double[] scales) {
+        if (offset != 0 || numRows != storageRows)
+            throw new IllegalStateException("Only the whole quantized matrix can be scaled");
+        for (int j = 0; j < numCols; j++) {
+            mins[j] = (mins[j] - offsets[j]) / scales[j];
+            steps[j] = steps[j] / scales[j];
+        }
+    }
+}
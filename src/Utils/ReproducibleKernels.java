@@ -0,0 +1,90 @@
+package Utils;
+
+/*
+ * Kernels with a fixed order of operations, used by the reproducible matrices (Matrix.reproducible).
+ * A dot product keeps four partial sums s0..s3 (s_k over the elements j with j % 4 == k), adds them
+ * as (s0 + s2) + (s1 + s3), then the remaining elements in order. Every product and every sum is
+ * rounded on its own (no FMA) and the sigmoid uses StrictMath.exp. ReproducibleVectorKernels does
+ * the same operations on SIMD lanes, so both give the same bits on any CPU. The dot products of
+ * quantized codes are summed in order and shared by both.
+ */
+class ReproducibleKernels implements KernelProvider {
+
+    @Override
+    public double dot(double[] x, int xOffset, double[] w, int n) {
+        double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+        int j = 0;
+        for (; j + 4 <= n; j += 4) {
+            s0 += x[xOffset + j] * w[j];
+            s1 += x[xOffset + j + 1] * w[j + 1];
+            s2 += x[xOffset + j + 2] * w[j + 2];
+            s3 += x[xOffset + j + 3] * w[j + 3];
+        }
+        double z = (s0 + s2) + (s1 + s3);
+        for (; j < n; j++)
+            z += x[xOffset + j] * w[j];
+        return z;
+    }
+
+    @Override
+    public double dot(float[] x, int xOffset, double[] w, int n) {
+        double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+        int j = 0;
+        for (; j + 4 <= n; j += 4) {
+            s0 += x[xOffset + j] * w[j];
+            s1 += x[xOffset + j + 1] * w[j + 1];
+            s2 += x[xOffset + j + 2] * w[j + 2];
+            s3 += x[xOffset + j + 3] * w[j + 3];
+        }
+        double z = (s0 + s2) + (s1 + s3);
+        for (; j < n; j++)
+            z += x[xOffset + j] * w[j];
+        return z;
+    }
+
+    @Override
+    public void axpy(double alpha, double[] x, int xOffset, double[] acc, int n) {
+        for (int j = 0; j < n; j++)
+            acc[j] += alpha * x[xOffset + j];
+    }
+
+    @Override
+    public void axpy(double alpha, float[] x, int xOffset, double[] acc, int n) {
+        for (int j = 0; j < n; j++)
+            acc[j] += alpha * x[xOffset + j];
+    }
+
+    @Override
+    public double dot(byte[] x, int xOffset, double[] w, int n) {
+        double z = 0.0;
+        for (int j = 0; j < n; j++)
+            z += (x[xOffset + j] & 0xFF) * w[j];
+        return z;
+    }
+
+    @Override
+    public double dot(short[] x, int xOffset, double[] w, int n) {
+        double z = 0.0;
+        for (int j = 0; j < n; j++)
+            z += (x[xOffset + j] & 0xFFFF) * w[j];
+        return z;
+    }
+
+    @Override
+    public void axpy(double alpha, byte[] x, int xOffset, double[] acc, int n) {
+        for (int j = 0; j < n; j++)
+            acc[j] += alpha * (x[xOffset + j] & 0xFF);
+    }
+
+    @Override
+    public void axpy(double alpha, short[] x, int xOffset, double[] acc, int n) {
+        for (int j = 0; j < n; j++)
+            acc[j] += alpha * (x[xOffset + j] & 0xFFFF);
+    }
+
+    @Override
+    public void sigmoid(double[] z, int from, int to) {
+        for (int i = from; i < to; i++)
+            z[i] = 1.0 / (1.0 + StrictMath.exp(-z[i]));
+    }
+}
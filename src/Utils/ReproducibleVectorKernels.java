@@ -0,0 +1,85 @@
+package Utils;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * ReproducibleKernels on jdk.incubator.vector, with the same bits.
+ * The dot products use 128-bit vectors (available on every SIMD instruction set) whatever the
+ * CPU offers: two vectors of two lanes hold the partial sums (s0, s1) and (s2, s3), which are
+ * added lane-wise and then across. The AXPYs are element-wise, so any width gives the same
+ * result as long as the product and the sum are rounded separately (mul then add, no FMA).
+ * Only loaded through reflection by Kernels.
+ */
+class ReproducibleVectorKernels extends ReproducibleKernels {
+
+    private static final VectorSpecies<Double> D128 = DoubleVector.SPECIES_128;
+    private static final VectorSpecies<Float> F128 = FloatVector.SPECIES_128;
+    private static final VectorSpecies<Double> DS = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FS = VectorSpecies.of(float.class, VectorShape.forBitSize(DS.vectorBitSize() / 2));
+
+    @Override
+    public double dot(double[] x, int xOffset, double[] w, int n) {
+        DoubleVector even = DoubleVector.zero(D128); // (s0, s1)
+        DoubleVector odd = DoubleVector.zero(D128); // (s2, s3)
+        int j = 0;
+        for (; j + 4 <= n; j += 4) {
+            even = even.add(DoubleVector.fromArray(D128, x, xOffset + j).mul(DoubleVector.fromArray(D128, w, j)));
+            odd = odd.add(DoubleVector.fromArray(D128, x, xOffset + j + 2).mul(DoubleVector.fromArray(D128, w, j + 2)));
+        }
+        DoubleVector sum = even.add(odd); // (s0 + s2, s1 + s3)
+        double z = sum.lane(0) + sum.lane(1);
+        for (; j < n; j++)
+            z += x[xOffset + j] * w[j];
+        return z;
+    }
+
+    @Override
+    public double dot(float[] x, int xOffset, double[] w, int n) {
+        DoubleVector even = DoubleVector.zero(D128);
+        DoubleVector odd = DoubleVector.zero(D128);
+        int j = 0;
+        for (; j + 4 <= n; j += 4) {
+            FloatVector xv = FloatVector.fromArray(F128, x, xOffset + j);
+            DoubleVector low = (DoubleVector) xv.convertShape(VectorOperators.F2D, D128, 0);
+            DoubleVector high = (DoubleVector) xv.convertShape(VectorOperators.F2D, D128, 1);
+            even = even.add(low.mul(DoubleVector.fromArray(D128, w, j)));
+            odd = odd.add(high.mul(DoubleVector.fromArray(D128, w, j + 2)));
+        }
+        DoubleVector sum = even.add(odd);
+        double z = sum.lane(0) + sum.lane(1);
+        for (; j < n; j++)
+            z += x[xOffset + j] * w[j];
+        return z;
+    }
+
+    @Override
+    public void axpy(double alpha, double[] x, int xOffset, double[] acc, int n) {
+        DoubleVector a = DoubleVector.broadcast(DS, alpha);
+        int bound = DS.loopBound(n);
+        int j = 0;
+        for (; j < bound; j += DS.length()) {
+            DoubleVector xv = DoubleVector.fromArray(DS, x, xOffset + j);
+            DoubleVector.fromArray(DS, acc, j).add(xv.mul(a)).intoArray(acc, j);
+        }
+        for (; j < n; j++)
+            acc[j] += alpha * x[xOffset + j];
+    }
+
+    @Override
+    public void axpy(double alpha, float[] x, int xOffset, double[] acc, int n) {
+        DoubleVector a = DoubleVector.broadcast(DS, alpha);
+        int bound = FS.loopBound(n);
+        int j = 0;
+        for (; j < bound; j += FS.length()) {
+            DoubleVector xv = (DoubleVector) FloatVector.fromArray(FS, x, xOffset + j)
+                    .convertShape(VectorOperators.F2D, DS, 0);
+            DoubleVector.fromArray(DS, acc, j).add(xv.mul(a)).intoArray(acc, j);
+        }
+        for (; j < n; j++)
+            acc[j] += alpha * x[xOffset + j];
+    }
+}
@@ -0,0 +1,67 @@
+package Utils;
+
+/* plain loops, used when the Vector API is not available */
+class ScalarKernels implements KernelProvider {
+
+    @Override
+    public double dot(double[] x, int xOffset, double[] w, int n) {
+        double z = 0.0;
+        for (int j = 0; j < n; j++)
+            z += x[xOffset + j] * w[j];
+        return z;
+    }
+
+    @Override
+    public double dot(float[] x, int xOffset, double[] w, int n) {
+        double z = 0.0;
+        for (int j = 0; j < n; j++)
+            z += x[xOffset + j] * w[j];
+        return z;
+    }
+
+    @Override
+    public void axpy(double alpha, double[] x, int xOffset, double[] acc, int n) {
+        for (int j = 0; j < n; j++)
+            acc[j] += alpha * x[xOffset + j];
+    }
+
+    @Override
+    public void axpy(double alpha, float[] x, int xOffset, double[] acc, int n) {
+        for (int j = 0; j < n; j++)
+            acc[j] += alpha * x[xOffset + j];
+    }
+
+    @Override
+    public double dot(byte[] x, int xOffset, double[] w, int n) {
+        double z = 0.0;
+        for (int j = 0; j < n; j++)
+            z += (x[xOffset + j] & 0xFF) * w[j];
+        return z;
+    }
+
+    @Override
+    public double dot(short[] x, int xOffset, double[] w, int n) {
+        double z = 0.0;
+        for (int j = 0; j < n; j++)
+            z += (x[xOffset + j] & 0xFFFF) * w[j];
+        return z;
+    }
+
+    @Override
+    public void axpy(double alpha, byte[] x, int xOffset, double[] acc, int n) {
+        for (int j = 0; j < n; j++)
+            acc[j] += alpha * (x[xOffset + j] & 0xFF);
+    }
+
+    @Override
+    public void axpy(double alpha, short[] x, int xOffset, double[] acc, int n) {
+        for (int j = 0; j < n; j++)
+            acc[j] += alpha * (x[xOffset + j] & 0xFFFF);
+    }
+
+    @Override
+    public void sigmoid(double[] z, int from, int to) {
+        for (int i = from; i < to; i++)
+            z[i] = 1.0 / (1.0 + Math.exp(-z[i]));
+    }
+}
@@ -0,0 +1,143 @@
+package Utils;
+
+import java.util.stream.IntStream;
+
+/**
+ * Fitted feature scaling, kept to transform test and production data exactly
+ * like the training data: x' = (x - offset) / scale for every column.
+ * Constant columns (e.g. the bias) are left unchanged.
+ */
+public class Scaler {
+
+    public enum Type {
+        MIN_MAX,
+        Z_SCORE,
+        MAX_ABS // divide by the largest absolute value: keeps zeros at zero, for sparse data
+    }
+
+    private static final int BLOCK_ROWS = 4096; // rows transformed by a single task
+
+    private final Type type;
+    private final double[] offsets;
+    private final double[] scales;
+
+    public Scaler(Type type, double[] offsets, double[] scales) {
+        if (offsets.length != scales.length)
+            throw new IllegalArgumentException("Expected as many offsets as scales");
+        this.type = type;
+        this.offsets = offsets.clone();
+        this.scales = scales.clone();
+    }
+
+    /**
+     * Scaler of the given type for data with these statistics
+     */
+    public static Scaler fit(ColumnStatistics stats, Type type) {
+        int d = stats.numCols();
+        double[] offsets = new double[d];
+        double[] scales = new double[d];
+        for (int j = 0; j < d; j++) {
+            double min = stats.getMin(j);
+            double max = stats.getMax(j);
+            if (max == min || !(max > min)) {
+                // constant (or empty) column: identity
+                offsets[j] = 0.0;
+                scales[j] = 1.0;
+            } else if (type == Type.MIN_MAX) {
+                offsets[j] = min;
+                scales[j] = max - min;
+            } else if (type == Type.MAX_ABS) {
+                offsets[j] = 0.0;
+                scales[j] = Math.max(Math.abs(min), Math.abs(max));
+            } else {
+                offsets[j] = stats.getMean(j);
+                scales[j] = Math.sqrt(stats.getVariance(j));
+            }
+        }
+        return new Scaler(type, offsets, scales);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int numCols() {
+        return offsets.length;
+    }
+
+    public double[] getOffsets() {
+        return offsets.clone();
+    }
+
+    public double[] getScales() {
+        return scales.clone();
+    }
+
+    /**
+     * Scale a row in place
+     */
+    public void transformRow(double[] row) {
+        for (int j = 0; j < offsets.length; j++)
+            row[j] = (row[j] - offsets[j]) / scales[j];
+    }
+
+    /**
+     * Scale every element of X in place, in parallel blocks
+     * (blocks of rows for row-major matrices, columns for column-major ones)
+     */
+    public void transform(Matrix X) {
+        if (X.numCols() != offsets.length)
+            throw new IllegalArgumentException("Expected " + offsets.length + " columns, got " + X.numCols());
+        int n = X.numRows();
+        if (X.isSparse()) {
+            transformSparse((SparseMatrix) X);
+        } else if (X instanceof QuantizedMatrix) {
+            ((QuantizedMatrix) X).transformColumns(offsets, scales); // only the mapping of the codes changes
+        } else if (X.getLayout() == Matrix.Layout.COLUMN_MAJOR) {
+            IntStream columns = IntStream.range(0, offsets.length);
+            if (n > BLOCK_ROWS)
+                columns = columns.parallel();
+            columns.forEach(j -> transformColumn(X, j));
+        } else {
+            int numBlocks = (n + BLOCK_ROWS - 1) / BLOCK_ROWS;
+            IntStream blocks = IntStream.range(0, numBlocks);
+            if (numBlocks > 1)
+                blocks = blocks.parallel();
+            blocks.forEach(b -> transformRows(X, b * BLOCK_ROWS, Math.min(n, (b + 1) * BLOCK_ROWS)));
+        }
+    }
+
+    /* only the stored entries change, so the zeros must stay zeros */
+    private void transformSparse(SparseMatrix X) {
+        for (int j = 0; j < offsets.length; j++)
+            if (offsets[j] != 0.0)
+                throw new IllegalArgumentException("Column " + j + " has a non-zero offset: "
+                        + type + " scaling would fill a sparse matrix (use MAX_ABS)");
+        if (X.numRows() == 0)
+            return;
+        int[] colIndices = X.getColumnIndices();
+        double[] values = X.getValues();
+        int start = X.rowStart(0);
+        int end = X.rowEnd(X.numRows() - 1);
+        IntStream blocks = IntStream.range(0, (end - start + BLOCK_ROWS - 1) / BLOCK_ROWS);
+        blocks.parallel().forEach(b -> {
+            for (int k = start + b * BLOCK_ROWS, last = Math.min(end, k + BLOCK_ROWS); k < last; k++)
+                values[k] /= scales[colIndices[k]];
+        });
+    }
+
+    private void transformRows(Matrix X, int from, int to) {
+        int d = offsets.length;
+        for (int i = from; i < to; i++)
+            for (int j = 0; j < d; j++)
+                if (scales[j] != 1.0 || offsets[j] != 0.0)
+                    X.set(i, j, (X.get(i, j) - offsets[j]) / scales[j]);
+    }
+
+    private void transformColumn(Matrix X, int j) {
+        if (scales[j] == 1.0 && offsets[j] == 0.0)
+            return;
+        for (int i = 0; i < X.numRows(); i++)
+            X.set(i, j, (X.get(i, j) - offsets[j]) / scales[j]);
+    }
+}
@@ -0,0 +1,161 @@
+package Utils;
+
+import java.util.Arrays;
+
+/**
+ * Matrix in compressed sparse row (CSR) format: only the non-zero entries are stored.
+ * The non-zeros of row i are values[k], in column colIndices[k], for k in
+ * [rowPointers[offset + i], rowPointers[offset + i + 1]), with the columns of a row
+ * in increasing order. Dot products and gradient updates cost one operation per
+ * non-zero, independently of numCols.
+ * The structure is fixed: set can change a stored entry, but not add a new one.
+ */
+public class SparseMatrix extends Matrix {
+
+    private final int[] rowPointers;
+    private final int[] colIndices;
+    private final double[] values;
+
+    public SparseMatrix(int[] rowPointers, int[] colIndices, double[] values, int numRows, int numCols) {
+        this(rowPointers, colIndices, values, numRows, numCols, 0);
+    }
+
+    private SparseMatrix(int[] rowPointers, int[] colIndices, double[] values, int numRows, int numCols,
+                         int offset) {
+        super(numRows, numCols, offset, 0, 0, Layout.ROW_MAJOR);
+        this.rowPointers = rowPointers;
+        this.colIndices = colIndices;
+        this.values = values;
+    }
+
+    /**
+     * Copy the non-zero entries of a dense matrix
+     */
+    public static SparseMatrix fromDense(Matrix X) {
+        int n = X.numRows();
+        int d = X.numCols();
+        int[] rowPointers = new int[n + 1];
+        double[] row = new double[d];
+        for (int i = 0; i < n; i++) {
+            X.copyRow(i, row);
+            int count = 0;
+            for (int j = 0; j < d; j++)
+                if (row[j] != 0.0)
+                    count++;
+            rowPointers[i + 1] = Math.addExact(rowPointers[i], count);
+        }
+        int[] colIndices = new int[rowPointers[n]];
+        double[] values = new double[rowPointers[n]];
+        for (int i = 0, k = 0; i < n; i++) {
+            X.copyRow(i, row);
+            for (int j = 0; j < d; j++) {
+                if (row[j] != 0.0) {
+                    colIndices[k] = j;
+                    values[k++] = row[j];
+                }
+            }
+        }
+        return new SparseMatrix(rowPointers, colIndices, values, n, d);
+    }
+
+    @Override
+    public Precision getPrecision() {
+        return Precision.DOUBLE;
+    }
+
+    @Override
+    public boolean isSparse() {
+        return true;
+    }
+
+    /**
+     * Number of stored entries
+     */
+    public int nonZeros() {
+        return rowPointers[offset + numRows] - rowPointers[offset];
+    }
+
+    /**
+     * First stored entry of row i (index into getColumnIndices / getValues)
+     */
+    public int rowStart(int i) {
+        return rowPointers[offset + i];
+    }
+
+    /**
+     * One past the last stored entry of row i
+     */
+    public int rowEnd(int i) {
+        return rowPointers[offset + i + 1];
+    }
+
+    public int[] getColumnIndices() {
+        return colIndices;
+    }
+
+    public double[] getValues() {
+        return values;
+    }
+
+    @Override
+    public double get(int i, int j) {
+        int k = find(i, j);
+        return (k >= 0) ? values[k] : 0.0;
+    }
+
+    @Override
+    public void set(int i, int j, double value) {
+        int k = find(i, j);
+        if (k >= 0)
+            values[k] = value;
+        else if (value != 0.0)
+            throw new UnsupportedOperationException("Cannot add a non-zero entry at (" + i + ", " + j + ")");
+    }
+
+    /* position of entry (i, j) among the stored entries, or -1 */
+    private int find(int i, int j) {
+        int start = rowPointers[offset + i];
+        int end = rowPointers[offset + i + 1];
+        int k = Arrays.binarySearch(colIndices, start, end, j);
+        return (k >= 0) ? k : -1;
+    }
+
+    @Override
+    public double dotRow(int i, double[] w) {
+        double z = 0.0;
+        for (int k = rowPointers[offset + i], end = rowPointers[offset + i + 1]; k < end; k++)
+            z += values[k] * w[colIndices[k]];
+        return z;
+    }
+
+    @Override
+    public void addScaledRow(int i, double alpha, double[] acc) {
+        for (int k = rowPointers[offset + i], end = rowPointers[offset + i + 1]; k < end; k++)
+            acc[colIndices[k]] += alpha * values[k];
+    }
+
+    @Override
+    public void copyRow(int i, double[] out) {
+        Arrays.fill(out, 0, numCols, 0.0);
+        for (int k = rowPointers[offset + i], end = rowPointers[offset + i + 1]; k < end; k++)
+            out[colIndices[k]] = values[k];
+    }
+
+    @Override
+    public Matrix rowRange(int from, int to) {
+        checkRange(from, to);
+        return view(new SparseMatrix(rowPointers, colIndices, values, to - from, numCols, offset + from));
+    }
+
+    /**
+     * Dense copy (beware of the size with many columns)
+     */
+    @Override
+    public Matrix convert(Layout layout, Precision precision) {
+        Matrix copy = allocate(numRows, numCols, layout, precision);
+        for (int i = 0; i < numRows; i++)
+            for (int k = rowPointers[offset + i], end = rowPointers[offset + i + 1]; k < end; k++)
+                copy.set(i, colIndices[k], values[k]);
+        return copy;
+    }
+}
@@ -0,0 +1,182 @@
+package Utils;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * SIMD kernels on jdk.incubator.vector.
+ * Only loaded through reflection by Kernels, so the rest of the code runs without the module.
+ * Float rows use a float species with as many lanes as the double one and are widened before
+ * multiplying, so accumulation always happens in double.
+ * Quantized codes are loaded in byte or short vectors of at least 64 bits and widened to double
+ * one part at a time. The widening conversions are signed: flipping the top bit first turns an
+ * unsigned code c into the signed c - 128 (or c - 32768), which is added back in double (exact).
+ */
+class VectorKernels implements KernelProvider {
+
+    private static final VectorSpecies<Double> DS = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FS =
+            VectorSpecies.of(float.class, VectorShape.forBitSize(DS.vectorBitSize() / 2));
+    private static final VectorSpecies<Byte> BS =
+            VectorSpecies.of(byte.class, VectorShape.forBitSize(Math.max(64, DS.vectorBitSize() / 8)));
+    private static final VectorSpecies<Short> SS =
+            VectorSpecies.of(short.class, VectorShape.forBitSize(Math.max(64, DS.vectorBitSize() / 4)));
+    private static final int BYTE_PARTS = BS.length() / DS.length(); // double vectors per byte vector
+    private static final int SHORT_PARTS = SS.length() / DS.length();
+
+    @Override
+    public double dot(double[] x, int xOffset, double[] w, int n) {
+        DoubleVector acc = DoubleVector.zero(DS);
+        int bound = DS.loopBound(n);
+        int j = 0;
+        for (; j < bound; j += DS.length()) {
+            DoubleVector xv = DoubleVector.fromArray(DS, x, xOffset + j);
+            DoubleVector wv = DoubleVector.fromArray(DS, w, j);
+            acc = xv.fma(wv, acc);
+        }
+        double z = acc.reduceLanes(VectorOperators.ADD);
+        for (; j < n; j++)
+            z += x[xOffset + j] * w[j];
+        return z;
+    }
+
+    @Override
+    public double dot(float[] x, int xOffset, double[] w, int n) {
+        DoubleVector acc = DoubleVector.zero(DS);
+        int bound = FS.loopBound(n);
+        int j = 0;
+        for (; j < bound; j += FS.length()) {
+            DoubleVector xv = widen(x, xOffset + j);
+            DoubleVector wv = DoubleVector.fromArray(DS, w, j);
+            acc = xv.fma(wv, acc);
+        }
+        double z = acc.reduceLanes(VectorOperators.ADD);
+        for (; j < n; j++)
+            z += x[xOffset + j] * w[j];
+        return z;
+    }
+
+    @Override
+    public void axpy(double alpha, double[] x, int xOffset, double[] acc, int n) {
+        DoubleVector a = DoubleVector.broadcast(DS, alpha);
+        int bound = DS.loopBound(n);
+        int j = 0;
+        for (; j < bound; j += DS.length()) {
+            DoubleVector xv = DoubleVector.fromArray(DS, x, xOffset + j);
+            DoubleVector av = DoubleVector.fromArray(DS, acc, j);
+            xv.fma(a, av).intoArray(acc, j);
+        }
+        for (; j < n; j++)
+            acc[j] += alpha * x[xOffset + j];
+    }
+
+    @Override
+    public void axpy(double alpha, float[] x, int xOffset, double[] acc, int n) {
+        DoubleVector a = DoubleVector.broadcast(DS, alpha);
+        int bound = FS.loopBound(n);
+        int j = 0;
+        for (; j < bound; j += FS.length()) {
+            DoubleVector xv = widen(x, xOffset + j);
+            DoubleVector av = DoubleVector.fromArray(DS, acc, j);
+            xv.fma(a, av).intoArray(acc, j);
+        }
+        for (; j < n; j++)
+            acc[j] += alpha * x[xOffset + j];
+    }
+
+    @Override
+    public double dot(byte[] x, int xOffset, double[] w, int n) {
+        DoubleVector acc = DoubleVector.zero(DS);
+        DoubleVector shift = DoubleVector.broadcast(DS, 128.0);
+        int bound = BS.loopBound(n);
+        int j = 0;
+        for (; j < bound; j += BS.length()) {
+            ByteVector codes = ByteVector.fromArray(BS, x, xOffset + j).lanewise(VectorOperators.XOR, (byte) 0x80);
+            for (int part = 0; part < BYTE_PARTS; part++) {
+                DoubleVector xv = ((DoubleVector) codes.convertShape(VectorOperators.B2D, DS, part)).add(shift);
+                acc = xv.fma(DoubleVector.fromArray(DS, w, j + part * DS.length()), acc);
+            }
+        }
+        double z = acc.reduceLanes(VectorOperators.ADD);
+        for (; j < n; j++)
+            z += (x[xOffset + j] & 0xFF) * w[j];
+        return z;
+    }
+
+    @Override
+    public double dot(short[] x, int xOffset, double[] w, int n) {
+        DoubleVector acc = DoubleVector.zero(DS);
+        DoubleVector shift = DoubleVector.broadcast(DS, 32768.0);
+        int bound = SS.loopBound(n);
+        int j = 0;
+        for (; j < bound; j += SS.length()) {
+            ShortVector codes = ShortVector.fromArray(SS, x, xOffset + j).lanewise(VectorOperators.XOR, (short) 0x8000);
+            for (int part = 0; part < SHORT_PARTS; part++) {
+                DoubleVector xv = ((DoubleVector) codes.convertShape(VectorOperators.S2D, DS, part)).add(shift);
+                acc = xv.fma(DoubleVector.fromArray(DS, w, j + part * DS.length()), acc);
+            }
+        }
+        double z = acc.reduceLanes(VectorOperators.ADD);
+        for (; j < n; j++)
+            z += (x[xOffset + j] & 0xFFFF) * w[j];
+        return z;
+    }
+
+    @Override
+    public void axpy(double alpha, byte[] x, int xOffset, double[] acc, int n) {
+        DoubleVector a = DoubleVector.broadcast(DS, alpha);
+        DoubleVector shift = DoubleVector.broadcast(DS, 128.0);
+        int bound = BS.loopBound(n);
+        int j = 0;
+        for (; j < bound; j += BS.length()) {
+            ByteVector codes = ByteVector.fromArray(BS, x, xOffset + j).lanewise(VectorOperators.XOR, (byte) 0x80);
+            for (int part = 0; part < BYTE_PARTS; part++) {
+                int k = j + part * DS.length();
+                DoubleVector xv = ((DoubleVector) codes.convertShape(VectorOperators.B2D, DS, part)).add(shift);
+                xv.fma(a, DoubleVector.fromArray(DS, acc, k)).intoArray(acc, k);
+            }
+        }
+        for (; j < n; j++)
+            acc[j] += alpha * (x[xOffset + j] & 0xFF);
+    }
+
+    @Override
+    public void axpy(double alpha, short[] x, int xOffset, double[] acc, int n) {
+        DoubleVector a = DoubleVector.broadcast(DS, alpha);
+        DoubleVector shift = DoubleVector.broadcast(DS, 32768.0);
+        int bound = SS.loopBound(n);
+        int j = 0;
+        for (; j < bound; j += SS.length()) {
+            ShortVector codes = ShortVector.fromArray(SS, x, xOffset + j).lanewise(VectorOperators.XOR, (short) 0x8000);
+            for (int part = 0; part < SHORT_PARTS; part++) {
+                int k = j + part * DS.length();
+                DoubleVector xv = ((DoubleVector) codes.convertShape(VectorOperators.S2D, DS, part)).add(shift);
+                xv.fma(a, DoubleVector.fromArray(DS, acc, k)).intoArray(acc, k);
+            }
+        }
+        for (; j < n; j++)
+            acc[j] += alpha * (x[xOffset + j] & 0xFFFF);
+    }
+
+    @Override
+    public void sigmoid(double[] z, int from, int to) {
+        DoubleVector one = DoubleVector.broadcast(DS, 1.0);
+        int bound = from + DS.loopBound(to - from);
+        int i = from;
+        for (; i < bound; i += DS.length()) {
+            DoubleVector e = DoubleVector.fromArray(DS, z, i).neg().lanewise(VectorOperators.EXP);
+            one.div(e.add(one)).intoArray(z, i);
+        }
+        for (; i < to; i++)
+            z[i] = 1.0 / (1.0 + Math.exp(-z[i]));
+    }
+
+    private static DoubleVector widen(float[] x, int offset) {
+        return (DoubleVector) FloatVector.fromArray(FS, x, offset).convertShape(VectorOperators.F2D, DS, 0);
+    }
+}
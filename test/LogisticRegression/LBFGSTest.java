@@ -0,0 +1,41 @@
+package LogisticRegression;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A curvature pair rejected by L-BFGS (s'y <= 0) must leave the stored history untouched
+ */
+class LBFGSTest {
+
+    @Test
+    void rejectedPairsKeepTheHistory() {
+        // sum of sin(c_j w_j) + 0.05 w_j^2: non-convex, so many steps give pairs with negative curvature;
+        // with a single stored pair every rejection used to overwrite it and stall the line search
+        for (int seed = 0; seed < 200; seed++) {
+            SplittableRandom random = new SplittableRandom(seed);
+            int d = 1 + random.nextInt(3);
+            double[] c = new double[d];
+            double[] w = new double[d];
+            for (int j = 0; j < d; j++) {
+                c[j] = random.nextDouble(0.5, 3);
+                w[j] = random.nextDouble(-4, 4);
+            }
+            Objective f = (x, gradient) -> {
+                double value = 0.0;
+                for (int j = 0; j < x.length; j++) {
+                    value += Math.sin(c[j] * x[j]) + 0.05 * x[j] * x[j];
+                    gradient[j] = c[j] * Math.cos(c[j] * x[j]) + 0.1 * x[j];
+                }
+                return value;
+            };
+            LBFGS.minimize(f, w, 200, 1, 1e-9);
+            double[] gradient = new double[d];
+            f.evaluate(w, gradient);
+            assertTrue(Objective.normInf(gradient) < 1e-3, "seed " + seed + ": |gradient| = " + Objective.normInf(gradient));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package LogisticRegression;
+
+import Utils.Matrix;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * With TREE and COMPENSATED_TREE the weights must be the same bits for any number of workers,
+ * for the sequential trainer and for any kernels (the build runs these tests on the SIMD and on
+ * the plain-loop kernels, both must give the recorded weights)
+ */
+class ReproducibilityTest {
+
+    private static final int ROWS = 20000;
+    private static final int COLS = 31;
+    private static final int ITERATIONS = 50;
+
+    // hashes of the BGD weights on the data of the seed, the same on every CPU and kernel provider
+    private static final int TREE_HASH = -1041587076;
+    private static final int COMPENSATED_TREE_HASH = -1031223290;
+
+    private final Matrix X = Matrix.allocate(ROWS, COLS);
+    private final int[] Y = new int[ROWS];
+
+    ReproducibilityTest() {
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < ROWS; i++) {
+            X.set(i, 0, 1.0);
+            double z = 0.0;
+            for (int j = 1; j < COLS; j++) {
+                double x = random.nextDouble();
+                X.set(i, j, x);
+                z += (j % 5 - 2) * x;
+            }
+            Y[i] = (random.nextDouble() < 1.0 / (1.0 + StrictMath.exp(-z))) ? 1 : 0;
+        }
+    }
+
+    @Test
+    void treeWeightsDoNotDependOnWorkersNorKernels() {
+        assertEquals(TREE_HASH, hash(checkWorkers(X, Reduction.TREE)));
+    }
+
+    @Test
+    void compensatedTreeWeightsDoNotDependOnWorkersNorKernels() {
+        assertEquals(COMPENSATED_TREE_HASH, hash(checkWorkers(X, Reduction.COMPENSATED_TREE)));
+    }
+
+    @Test
+    void floatWeightsDoNotDependOnWorkers() {
+        checkWorkers(X.convert(Matrix.Layout.ROW_MAJOR, Matrix.Precision.FLOAT), Reduction.TREE);
+    }
+
+    @Test
+    void secondOrderSolversDoNotDependOnWorkers() {
+        double[][] expected = null;
+        for (int workers = 1; workers <= 4; workers++) {
+            try (ParallelLogisticRegression model = parallel(workers, Reduction.TREE)) {
+                model.trainModelWithLBFGS(X, Y, 10, 1e-10);
+                double[] lbfgs = model.getWeights().clone();
+                model.trainModelWithIRLS(X, Y, 1e-10);
+                double[][] weights = {lbfgs, model.getWeights().clone()};
+                if (expected == null)
+                    expected = weights;
+                assertArrayEquals(expected[0], weights[0], "L-BFGS with " + workers + " workers");
+                assertArrayEquals(expected[1], weights[1], "IRLS with " + workers + " workers");
+            }
+        }
+    }
+
+    /* BGD weights of the sequential trainer, checked against the parallel one with 1 to 4 workers */
+    private double[] checkWorkers(Matrix X, Reduction reduction) {
+        SequentialLogisticRegression sequential = new SequentialLogisticRegression(COLS, 0.5, ITERATIONS, 0.5);
+        sequential.setVerbose(false);
+        sequential.setReduction(reduction);
+        sequential.trainModelWithBGD(X, Y);
+        double[] expected = sequential.getWeights();
+        for (int workers = 1; workers <= 4; workers++) {
+            try (ParallelLogisticRegression model = parallel(workers, reduction)) {
+                model.trainModelWithBGD(X, Y);
+                assertArrayEquals(expected, model.getWeights(), reduction + " with " + workers + " workers");
+            }
+        }
+        return expected;
+    }
+
+    private static ParallelLogisticRegression parallel(int workers, Reduction reduction) {
+        ParallelLogisticRegression model = new ParallelLogisticRegression(COLS, 0.5, ITERATIONS, 0.5, 4);
+        model.setVerbose(false);
+        model.setParallelism(workers);
+        model.setReduction(reduction);
+        return model;
+    }
+
+    private static int hash(double[] weights) {
+        long[] bits = new long[weights.length];
+        for (int j = 0; j < weights.length; j++)
+            bits[j] = Double.doubleToRawLongBits(weights[j]);
+        return Arrays.hashCode(bits);
+    }
+}
@@ -0,0 +1,76 @@
+package Utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The SIMD kernels over quantized codes must read them as unsigned, like the scalar ones
+ * (the results only differ by the rounding of the fused multiply-adds)
+ */
+class QuantizedKernelsTest {
+
+    private static final double TOLERANCE = 1e-12;
+
+    private final KernelProvider scalar = new ScalarKernels();
+    private final KernelProvider vector = new VectorKernels();
+
+    @Test
+    void dotProductsMatch() {
+        SplittableRandom random = new SplittableRandom(4);
+        for (int n = 0; n < 150; n++) {
+            int offset = random.nextInt(9);
+            byte[] bytes = randomBytes(random, offset + n);
+            short[] shorts = randomShorts(random, offset + n);
+            double[] w = randomWeights(random, n);
+            double expected = scalar.dot(bytes, offset, w, n);
+            assertEquals(expected, vector.dot(bytes, offset, w, n), TOLERANCE * (1 + Math.abs(expected)), "byte dot, n = " + n);
+            expected = scalar.dot(shorts, offset, w, n);
+            assertEquals(expected, vector.dot(shorts, offset, w, n), TOLERANCE * (1 + Math.abs(expected)), "short dot, n = " + n);
+        }
+    }
+
+    @Test
+    void axpysMatch() {
+        SplittableRandom random = new SplittableRandom(5);
+        for (int n = 0; n < 150; n++) {
+            int offset = random.nextInt(9);
+            double alpha = random.nextDouble(-3, 3);
+            byte[] bytes = randomBytes(random, offset + n);
+            short[] shorts = randomShorts(random, offset + n);
+            double[] acc = randomWeights(random, n);
+            double[] expected = acc.clone();
+            double[] actual = acc.clone();
+            scalar.axpy(alpha, bytes, offset, expected, n);
+            vector.axpy(alpha, bytes, offset, actual, n);
+            scalar.axpy(alpha, shorts, offset, expected, n);
+            vector.axpy(alpha, shorts, offset, actual, n);
+            for (int j = 0; j < n; j++)
+                assertEquals(expected[j], actual[j], TOLERANCE * (1 + Math.abs(expected[j])), "element " + j);
+        }
+    }
+
+    /* codes over the whole range, with the extremes (0 and 0xFF read as 255, not -1) */
+    private static byte[] randomBytes(SplittableRandom random, int n) {
+        byte[] codes = new byte[n];
+        for (int j = 0; j < n; j++)
+            codes[j] = (byte) (j % 7 == 0 ? 0xFF : j % 11 == 0 ? 0 : random.nextInt(256));
+        return codes;
+    }
+
+    private static short[] randomShorts(SplittableRandom random, int n) {
+        short[] codes = new short[n];
+        for (int j = 0; j < n; j++)
+            codes[j] = (short) (j % 7 == 0 ? 0xFFFF : j % 11 == 0 ? 0 : random.nextInt(65536));
+        return codes;
+    }
+
+    private static double[] randomWeights(SplittableRandom random, int n) {
+        double[] values = new double[n];
+        for (int j = 0; j < n; j++)
+            values[j] = random.nextDouble(-1, 1);
+        return values;
+    }
+}
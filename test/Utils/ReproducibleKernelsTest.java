@@ -0,0 +1,82 @@
+package Utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The scalar and SIMD reproducible kernels must agree bit for bit
+ */
+class ReproducibleKernelsTest {
+
+    private final KernelProvider scalar = new ReproducibleKernels();
+    private final KernelProvider vector = new ReproducibleVectorKernels();
+
+    @Test
+    void dotProductsMatch() {
+        SplittableRandom random = new SplittableRandom(1);
+        for (int n = 0; n < 70; n++) {
+            int offset = random.nextInt(5);
+            double[] x = randomDoubles(random, offset + n);
+            float[] xf = randomFloats(random, offset + n);
+            double[] w = randomDoubles(random, n);
+            assertEquals(Double.doubleToRawLongBits(scalar.dot(x, offset, w, n)),
+                    Double.doubleToRawLongBits(vector.dot(x, offset, w, n)), "double dot, n = " + n);
+            assertEquals(Double.doubleToRawLongBits(scalar.dot(xf, offset, w, n)),
+                    Double.doubleToRawLongBits(vector.dot(xf, offset, w, n)), "float dot, n = " + n);
+        }
+    }
+
+    @Test
+    void axpysMatch() {
+        SplittableRandom random = new SplittableRandom(2);
+        for (int n = 0; n < 70; n++) {
+            int offset = random.nextInt(5);
+            double alpha = random.nextDouble(-3, 3);
+            double[] x = randomDoubles(random, offset + n);
+            float[] xf = randomFloats(random, offset + n);
+            double[] acc = randomDoubles(random, n);
+            double[] expected = acc.clone();
+            double[] actual = acc.clone();
+            scalar.axpy(alpha, x, offset, expected, n);
+            vector.axpy(alpha, x, offset, actual, n);
+            scalar.axpy(alpha, xf, offset, expected, n);
+            vector.axpy(alpha, xf, offset, actual, n);
+            assertBitEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void sigmoidsMatch() {
+        double[] z = randomDoubles(new SplittableRandom(3), 300);
+        for (int i = 0; i < z.length; i++)
+            z[i] *= 40;
+        double[] expected = z.clone();
+        double[] actual = z.clone();
+        scalar.sigmoid(expected, 3, 297);
+        vector.sigmoid(actual, 3, 297);
+        assertBitEquals(expected, actual);
+    }
+
+    private static void assertBitEquals(double[] expected, double[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int j = 0; j < expected.length; j++)
+            assertEquals(Double.doubleToRawLongBits(expected[j]), Double.doubleToRawLongBits(actual[j]), "element " + j);
+    }
+
+    private static double[] randomDoubles(SplittableRandom random, int n) {
+        double[] values = new double[n];
+        for (int j = 0; j < n; j++)
+            values[j] = random.nextDouble(-1, 1) * Math.pow(10, random.nextInt(-3, 4));
+        return values;
+    }
+
+    private static float[] randomFloats(SplittableRandom random, int n) {
+        float[] values = new float[n];
+        for (int j = 0; j < n; j++)
+            values[j] = (float) random.nextDouble(-100, 100);
+        return values;
+    }
+}